@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.util.Arrays;
+
+/**
+ * A nonogram picture with every row packed into 64 bit words. Bit i of a row
+ * denotes the cell in column i, a set bit is a marked cell.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class BitGrid {
+
+	private final int width;
+
+	private final int height;
+
+	private final int wordsPerRow;
+
+	private final long[] words;
+
+	/**
+	 * Creates a new grid without marks.
+	 * 
+	 * @param width
+	 *            the number of columns
+	 * @param height
+	 *            the number of rows
+	 */
+	public BitGrid(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.words = new long[wordsPerRow * height];
+	}
+
+	/**
+	 * Creates a grid from a solution.
+	 * 
+	 * @param solution
+	 *            the solution, the first index denotes the column, the second
+	 *            one the row
+	 * @return the grid
+	 */
+	public static BitGrid fromSolution(boolean[][] solution) {
+		BitGrid grid = new BitGrid(solution.length,
+				solution.length == 0 ? 0 : solution[0].length);
+		for (int col = 0; col < grid.width; col++) {
+			for (int row = 0; row < grid.height; row++) {
+				if (solution[col][row]) {
+					grid.set(col, row, true);
+				}
+			}
+		}
+		return grid;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public boolean get(int col, int row) {
+		return (words[row * wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+	}
+
+	public void set(int col, int row, boolean mark) {
+		int index = row * wordsPerRow + (col >>> 6);
+		if (mark) {
+			words[index] |= 1L << col;
+		} else {
+			words[index] &= ~(1L << col);
+		}
+	}
+
+	/**
+	 * Returns the word of the given row that holds the given column and the 63
+	 * columns after it.
+	 * 
+	 * @param row
+	 *            the row
+	 * @param wordIndex
+	 *            the index of the word, i.e. the column divided by 64
+	 * @return the word
+	 */
+	public long getWord(int row, int wordIndex) {
+		return words[row * wordsPerRow + wordIndex];
+	}
+
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+
+	/**
+	 * Returns the number of marked cells.
+	 * 
+	 * @return the number of marked cells
+	 */
+	public int countMarks() {
+		int count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Converts this grid to a solution array.
+	 * 
+	 * @return the solution, the first index denotes the column, the second one
+	 *         the row
+	 */
+	public boolean[][] toSolution() {
+		boolean[][] solution = new boolean[width][height];
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				solution[col][row] = get(col, row);
+			}
+		}
+		return solution;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof BitGrid)) {
+			return false;
+		}
+		BitGrid other = (BitGrid) obj;
+		return width == other.width && height == other.height
+				&& Arrays.equals(words, other.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * width + height) + Arrays.hashCode(words);
+	}
+
+	/**
+	 * Returns a basic string representation of this grid.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder((width + 1) * height);
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				sb.append(get(col, row) ? '#' : '.');
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+/**
+ * Determines the cells of a single line like {@link LineSolver} but works on
+ * bit masks instead of single cells, which only works for lines of at most
+ * {@value #MAX_LENGTH} cells. Bit i of a mask stands for cell i or, for the
+ * tables, for the prefix [0, i) of the line.
+ * <p>
+ * The table of every block is computed with a few word operations: where a
+ * block can start follows from the runs of cells that aren't empty, and a
+ * prefix the first j blocks fit into is extended over the cells that aren't
+ * marked by a single addition, whose carry runs through the bits of such
+ * cells. The tables of the suffixes are the ones of the prefixes of the
+ * reversed line. Solving a line takes time proportional to the number of
+ * blocks times the logarithm of their lengths.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class BitLineSolver {
+
+	/**
+	 * The maximum length of a line, the tables need one bit more than the
+	 * line has cells.
+	 */
+	public static final int MAX_LENGTH = 63;
+
+	/**
+	 * The lengths of the blocks, blocks of length zero are left out.
+	 */
+	private final int[] blocks;
+
+	private final int length;
+
+	/**
+	 * The bits of the cells of the line.
+	 */
+	private final long cellMask;
+
+	/**
+	 * prefix[j] has bit i set if the first j blocks fit into [0, i), the
+	 * cells of it they don't cover being empty. Kept to not allocate the
+	 * tables for every line.
+	 */
+	private final long[] prefix;
+
+	/**
+	 * suffix[j] has bit i set if the blocks from j on fit into [i, length).
+	 */
+	private final long[] suffix;
+
+	/**
+	 * The cells every block can start at as far as empty cells are
+	 * concerned.
+	 */
+	private final long[] starts;
+
+	/**
+	 * The earliest start of every block found by the last call to solve().
+	 */
+	private final int[] earliestStarts;
+
+	/**
+	 * The latest start of every block found by the last call to solve().
+	 */
+	private final int[] latestStarts;
+
+	/**
+	 * The marked cells found by the last successful call to solve().
+	 */
+	private long filled;
+
+	/**
+	 * The empty cells found by the last successful call to solve().
+	 */
+	private long empty;
+
+	/**
+	 * Creates a new solver for a line.
+	 * 
+	 * @param blockInfo
+	 *            the blocks of the line
+	 * @param length
+	 *            the length of the line
+	 * @throws IllegalArgumentException
+	 *             if the line is longer than {@value #MAX_LENGTH} cells
+	 */
+	public BitLineSolver(Blocks blockInfo, int length) {
+		if (length > MAX_LENGTH) {
+			throw new IllegalArgumentException("line of length " + length
+					+ " doesn't fit into a word");
+		}
+		int count = 0;
+		for (int block : blockInfo.getBlocks()) {
+			if (block > 0) {
+				count++;
+			}
+		}
+		this.blocks = new int[count];
+		int i = 0;
+		for (int block : blockInfo.getBlocks()) {
+			if (block > 0) {
+				blocks[i++] = block;
+			}
+		}
+		this.length = length;
+		this.cellMask = length == 0 ? 0 : -1L >>> (64 - length);
+		this.prefix = new long[count + 1];
+		this.suffix = new long[count + 1];
+		this.starts = new long[count];
+		this.earliestStarts = new int[count];
+		this.latestStarts = new int[count];
+	}
+
+	/**
+	 * Creates a new solver for the same line as the given one. Solvers keep
+	 * their tables and results between calls, so every thread needs its own
+	 * one.
+	 * 
+	 * @param solver
+	 *            the solver to copy
+	 */
+	public BitLineSolver(BitLineSolver solver) {
+		this.blocks = solver.blocks;
+		this.length = solver.length;
+		this.cellMask = solver.cellMask;
+		this.prefix = new long[blocks.length + 1];
+		this.suffix = new long[blocks.length + 1];
+		this.starts = new long[blocks.length];
+		this.earliestStarts = new int[blocks.length];
+		this.latestStarts = new int[blocks.length];
+	}
+
+	/**
+	 * Determines as many cells of the line as possible. The states are the
+	 * ones of {@link KnowledgeGrid}.
+	 * 
+	 * @param line
+	 *            the states of the cells, unknown cells get updated
+	 * @return false if the blocks can't be placed consistently with the known
+	 *         cells, true otherwise
+	 */
+	public boolean solve(byte[] line) {
+		long knownFilled = 0;
+		long knownEmpty = 0;
+		for (int i = 0; i < length; i++) {
+			if (line[i] == KnowledgeGrid.FILLED) {
+				knownFilled |= 1L << i;
+			} else if (line[i] == KnowledgeGrid.EMPTY) {
+				knownEmpty |= 1L << i;
+			}
+		}
+		if (!solve(knownFilled, knownEmpty)) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if ((filled >>> i & 1) != 0) {
+				line[i] = KnowledgeGrid.FILLED;
+			} else if ((empty >>> i & 1) != 0) {
+				line[i] = KnowledgeGrid.EMPTY;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines as many cells of the line as possible. The results are
+	 * returned by {@link #getFilled()} and {@link #getEmpty()}.
+	 * 
+	 * @param knownFilled
+	 *            the cells known to be marked
+	 * @param knownEmpty
+	 *            the cells known to be empty
+	 * @return false if the blocks can't be placed consistently with the known
+	 *         cells, true otherwise
+	 */
+	public boolean solve(long knownFilled, long knownEmpty) {
+
+		int k = blocks.length;
+		int n = length;
+		long notFilled = ~knownFilled & cellMask;
+		long notEmpty = ~knownEmpty & cellMask;
+
+		for (int j = 0; j < k; j++) {
+			starts[j] = runs(notEmpty, blocks[j]);
+		}
+		computePrefixes(notFilled, false);
+		if ((prefix[k] >>> n & 1) == 0) {
+			return false;
+		}
+		computePrefixes(reverse(notFilled, n - 1), true);
+
+		long canFill = 0;
+		long canEmpty = 0;
+		for (int j = 0; j <= k; j++) {
+			canEmpty |= prefix[j] & suffix[j] >>> 1;
+		}
+		canEmpty &= notFilled;
+		for (int j = 0; j < k; j++) {
+			int b = blocks[j];
+			long before = (j == 0 ? 1L : 0) | (prefix[j] & notFilled) << 1;
+			long after = (j == k - 1 ? 1L << n : 0)
+					| (suffix[j + 1] >>> 1 & notFilled);
+			long valid = starts[j] & before & after >>> b;
+			earliestStarts[j] = Long.numberOfTrailingZeros(valid);
+			latestStarts[j] = 63 - Long.numberOfLeadingZeros(valid);
+			canFill |= smear(valid, b);
+		}
+
+		if ((canFill | canEmpty) != cellMask) {
+			return false;
+		}
+		this.filled = canFill & ~canEmpty;
+		this.empty = canEmpty & ~canFill;
+		return true;
+
+	}
+
+	/**
+	 * Computes the table of the prefixes of the line or, if reversed, the
+	 * table of the suffixes from the prefixes of the reversed line.
+	 * 
+	 * @param notFilled
+	 *            the cells of the line that aren't marked, reversed if the
+	 *            line is
+	 * @param reversed
+	 *            whether the line is reversed
+	 */
+	private void computePrefixes(long notFilled, boolean reversed) {
+		int k = blocks.length;
+		int n = length;
+		long positions = cellMask << 1 | 1;
+		// the prefix [0, i) can be extended by cell i if it isn't marked
+		long extensible = notFilled << 1;
+		long table = fill(1L, extensible, positions);
+		store(0, table, reversed);
+		for (int j = 0; j < k; j++) {
+			int block = reversed ? k - 1 - j : j;
+			int b = blocks[block];
+			long blockStarts = reversed ? reverse(starts[block], n - b)
+					: starts[block];
+			long before = (j == 0 ? 1L : 0) | (table & notFilled) << 1;
+			table = fill((before & blockStarts) << b, extensible, positions);
+			store(j + 1, table, reversed);
+		}
+	}
+
+	private void store(int j, long table, boolean reversed) {
+		if (reversed) {
+			suffix[blocks.length - j] = reverse(table, length);
+		} else {
+			prefix[j] = table;
+		}
+	}
+
+	/**
+	 * Sets every bit of the given positions that is reached from a seed by
+	 * going up through extensible bits.
+	 */
+	private static long fill(long seeds, long extensible, long positions) {
+		long reachable = (extensible | seeds) & positions;
+		// the carry of a seed clears the reachable bits above it up to the
+		// first unreachable one
+		return (reachable & ~(reachable + seeds) | seeds) & positions;
+	}
+
+	/**
+	 * Returns the bits i for which the bits i to i + length - 1 are all set.
+	 */
+	private static long runs(long bits, int length) {
+		int covered = 1;
+		while (covered < length) {
+			int step = Math.min(covered, length - covered);
+			bits &= bits >>> step;
+			covered += step;
+		}
+		return bits;
+	}
+
+	/**
+	 * Sets the length - 1 bits above every set bit as well.
+	 */
+	private static long smear(long bits, int length) {
+		int covered = 1;
+		while (covered < length) {
+			int step = Math.min(covered, length - covered);
+			bits |= bits << step;
+			covered += step;
+		}
+		return bits;
+	}
+
+	/**
+	 * Reverses the bits 0 to top, i.e. moves bit i to bit top - i.
+	 */
+	private static long reverse(long bits, int top) {
+		return top < 0 ? 0 : Long.reverse(bits) >>> (63 - top);
+	}
+
+	/**
+	 * Returns the cells known to be marked after the last successful call to
+	 * {@link #solve(long, long)}.
+	 * 
+	 * @return the marked cells
+	 */
+	public long getFilled() {
+		return filled;
+	}
+
+	/**
+	 * Returns the cells known to be empty after the last successful call to
+	 * {@link #solve(long, long)}.
+	 * 
+	 * @return the empty cells
+	 */
+	public long getEmpty() {
+		return empty;
+	}
+
+	/**
+	 * Returns the number of blocks of length greater than zero.
+	 * 
+	 * @return the number of blocks
+	 */
+	public int getBlockCount() {
+		return blocks.length;
+	}
+
+	/**
+	 * Returns the earliest cell a block can start at according to the last
+	 * successful call to solve().
+	 * 
+	 * @param block
+	 *            the index of the block
+	 * @return the earliest start
+	 */
+	public int getEarliestStart(int block) {
+		return earliestStarts[block];
+	}
+
+	/**
+	 * Returns the latest cell a block can start at according to the last
+	 * successful call to solve().
+	 * 
+	 * @param block
+	 *            the index of the block
+	 * @return the latest start
+	 */
+	public int getLatestStart(int block) {
+		return latestStarts[block];
+	}
+
+}
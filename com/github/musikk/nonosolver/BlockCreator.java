@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A helper class that converts the file format to the block information used
+ * by the nonogram solver.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class BlockCreator {
+
+	private Blocks[] cols;
+
+	private Blocks[] rows;
+
+	/**
+	 * Creates the block information from the given nonogram file.
+	 * 
+	 * @param nonoFile
+	 *            the nonogram file
+	 */
+	public BlockCreator(File nonoFile) {
+
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(nonoFile));
+
+			calculateBlocks(reader);
+
+			reader.close();
+		} catch (FileNotFoundException e) {
+			throw new RuntimeException("file '" + nonoFile.getAbsolutePath()
+					+ "' not found");
+		} catch (IOException e) {
+			throw new RuntimeException("error reading file", e);
+		}
+
+	}
+
+	/**
+	 * Creates the block information from the given reader. Exactly one
+	 * nonogram is read, the reader is neither read further nor closed. This
+	 * allows several nonograms to be read from the same stream one after the
+	 * other.
+	 * 
+	 * @param reader
+	 *            the reader positioned at the <code>col</code> descriptor
+	 * @throws IOException
+	 */
+	public BlockCreator(BufferedReader reader) throws IOException {
+		calculateBlocks(reader);
+	}
+
+	private void calculateBlocks(BufferedReader reader) throws IOException {
+		cols = extractBlocks(reader, BlockType.COL);
+		rows = extractBlocks(reader, BlockType.ROW);
+	}
+
+	private static Blocks[] extractBlocks(BufferedReader reader,
+			BlockType blockType) throws IOException {
+
+		String descriptor = reader.readLine();
+		if (descriptor == null) {
+			throw new RuntimeException("invalid file format, expected "
+					+ blockType + " descriptor but got end of file");
+		}
+		Pattern p = Pattern.compile(blockType + "\\s+(\\d+)");
+		Matcher m = p.matcher(descriptor);
+		if (!m.find()) {
+			throw new RuntimeException("invalid file format, expected "
+					+ blockType + " descriptor but got '" + descriptor + "'");
+		}
+
+		int blockCount = Integer.parseInt(m.group(1));
+
+		String[] blockStrings = new String[blockCount];
+		for (int i = 0; i < blockCount; i++) {
+			String blockLine = reader.readLine();
+			if (blockLine == null) {
+				throw new RuntimeException("invalid file format, expected "
+						+ blockCount + " " + blockType + " lines but got "
+						+ i);
+			}
+			blockStrings[i] = blockLine;
+		}
+
+		return Blocks.createBlockInfos(blockStrings);
+	}
+
+	/**
+	 * Writes a nonogram in the file format.
+	 * 
+	 * @param writer
+	 *            the writer, it is neither flushed nor closed
+	 * @param cols
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 * @throws IOException
+	 */
+	public static void write(Writer writer, Blocks[] cols, Blocks[] rows)
+			throws IOException {
+		writer.write(BlockType.COL + " " + cols.length + "\n");
+		for (Blocks col : cols) {
+			writer.write(col + "\n");
+		}
+		writer.write(BlockType.ROW + " " + rows.length + "\n");
+		for (Blocks row : rows) {
+			writer.write(row + "\n");
+		}
+	}
+
+	public Blocks[] getCols() {
+		return cols.clone();
+	}
+
+	public Blocks[] getRows() {
+		return rows.clone();
+	}
+
+	private static enum BlockType {
+		COL("col"), ROW("row");
+
+		private final String keyWord;
+
+		private BlockType(String keyWord) {
+			this.keyWord = keyWord;
+		}
+
+		@Override
+		public String toString() {
+			return keyWord;
+		}
+	}
+
+}
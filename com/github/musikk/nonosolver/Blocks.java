@@ -26,9 +26,14 @@
  */
 package com.github.musikk.nonosolver;
 
+import java.util.Arrays;
+
 /**
  * This class represents the information a nonogram provides on a single row or
- * column.
+ * column. In colored nonograms every block also has a color, numbered from 1
+ * on; blocks of different colors may touch while blocks of the same color need
+ * at least one empty field between them. Nonograms without colors have blocks
+ * of color 1 only.
  * 
  * @author Werner Hahn
  * @version 0.1
@@ -36,11 +41,22 @@ package com.github.musikk.nonosolver;
  */
 public class Blocks {
 
+	/**
+	 * The highest color, colors are written as the letters a to z.
+	 */
+	public static final int MAX_COLOR = 26;
+
 	/**
 	 * The numbers on a row or column denoting the lengths of the blocks.
 	 */
 	private final int[] blocks;
 
+	/**
+	 * The colors of the blocks, null if all blocks have color 1 and no color
+	 * was given.
+	 */
+	private final int[] colors;
+
 	/**
 	 * The number of blocks in a row or column.
 	 */
@@ -53,6 +69,31 @@ public class Blocks {
 	 */
 	public Blocks(int[] blocks) {
 		this.blocks = blocks.clone();
+		this.colors = null;
+		this.numberOfBlocks = blocks.length;
+	}
+
+	/**
+	 * Creates a new instance of this class with the given blocks of the given
+	 * colors.
+	 * 
+	 * @param blocks
+	 *            the lengths of the blocks
+	 * @param colors
+	 *            the colors of the blocks, from 1 to {@value #MAX_COLOR}
+	 */
+	public Blocks(int[] blocks, int[] colors) {
+		if (colors.length != blocks.length) {
+			throw new IllegalArgumentException("got " + colors.length
+					+ " colors for " + blocks.length + " blocks");
+		}
+		for (int color : colors) {
+			if (color < 1 || color > MAX_COLOR) {
+				throw new IllegalArgumentException("invalid color " + color);
+			}
+		}
+		this.blocks = blocks.clone();
+		this.colors = colors.clone();
 		this.numberOfBlocks = blocks.length;
 	}
 
@@ -75,10 +116,67 @@ public class Blocks {
 		return numberOfBlocks;
 	}
 
+	/**
+	 * Returns the colors of the blocks.
+	 * 
+	 * @return the colors, all 1 if no colors were given
+	 */
+	public int[] getColors() {
+		if (colors == null) {
+			int[] ones = new int[numberOfBlocks];
+			Arrays.fill(ones, 1);
+			return ones;
+		}
+		return colors.clone();
+	}
+
+	/**
+	 * Returns whether any of the blocks has another color than 1, i.e. the
+	 * row or column belongs to a colored nonogram.
+	 * 
+	 * @return true if there is a color other than 1
+	 */
+	public boolean isColored() {
+		if (colors != null) {
+			for (int color : colors) {
+				if (color != 1) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the lengths of the blocks separated by spaces as they appear in
+	 * nonogram files. Blocks of length zero are left out, so a row or column
+	 * without marks results in an empty string. If colors were given, every
+	 * length is followed by the letter of its color.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(2 * numberOfBlocks);
+		for (int i = 0; i < numberOfBlocks; i++) {
+			if (blocks[i] == 0) {
+				continue;
+			}
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(blocks[i]);
+			if (colors != null) {
+				sb.append((char) ('a' + colors[i] - 1));
+			}
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * Creates a Blocks object from a String. The String contains numbers
 	 * seperated by whitespace that denote the size of the blocks of a row or
-	 * column.
+	 * column. In colored nonograms a number may be followed by a letter from a
+	 * to z denoting the color of the block, a number without a letter denotes
+	 * a block of color a.
 	 * 
 	 * @param blockString
 	 *            the string containing the block information
@@ -89,17 +187,27 @@ public class Blocks {
 		String[] splittedBlocks = blockString.split("\\s");
 
 		int[] blocks = new int[splittedBlocks.length];
+		int[] colors = new int[splittedBlocks.length];
+		boolean colored = false;
 
 		for (int i = 0; i < splittedBlocks.length; i++) {
 			String splittedBlock = splittedBlocks[i];
+			colors[i] = 1;
 			if (splittedBlock.isEmpty()) {
 				blocks[i] = 0;
-			} else {
-				blocks[i] = Integer.parseInt(splittedBlock);
+				continue;
+			}
+			char last = splittedBlock.charAt(splittedBlock.length() - 1);
+			if (last >= 'a' && last <= 'z') {
+				colors[i] = last - 'a' + 1;
+				colored = true;
+				splittedBlock = splittedBlock.substring(0, splittedBlock
+						.length() - 1);
 			}
+			blocks[i] = Integer.parseInt(splittedBlock);
 		}
 
-		Blocks bi = new Blocks(blocks);
+		Blocks bi = colored ? new Blocks(blocks, colors) : new Blocks(blocks);
 		return bi;
 
 	}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Derives the block information of a nonogram from its picture.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public abstract class ClueCompiler {
+
+	/**
+	 * Pixels with a luminance below this value are marked by default.
+	 */
+	public static final int DEFAULT_THRESHOLD = 128;
+
+	/**
+	 * Returns the block information of all rows of the given picture. The
+	 * blocks of a row are found word by word by skipping runs of equal bits.
+	 * 
+	 * @param grid
+	 *            the picture
+	 * @return the blocks of the rows
+	 */
+	public static Blocks[] compileRows(BitGrid grid) {
+
+		Blocks[] rows = new Blocks[grid.getHeight()];
+		int[] lengths = new int[(grid.getWidth() + 1) / 2 + 1];
+		int width = grid.getWidth();
+
+		for (int row = 0; row < rows.length; row++) {
+			int count = 0;
+			int col = 0;
+			while (col < width) {
+				// skip the empty cells
+				col += countRun(grid, row, col, false);
+				if (col >= width) {
+					break;
+				}
+				int length = countRun(grid, row, col, true);
+				lengths[count++] = length;
+				col += length;
+			}
+			rows[row] = toBlocks(lengths, count);
+		}
+
+		return rows;
+
+	}
+
+	/**
+	 * Counts the cells starting at the given column that have the given mark.
+	 */
+	private static int countRun(BitGrid grid, int row, int col, boolean mark) {
+		int width = grid.getWidth();
+		int start = col;
+		while (col < width) {
+			long word = grid.getWord(row, col >>> 6) >>> (col & 63);
+			if (!mark) {
+				word = ~word;
+			}
+			// the bits of the current word that are left
+			int available = 64 - (col & 63);
+			int run = Long.numberOfTrailingZeros(~word);
+			if (run < available) {
+				col += run;
+				break;
+			}
+			col += available;
+		}
+		return Math.min(col, width) - start;
+	}
+
+	/**
+	 * Returns the block information of all columns of the given picture.
+	 * 
+	 * @param grid
+	 *            the picture
+	 * @return the blocks of the columns
+	 */
+	public static Blocks[] compileColumns(BitGrid grid) {
+
+		int width = grid.getWidth();
+		int height = grid.getHeight();
+		int[][] lengths = new int[width][(height + 1) / 2 + 1];
+		int[] counts = new int[width];
+		int[] runs = new int[width];
+
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				if (grid.get(col, row)) {
+					runs[col]++;
+				} else if (runs[col] > 0) {
+					lengths[col][counts[col]++] = runs[col];
+					runs[col] = 0;
+				}
+			}
+		}
+
+		Blocks[] cols = new Blocks[width];
+		for (int col = 0; col < width; col++) {
+			if (runs[col] > 0) {
+				lengths[col][counts[col]++] = runs[col];
+			}
+			cols[col] = toBlocks(lengths[col], counts[col]);
+		}
+		return cols;
+
+	}
+
+	/**
+	 * Creates the Blocks, a line without blocks gets a single block of length
+	 * zero like in the nonogram files.
+	 */
+	private static Blocks toBlocks(int[] lengths, int count) {
+		if (count == 0) {
+			return new Blocks(new int[] { 0 });
+		}
+		return new Blocks(Arrays.copyOf(lengths, count));
+	}
+
+	/**
+	 * Creates a picture from an image. Every pixel becomes a cell, pixels with
+	 * a luminance below the threshold are marked.
+	 * 
+	 * @param image
+	 *            the image
+	 * @param threshold
+	 *            the luminance between 0 and 255 below which a pixel is marked
+	 * @return the picture
+	 */
+	public static BitGrid fromImage(BufferedImage image, int threshold) {
+		BitGrid grid = new BitGrid(image.getWidth(), image.getHeight());
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				int rgb = image.getRGB(x, y);
+				int r = (rgb >> 16) & 0xff;
+				int g = (rgb >> 8) & 0xff;
+				int b = rgb & 0xff;
+				int luminance = (299 * r + 587 * g + 114 * b) / 1000;
+				grid.set(x, y, luminance < threshold);
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Creates a picture of the given size from an image by scaling it first.
+	 * 
+	 * @param image
+	 *            the image
+	 * @param width
+	 *            the width of the picture
+	 * @param height
+	 *            the height of the picture
+	 * @param threshold
+	 *            the luminance between 0 and 255 below which a pixel is marked
+	 * @return the picture
+	 */
+	public static BitGrid fromImage(BufferedImage image, int width,
+			int height, int threshold) {
+		BufferedImage scaled = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return fromImage(scaled, threshold);
+	}
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.github.musikk.nonosolver.corpus.CorpusEntry;
+import com.github.musikk.nonosolver.corpus.CorpusReader;
+import com.github.musikk.nonosolver.util.ArrayUtils;
+
+/**
+ * Predicts how expensive a nonogram is to solve without solving it. The
+ * prediction is based on
+ * <ul>
+ * <li>the number of positions of every line, computed in closed form by
+ * {@link Positions#countPositions(Blocks, int)},</li>
+ * <li>the density of the clues, i.e. the share of marked cells,</li>
+ * <li>the share of cells the line propagation determines and the number of
+ * positions that are left afterwards.</li>
+ * </ul>
+ * Lines with too many positions to enumerate are propagated by a
+ * {@link LineSolver} which also counts their remaining positions.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class DifficultyEstimator {
+
+	/**
+	 * Nonograms with fewer remaining combinations of positions (in decimal
+	 * digits) are light.
+	 */
+	private static final double LIGHT_LIMIT = 6;
+
+	/**
+	 * Nonograms with fewer remaining combinations of positions (in decimal
+	 * digits) are medium.
+	 */
+	private static final double MEDIUM_LIMIT = 60;
+
+	private final long positionLimit;
+
+	/**
+	 * Creates a new estimator with the default position limit of
+	 * {@link Positions}.
+	 */
+	public DifficultyEstimator() {
+		this(Positions.getDefaultBudget());
+	}
+
+	/**
+	 * Creates a new estimator.
+	 * 
+	 * @param positionLimit
+	 *            the maximum number of positions of a single line that are
+	 *            enumerated for the propagation
+	 */
+	public DifficultyEstimator(long positionLimit) {
+		this.positionLimit = positionLimit;
+	}
+
+	/**
+	 * Estimates the cost of solving a nonogram.
+	 * 
+	 * @param columns
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 * @return the estimate
+	 */
+	public Estimate estimate(Blocks[] columns, Blocks[] rows) {
+
+		int width = columns.length;
+		int height = rows.length;
+
+		double log10Positions = 0;
+		long maxPositions = 0;
+		long marks = 0;
+		for (Blocks column : columns) {
+			long count = Positions.countPositions(column, height);
+			maxPositions = Math.max(maxPositions, count);
+			log10Positions += Positions.log10CountPositions(column, height);
+			marks += ArrayUtils.sum(column.getBlocks());
+		}
+		for (Blocks row : rows) {
+			long count = Positions.countPositions(row, width);
+			maxPositions = Math.max(maxPositions, count);
+			log10Positions += Positions.log10CountPositions(row, width);
+		}
+		double density = width * height == 0 ? 0 : (double) marks
+				/ (width * height);
+
+		Positions[] colPositions = new Positions[width];
+		for (int i = 0; i < width; i++) {
+			colPositions[i] = new Positions(columns[i], height, positionLimit);
+		}
+		Positions[] rowPositions = new Positions[height];
+		for (int i = 0; i < height; i++) {
+			rowPositions[i] = new Positions(rows[i], width, positionLimit);
+		}
+		LinePropagator propagator = new LinePropagator(colPositions,
+				rowPositions);
+		boolean consistent = propagator.propagate();
+		KnowledgeGrid grid = propagator.getGrid();
+		double coverage = grid.getPercentDetermined() / 100;
+
+		if (!consistent || grid.isComplete()) {
+			return new Estimate(CostClass.TRIVIAL, log10Positions, 0,
+					maxPositions, density, coverage);
+		}
+
+		double remaining = 0;
+		for (int col = 0; col < width; col++) {
+			List<Position> candidates = propagator.getColumnCandidates(col);
+			if (candidates != null) {
+				remaining += Math.log10(candidates.size());
+			} else {
+				byte[] line = new byte[height];
+				for (int row = 0; row < height; row++) {
+					line[row] = grid.get(col, row);
+				}
+				remaining += Math.log10(new LineSolver(columns[col], height)
+						.countPositions(line));
+			}
+		}
+		for (int row = 0; row < height; row++) {
+			List<Position> candidates = propagator.getRowCandidates(row);
+			if (candidates != null) {
+				remaining += Math.log10(candidates.size());
+			} else {
+				byte[] line = new byte[width];
+				for (int col = 0; col < width; col++) {
+					line[col] = grid.get(col, row);
+				}
+				remaining += Math.log10(new LineSolver(rows[row], width)
+						.countPositions(line));
+			}
+		}
+
+		CostClass costClass;
+		if (remaining < LIGHT_LIMIT) {
+			costClass = CostClass.LIGHT;
+		} else if (remaining < MEDIUM_LIMIT) {
+			costClass = CostClass.MEDIUM;
+		} else {
+			costClass = CostClass.HEAVY;
+		}
+		return new Estimate(costClass, log10Positions, remaining,
+				maxPositions, density, coverage);
+
+	}
+
+	/**
+	 * Returns a comparator that orders estimates from the most expensive to
+	 * the cheapest, so scheduling in that order starts the longest jobs
+	 * first.
+	 * 
+	 * @return the comparator
+	 */
+	public static Comparator<Estimate> longestFirst() {
+		return new Comparator<Estimate>() {
+			@Override
+			public int compare(Estimate e1, Estimate e2) {
+				int c = e2.getCostClass().compareTo(e1.getCostClass());
+				if (c != 0) {
+					return c;
+				}
+				c = Double.compare(e2.getRemainingLog10Positions(),
+						e1.getRemainingLog10Positions());
+				if (c != 0) {
+					return c;
+				}
+				return Double.compare(e2.getLog10Positions(),
+						e1.getLog10Positions());
+			}
+		};
+	}
+
+	/**
+	 * The predicted cost of solving a nonogram.
+	 */
+	public static enum CostClass {
+		/**
+		 * The line propagation solves the nonogram.
+		 */
+		TRIVIAL,
+		/**
+		 * Few positions remain for the SAT solver.
+		 */
+		LIGHT,
+		/**
+		 * Many positions remain for the SAT solver.
+		 */
+		MEDIUM,
+		/**
+		 * A huge number of positions remains for the SAT solver.
+		 */
+		HEAVY
+	}
+
+	/**
+	 * The features of a nonogram and the cost class derived from them.
+	 */
+	public static class Estimate {
+
+		private final CostClass costClass;
+
+		private final double log10Positions;
+
+		private final double remainingLog10Positions;
+
+		private final long maxLinePositions;
+
+		private final double density;
+
+		private final double coverage;
+
+		Estimate(CostClass costClass, double log10Positions,
+				double remainingLog10Positions, long maxLinePositions,
+				double density, double coverage) {
+			this.costClass = costClass;
+			this.log10Positions = log10Positions;
+			this.remainingLog10Positions = remainingLog10Positions;
+			this.maxLinePositions = maxLinePositions;
+			this.density = density;
+			this.coverage = coverage;
+		}
+
+		public CostClass getCostClass() {
+			return costClass;
+		}
+
+		/**
+		 * Returns the decimal logarithm of the product of the numbers of
+		 * positions of all lines.
+		 * 
+		 * @return the logarithm
+		 */
+		public double getLog10Positions() {
+			return log10Positions;
+		}
+
+		/**
+		 * Returns the decimal logarithm of the product of the numbers of
+		 * positions of all lines that remain after the propagation.
+		 * 
+		 * @return the logarithm
+		 */
+		public double getRemainingLog10Positions() {
+			return remainingLog10Positions;
+		}
+
+		/**
+		 * Returns the highest number of positions of a single line.
+		 * 
+		 * @return the number of positions
+		 */
+		public long getMaxLinePositions() {
+			return maxLinePositions;
+		}
+
+		/**
+		 * Returns the share of marked cells.
+		 * 
+		 * @return the density between 0 and 1
+		 */
+		public double getDensity() {
+			return density;
+		}
+
+		/**
+		 * Returns the share of cells determined by the propagation.
+		 * 
+		 * @return the coverage between 0 and 1
+		 */
+		public double getCoverage() {
+			return coverage;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s positions=10^%.1f remaining=10^%.1f "
+					+ "maxLine=%d density=%.2f coverage=%.2f", costClass,
+					log10Positions, remainingLog10Positions, maxLinePositions,
+					density, coverage);
+		}
+
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.out.println("usage: DifficultyEstimator <corpus file>");
+			return;
+		}
+
+		DifficultyEstimator estimator = new DifficultyEstimator();
+		final List<Estimate> estimates = new ArrayList<Estimate>();
+		List<Integer> numbers = new ArrayList<Integer>();
+
+		CorpusReader reader = new CorpusReader(new File(args[0]));
+		try {
+			for (int number = 1; number <= reader.getMaxNumber(); number++) {
+				CorpusEntry entry = reader.get(number);
+				if (entry == null) {
+					continue;
+				}
+				numbers.add(number);
+				estimates.add(estimator.estimate(entry.getCols(),
+						entry.getRows()));
+			}
+		} finally {
+			reader.close();
+		}
+
+		final Comparator<Estimate> comparator = longestFirst();
+		List<Integer> order = new ArrayList<Integer>(estimates.size());
+		for (int i = 0; i < estimates.size(); i++) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return comparator.compare(estimates.get(i1), estimates.get(i2));
+			}
+		});
+		for (int i : order) {
+			System.out.println(numbers.get(i) + "\t" + estimates.get(i));
+		}
+
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.musikk.nonosolver.corpus.CorpusEntry;
+import com.github.musikk.nonosolver.corpus.CorpusReader;
+import com.github.musikk.nonosolver.sat.CdclSolver;
+
+/**
+ * Compares the {@link NonoSolver.Encoding encodings} on all nonograms of a
+ * corpus file that aren't solved by the line propagation alone. For every
+ * encoding the variables and clauses of the CNFs and the time the Java SAT
+ * solver takes are summed up. Every solution is checked against the clues, a
+ * nonogram that takes longer than the timeout counts as a timeout and with
+ * the timeout as its time.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class EncodingBenchmark {
+
+	private static final int WARM_UP_ROUNDS = 1;
+
+	private static final long TIMEOUT = 10000;
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		if (args.length < 1) {
+			System.err.println("usage: EncodingBenchmark <corpus file>"
+					+ " [position budget]");
+			return;
+		}
+		long budget = args.length >= 2 ? Long.parseLong(args[1]) : Positions
+				.getDefaultBudget();
+
+		List<Blocks[][]> nonograms = new ArrayList<Blocks[][]>();
+		CorpusReader reader = new CorpusReader(new File(args[0]));
+		try {
+			for (int number = 1; number <= reader.getMaxNumber(); number++) {
+				CorpusEntry entry = reader.get(number);
+				if (entry == null) {
+					continue;
+				}
+				Blocks[] cols = entry.getCols();
+				Blocks[] rows = entry.getRows();
+				NonoSolver solver = new NonoSolver(cols, rows,
+						new CdclSolver(), budget);
+				solver.solve();
+				solver.close();
+				if (solver.getCellVariables() != null) {
+					nonograms.add(new Blocks[][] { cols, rows });
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		NonoSolver.Encoding[] encodings = NonoSolver.Encoding.values();
+		long[] variables = new long[encodings.length];
+		long[] clauses = new long[encodings.length];
+		long[] nanos = new long[encodings.length];
+		int[] timeouts = new int[encodings.length];
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			for (int round = 0; round <= WARM_UP_ROUNDS; round++) {
+				Arrays.fill(variables, 0);
+				Arrays.fill(clauses, 0);
+				Arrays.fill(nanos, 0);
+				Arrays.fill(timeouts, 0);
+				for (Blocks[][] nonogram : nonograms) {
+					for (int i = 0; i < encodings.length; i++) {
+						final CdclSolver satSolver = new CdclSolver();
+						final NonoSolver solver = new NonoSolver(nonogram[0],
+								nonogram[1], satSolver, budget);
+						solver.setEncoding(encodings[i]);
+						long start = System.nanoTime();
+						Future<Boolean> future = executor
+								.submit(new Callable<Boolean>() {
+									@Override
+									public Boolean call() {
+										try {
+											return solver.solve();
+										} finally {
+											solver.close();
+										}
+									}
+								});
+						boolean solved;
+						try {
+							solved = future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+						} catch (TimeoutException e) {
+							future.cancel(true);
+							timeouts[i]++;
+							nanos[i] += TIMEOUT * 1000000;
+							continue;
+						} catch (ExecutionException e) {
+							throw new RuntimeException(e.getCause());
+						}
+						nanos[i] += System.nanoTime() - start;
+						variables[i] += satSolver.getVariableCount();
+						clauses[i] += satSolver.getClauseCount();
+						if (!solved
+								|| !isSolution(nonogram, solver.getSolution())) {
+							throw new IllegalStateException(encodings[i]
+									+ " found a wrong solution");
+						}
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		System.err.println(nonograms.size()
+				+ " nonograms not solved by line propagation, budget "
+				+ budget);
+		for (int i = 0; i < encodings.length; i++) {
+			System.err.println(String.format(
+					"%-12s %10d variables %10d clauses %8.0f ms %3d timeouts",
+					encodings[i], variables[i], clauses[i], nanos[i] / 1e6,
+					timeouts[i]));
+		}
+
+	}
+
+	private static boolean isSolution(Blocks[][] nonogram, boolean[][] solution) {
+		BitGrid grid = BitGrid.fromSolution(solution);
+		return isEqual(nonogram[0], ClueCompiler.compileColumns(grid))
+				&& isEqual(nonogram[1], ClueCompiler.compileRows(grid));
+	}
+
+	private static boolean isEqual(Blocks[] expected, Blocks[] actual) {
+		for (int i = 0; i < expected.length; i++) {
+			if (!expected[i].toString().equals(actual[i].toString())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+/**
+ * Immutable class that represents a hint for a player: the state of a cell
+ * and why the cell has this state.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class Hint {
+
+	/**
+	 * How the state of the cell follows from the clues and the cells the
+	 * player has determined.
+	 */
+	public static enum Reason {
+		/**
+		 * The player set the cell to the wrong state. The hint carries the
+		 * right one.
+		 */
+		MISTAKE,
+		/**
+		 * The cell has this state in every placement of the blocks of a
+		 * single line.
+		 */
+		LINE,
+		/**
+		 * Giving the cell the other state leads to a contradiction when the
+		 * lines are looked at one after the other.
+		 */
+		PROBING,
+		/**
+		 * Only a search over the whole nonogram shows that the cell can't
+		 * have the other state.
+		 */
+		SEARCH
+	}
+
+	private final Reason reason;
+
+	private final int col;
+
+	private final int row;
+
+	private final byte state;
+
+	/**
+	 * Whether the line that forces the cell is a column or a row.
+	 */
+	private final boolean column;
+
+	/**
+	 * The index of the line that forces the cell, -1 if no single line does.
+	 */
+	private final int line;
+
+	Hint(Reason reason, int col, int row, byte state, boolean column, int line) {
+		this.reason = reason;
+		this.col = col;
+		this.row = row;
+		this.state = state;
+		this.column = column;
+		this.line = line;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	public int getCol() {
+		return col;
+	}
+
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Returns the state of the cell.
+	 * 
+	 * @return {@link KnowledgeGrid#FILLED} or {@link KnowledgeGrid#EMPTY}
+	 */
+	public byte getState() {
+		return state;
+	}
+
+	/**
+	 * Returns whether the line that forces the cell is a column. Only
+	 * meaningful if the reason is {@link Reason#LINE}.
+	 * 
+	 * @return true for a column, false for a row
+	 */
+	public boolean isColumn() {
+		return column;
+	}
+
+	/**
+	 * Returns the index of the line that forces the cell.
+	 * 
+	 * @return the index of the column or row, -1 unless the reason is
+	 *         {@link Reason#LINE}
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	@Override
+	public String toString() {
+		String cell = "(" + col + ", " + row + ") is "
+				+ (state == KnowledgeGrid.FILLED ? "filled" : "empty");
+		switch (reason) {
+		case MISTAKE:
+			return "mistake: " + cell;
+		case LINE:
+			return cell + " because of " + (column ? "column " : "row ")
+					+ line;
+		default:
+			return cell + " by " + reason.toString().toLowerCase();
+		}
+	}
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.musikk.nonosolver.sat.CdclSolver;
+
+/**
+ * Finds hints for a player who has determined some cells of a nonogram. The
+ * nonogram is solved once when the finder is created, every hint after that
+ * takes the cheapest reasoning that finds one:
+ * <ol>
+ * <li>cells the player got wrong compared to the solution,</li>
+ * <li>a cell that follows from a single line and the cells determined so
+ * far, preferring the line that determines the most cells,</li>
+ * <li>a cell whose other state leads to a contradiction when the lines are
+ * propagated,</li>
+ * <li>a cell whose other state makes the CNF unsatisfiable, which the SAT
+ * solver decides under the assumption of the player's cells, see
+ * {@link NonoSolver#solve(int[])}.</li>
+ * </ol>
+ * The lines are solved by {@link LineSolver} without enumerating any
+ * positions, so the first two steps take microseconds even for large
+ * nonograms. Mistakes are found by comparing to the solution found when the
+ * finder was created; for a nonogram with more than one solution they are
+ * only differences to that one.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class HintFinder {
+
+	private final int width;
+
+	private final int height;
+
+	private final boolean[][] solution;
+
+	/**
+	 * The solver that found the solution, it keeps the CNF for the search.
+	 */
+	private final NonoSolver nonoSolver;
+
+	private final LineSolver[] colSolvers;
+
+	private final LineSolver[] rowSolvers;
+
+	/**
+	 * The propagator without any known cells the probing starts from.
+	 */
+	private final LinePropagator propagator;
+
+	/**
+	 * Creates a new finder and solves the nonogram.
+	 * 
+	 * @param columns
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 * @throws IllegalArgumentException
+	 *             if the nonogram has no solution
+	 */
+	public HintFinder(Blocks[] columns, Blocks[] rows) {
+
+		this.width = columns.length;
+		this.height = rows.length;
+
+		this.nonoSolver = new NonoSolver(columns, rows, new CdclSolver());
+		if (!nonoSolver.solve()) {
+			nonoSolver.close();
+			throw new IllegalArgumentException("the nonogram has no solution");
+		}
+		this.solution = nonoSolver.getSolution();
+
+		Positions[] colPositions = new Positions[width];
+		this.colSolvers = new LineSolver[width];
+		for (int col = 0; col < width; col++) {
+			colPositions[col] = new Positions(columns[col], height, 0);
+			colSolvers[col] = new LineSolver(columns[col], height);
+		}
+		Positions[] rowPositions = new Positions[height];
+		this.rowSolvers = new LineSolver[height];
+		for (int row = 0; row < height; row++) {
+			rowPositions[row] = new Positions(rows[row], width, 0);
+			rowSolvers[row] = new LineSolver(rows[row], width);
+		}
+		this.propagator = new LinePropagator(colPositions, rowPositions);
+
+	}
+
+	/**
+	 * Returns all cells the player got wrong.
+	 * 
+	 * @param grid
+	 *            the cells the player has determined
+	 * @return hints with the right states of the cells, empty if there are no
+	 *         mistakes
+	 */
+	public List<Hint> getMistakes(KnowledgeGrid grid) {
+		checkSize(grid);
+		List<Hint> mistakes = new ArrayList<Hint>();
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				byte state = grid.get(col, row);
+				if (state != KnowledgeGrid.UNKNOWN
+						&& state != getSolutionState(col, row)) {
+					mistakes.add(new Hint(Hint.Reason.MISTAKE, col, row,
+							getSolutionState(col, row), false, -1));
+				}
+			}
+		}
+		return mistakes;
+	}
+
+	/**
+	 * Returns the next hint, see the class comment.
+	 * 
+	 * @param grid
+	 *            the cells the player has determined
+	 * @return the hint or null if all cells are determined correctly
+	 */
+	public synchronized Hint nextHint(KnowledgeGrid grid) {
+
+		List<Hint> mistakes = getMistakes(grid);
+		if (!mistakes.isEmpty()) {
+			return mistakes.get(0);
+		}
+		if (grid.isComplete()) {
+			return null;
+		}
+
+		Hint hint = findLineHint(grid);
+		if (hint == null) {
+			hint = findProbingHint(grid);
+		}
+		if (hint == null) {
+			hint = findSearchHint(grid);
+		}
+		return hint;
+
+	}
+
+	private Hint findLineHint(KnowledgeGrid grid) {
+
+		Hint best = null;
+		int bestCount = 0;
+		for (int col = 0; col < width; col++) {
+			byte[] line = new byte[height];
+			for (int row = 0; row < height; row++) {
+				line[row] = grid.get(col, row);
+			}
+			byte[] solved = line.clone();
+			colSolvers[col].solve(solved);
+			int count = 0;
+			int first = -1;
+			for (int row = 0; row < height; row++) {
+				if (solved[row] != line[row]) {
+					if (first < 0) {
+						first = row;
+					}
+					count++;
+				}
+			}
+			if (count > bestCount) {
+				bestCount = count;
+				best = new Hint(Hint.Reason.LINE, col, first, solved[first],
+						true, col);
+			}
+		}
+		for (int row = 0; row < height; row++) {
+			byte[] line = new byte[width];
+			for (int col = 0; col < width; col++) {
+				line[col] = grid.get(col, row);
+			}
+			byte[] solved = line.clone();
+			rowSolvers[row].solve(solved);
+			int count = 0;
+			int first = -1;
+			for (int col = 0; col < width; col++) {
+				if (solved[col] != line[col]) {
+					if (first < 0) {
+						first = col;
+					}
+					count++;
+				}
+			}
+			if (count > bestCount) {
+				bestCount = count;
+				best = new Hint(Hint.Reason.LINE, first, row, solved[first],
+						false, row);
+			}
+		}
+		return best;
+
+	}
+
+	private Hint findProbingHint(KnowledgeGrid grid) {
+
+		LinePropagator known = propagator.copy();
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				if (grid.get(col, row) != KnowledgeGrid.UNKNOWN) {
+					known.setCell(col, row, grid.get(col, row));
+				}
+			}
+		}
+		known.propagate();
+
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				if (grid.get(col, row) != KnowledgeGrid.UNKNOWN) {
+					continue;
+				}
+				byte state = getSolutionState(col, row);
+				LinePropagator probe = known.copy();
+				probe.setCell(col, row, opposite(state));
+				if (!probe.propagate()) {
+					return new Hint(Hint.Reason.PROBING, col, row, state,
+							false, -1);
+				}
+			}
+		}
+		return null;
+
+	}
+
+	private Hint findSearchHint(KnowledgeGrid grid) {
+
+		if (nonoSolver.getCellVariables() == null) {
+			// the line propagation solved the nonogram from the clues alone
+			return null;
+		}
+
+		List<Integer> literals = new ArrayList<Integer>();
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				byte state = grid.get(col, row);
+				if (state != KnowledgeGrid.UNKNOWN) {
+					literals.add(nonoSolver.getCellLiteral(col, row,
+							state == KnowledgeGrid.FILLED));
+				}
+			}
+		}
+		int[] assumptions = new int[literals.size() + 1];
+		for (int i = 0; i < literals.size(); i++) {
+			assumptions[i] = literals.get(i);
+		}
+
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				if (grid.get(col, row) != KnowledgeGrid.UNKNOWN) {
+					continue;
+				}
+				// assume the other state
+				assumptions[assumptions.length - 1] = nonoSolver
+						.getCellLiteral(col, row, !solution[col][row]);
+				if (!nonoSolver.solve(assumptions)) {
+					return new Hint(Hint.Reason.SEARCH, col, row,
+							getSolutionState(col, row), false, -1);
+				}
+			}
+		}
+		return null;
+
+	}
+
+	private byte getSolutionState(int col, int row) {
+		return solution[col][row] ? KnowledgeGrid.FILLED : KnowledgeGrid.EMPTY;
+	}
+
+	private static byte opposite(byte state) {
+		return state == KnowledgeGrid.FILLED ? KnowledgeGrid.EMPTY
+				: KnowledgeGrid.FILLED;
+	}
+
+	private void checkSize(KnowledgeGrid grid) {
+		if (grid.getWidth() != width || grid.getHeight() != height) {
+			throw new IllegalArgumentException("expected a grid of " + width
+					+ "x" + height + ", got " + grid.getWidth() + "x"
+					+ grid.getHeight());
+		}
+	}
+
+	/**
+	 * Returns the solution the mistakes are found with. The first index
+	 * denotes the column, the second one the row.
+	 * 
+	 * @return the solution
+	 */
+	public boolean[][] getSolution() {
+		boolean[][] copy = new boolean[width][];
+		for (int col = 0; col < width; col++) {
+			copy[col] = solution[col].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Frees the memory of the CNF the SAT solver keeps for the search. The
+	 * mistakes and the solution stay available,
+	 * {@link #nextHint(KnowledgeGrid)} throws an IllegalStateException once
+	 * it needs the SAT solver. Call this when the nonogram is done with.
+	 */
+	public synchronized void close() {
+		nonoSolver.close();
+	}
+
+}
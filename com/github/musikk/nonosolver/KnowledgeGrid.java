@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.util.Arrays;
+
+/**
+ * The knowledge about the cells of a nonogram. Every cell is either known to
+ * be marked, known to be empty or unknown.
+ * <p>
+ * A grid can be copied cheaply with {@link #snapshot()}: the copies share the
+ * columns and a column is only copied once either grid changes it.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class KnowledgeGrid {
+
+	/**
+	 * Denotes a cell whose state is not known yet.
+	 */
+	public static final byte UNKNOWN = 0;
+
+	/**
+	 * Denotes a cell that is known to be marked.
+	 */
+	public static final byte FILLED = 1;
+
+	/**
+	 * Denotes a cell that is known to be empty.
+	 */
+	public static final byte EMPTY = 2;
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * The states of all cells. The first index denotes the column, the second
+	 * one the row.
+	 */
+	private final byte[][] cells;
+
+	/**
+	 * Whether a column belongs to this grid alone or may be shared with a
+	 * snapshot and has to be copied before it is changed.
+	 */
+	private final boolean[] owned;
+
+	/**
+	 * The number of cells that are not unknown.
+	 */
+	private int determinedCount;
+
+	/**
+	 * Creates a new grid with all cells unknown.
+	 * 
+	 * @param width
+	 *            the width of the nonogram
+	 * @param height
+	 *            the height of the nonogram
+	 */
+	public KnowledgeGrid(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.cells = new byte[width][height];
+		this.owned = new boolean[width];
+		Arrays.fill(owned, true);
+	}
+
+	/**
+	 * Creates a copy of the given grid.
+	 * 
+	 * @param grid
+	 *            the grid to copy
+	 */
+	public KnowledgeGrid(KnowledgeGrid grid) {
+		this.width = grid.width;
+		this.height = grid.height;
+		this.cells = new byte[width][];
+		for (int col = 0; col < width; col++) {
+			this.cells[col] = grid.cells[col].clone();
+		}
+		this.owned = new boolean[width];
+		Arrays.fill(owned, true);
+		this.determinedCount = grid.determinedCount;
+	}
+
+	/**
+	 * Creates a grid that shares all columns with the given one.
+	 */
+	private KnowledgeGrid(KnowledgeGrid grid, boolean[] owned) {
+		this.width = grid.width;
+		this.height = grid.height;
+		this.cells = grid.cells.clone();
+		this.owned = owned;
+		this.determinedCount = grid.determinedCount;
+	}
+
+	/**
+	 * Creates a copy of this grid that shares the columns with this grid until
+	 * either of them is changed. Several threads may take snapshots at the
+	 * same time as long as none of them changes this grid.
+	 * 
+	 * @return the copy
+	 */
+	public synchronized KnowledgeGrid snapshot() {
+		Arrays.fill(owned, false);
+		return new KnowledgeGrid(this, new boolean[width]);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the state of the given cell.
+	 * 
+	 * @param col
+	 *            the column of the cell
+	 * @param row
+	 *            the row of the cell
+	 * @return one of UNKNOWN, FILLED and EMPTY
+	 */
+	public byte get(int col, int row) {
+		return cells[col][row];
+	}
+
+	/**
+	 * Sets the state of the given cell.
+	 * 
+	 * @param col
+	 *            the column of the cell
+	 * @param row
+	 *            the row of the cell
+	 * @param state
+	 *            one of UNKNOWN, FILLED and EMPTY
+	 */
+	public void set(int col, int row, byte state) {
+		byte old = cells[col][row];
+		if (old == state) {
+			return;
+		}
+		if (old == UNKNOWN) {
+			determinedCount++;
+		} else if (state == UNKNOWN) {
+			determinedCount--;
+		}
+		if (!owned[col]) {
+			cells[col] = cells[col].clone();
+			owned[col] = true;
+		}
+		cells[col][row] = state;
+	}
+
+	/**
+	 * Returns the number of cells that are either known to be marked or known
+	 * to be empty.
+	 * 
+	 * @return the number of determined cells
+	 */
+	public int getDeterminedCount() {
+		return determinedCount;
+	}
+
+	/**
+	 * Returns the percentage of cells that are either known to be marked or
+	 * known to be empty.
+	 * 
+	 * @return the percentage between 0 and 100
+	 */
+	public double getPercentDetermined() {
+		int cellCount = width * height;
+		if (cellCount == 0) {
+			return 100.0;
+		}
+		return 100.0 * determinedCount / cellCount;
+	}
+
+	/**
+	 * Checks whether the state of every cell is known.
+	 * 
+	 * @return true if no cell is unknown, false otherwise
+	 */
+	public boolean isComplete() {
+		return determinedCount == width * height;
+	}
+
+	/**
+	 * Returns a basic string representation of this grid. Marked cells are
+	 * shown as '#', empty cells as '.' and unknown cells as '?'.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder((width + 1) * height);
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				byte state = cells[col][row];
+				sb.append(state == FILLED ? '#' : state == EMPTY ? '.' : '?');
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+}
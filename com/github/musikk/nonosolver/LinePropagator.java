@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Determines cells of a nonogram by looking at a single row or column at a
+ * time. Positions of a line that contradict the cells known so far are
+ * discarded; a cell that is marked in all remaining positions is known to be
+ * marked, a cell that is marked in none of them is known to be empty. This is
+ * repeated for every line whose cells changed until nothing changes anymore.
+ * <p>
+ * Lines whose positions haven't been enumerated because there are too many of
+ * them are handled by a {@link LineSolver} which draws the same conclusions
+ * directly from the blocks.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class LinePropagator {
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * The positions of all columns that are still possible.
+	 */
+	private final List<List<Position>> colCandidates;
+
+	/**
+	 * The positions of all rows that are still possible.
+	 */
+	private final List<List<Position>> rowCandidates;
+
+	/**
+	 * The line solvers of all columns without enumerated positions, null for
+	 * the others.
+	 */
+	private final LineSolver[] colSolvers;
+
+	/**
+	 * The line solvers of all rows without enumerated positions, null for the
+	 * others.
+	 */
+	private final LineSolver[] rowSolvers;
+
+	private final KnowledgeGrid grid;
+
+	/**
+	 * The columns whose cells changed since they were looked at last.
+	 */
+	private final boolean[] dirtyCols;
+
+	/**
+	 * The rows whose cells changed since they were looked at last.
+	 */
+	private final boolean[] dirtyRows;
+
+	private SolveListener listener;
+
+	/**
+	 * Creates a new instance of this class. Initially all positions are
+	 * possible and all cells are unknown.
+	 * 
+	 * @param colPositions
+	 *            all possible positions for all columns
+	 * @param rowPositions
+	 *            all possible positions for all rows
+	 */
+	public LinePropagator(Positions[] colPositions, Positions[] rowPositions) {
+		this.width = colPositions.length;
+		this.height = rowPositions.length;
+		this.colCandidates = new ArrayList<List<Position>>(width);
+		this.colSolvers = new LineSolver[width];
+		for (int col = 0; col < width; col++) {
+			colCandidates.add(getCandidates(colPositions[col]));
+			colSolvers[col] = getLineSolver(colPositions[col]);
+		}
+		this.rowCandidates = new ArrayList<List<Position>>(height);
+		this.rowSolvers = new LineSolver[height];
+		for (int row = 0; row < height; row++) {
+			rowCandidates.add(getCandidates(rowPositions[row]));
+			rowSolvers[row] = getLineSolver(rowPositions[row]);
+		}
+		this.grid = new KnowledgeGrid(width, height);
+		this.dirtyCols = new boolean[width];
+		this.dirtyRows = new boolean[height];
+		Arrays.fill(dirtyCols, true);
+		Arrays.fill(dirtyRows, true);
+	}
+
+	/**
+	 * Creates a copy of the given propagator. The lists of candidates are
+	 * never changed, only replaced, so they are shared; the grid is a
+	 * snapshot. The listener isn't copied.
+	 */
+	private LinePropagator(LinePropagator propagator) {
+		this.width = propagator.width;
+		this.height = propagator.height;
+		this.colCandidates = new ArrayList<List<Position>>(
+				propagator.colCandidates);
+		this.rowCandidates = new ArrayList<List<Position>>(
+				propagator.rowCandidates);
+		this.colSolvers = copy(propagator.colSolvers);
+		this.rowSolvers = copy(propagator.rowSolvers);
+		this.grid = propagator.grid.snapshot();
+		this.dirtyCols = propagator.dirtyCols.clone();
+		this.dirtyRows = propagator.dirtyRows.clone();
+	}
+
+	private static LineSolver[] copy(LineSolver[] solvers) {
+		LineSolver[] copies = new LineSolver[solvers.length];
+		for (int i = 0; i < solvers.length; i++) {
+			if (solvers[i] != null) {
+				copies[i] = new LineSolver(solvers[i]);
+			}
+		}
+		return copies;
+	}
+
+	/**
+	 * Creates a copy of this propagator that can be changed independently.
+	 * Several threads may copy a propagator at the same time as long as none
+	 * of them changes it.
+	 * 
+	 * @return the copy
+	 */
+	public LinePropagator copy() {
+		return new LinePropagator(this);
+	}
+
+	/**
+	 * Sets the state of a cell, e.g. to try what follows from it. The next
+	 * call to {@link #propagate()} draws the conclusions.
+	 * 
+	 * @param col
+	 *            the column of the cell
+	 * @param row
+	 *            the row of the cell
+	 * @param state
+	 *            FILLED or EMPTY
+	 * @return false if the cell is already known to have the other state,
+	 *         true otherwise
+	 */
+	public boolean setCell(int col, int row, byte state) {
+		byte old = grid.get(col, row);
+		if (old != KnowledgeGrid.UNKNOWN) {
+			return old == state;
+		}
+		grid.set(col, row, state);
+		dirtyCols[col] = true;
+		dirtyRows[row] = true;
+		return true;
+	}
+
+	private static List<Position> getCandidates(Positions positions) {
+		return positions.isEnumerated() ? positions.getPositions() : null;
+	}
+
+	private static LineSolver getLineSolver(Positions positions) {
+		return positions.isEnumerated() ? null : new LineSolver(
+				positions.getBlockInfo(), positions.getWidth());
+	}
+
+	/**
+	 * Sets the listener that gets notified whenever more cells are known.
+	 * 
+	 * @param listener
+	 *            the listener, may be null
+	 */
+	public void setListener(SolveListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Propagates until no more cells can be determined. Only lines whose
+	 * cells changed since the last call are looked at. If the listener asks
+	 * to abort a CancellationException is thrown.
+	 * 
+	 * @return false if a contradiction was found, i.e. the nonogram has no
+	 *         solution, true otherwise
+	 */
+	public boolean propagate() {
+
+		boolean dirty = true;
+		while (dirty) {
+			dirty = false;
+			for (int col = 0; col < width; col++) {
+				if (!dirtyCols[col]) {
+					continue;
+				}
+				dirtyCols[col] = false;
+				int changed = updateLine(true, col, dirtyRows);
+				if (changed < 0) {
+					return false;
+				}
+				if (changed > 0) {
+					dirty = true;
+					notifyListener();
+				}
+			}
+			for (int row = 0; row < height; row++) {
+				if (!dirtyRows[row]) {
+					continue;
+				}
+				dirtyRows[row] = false;
+				int changed = updateLine(false, row, dirtyCols);
+				if (changed < 0) {
+					return false;
+				}
+				if (changed > 0) {
+					dirty = true;
+					notifyListener();
+				}
+			}
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Discards the positions of a line that contradict the known cells and
+	 * determines the cells that are equal in all remaining positions.
+	 * 
+	 * @param column
+	 *            true if the line is a column, false if it is a row
+	 * @param index
+	 *            the index of the line
+	 * @param dirtyCrossLines
+	 *            the crossing lines, the ones whose cell changed get marked
+	 * @return the number of newly determined cells, -1 if no position is left
+	 */
+	private int updateLine(boolean column, int index, boolean[] dirtyCrossLines) {
+
+		NonoSolver.checkInterrupted();
+
+		List<Position> candidates = column ? colCandidates.get(index)
+				: rowCandidates.get(index);
+		int length = column ? height : width;
+
+		byte[] line = new byte[length];
+		for (int i = 0; i < length; i++) {
+			line[i] = column ? grid.get(index, i) : grid.get(i, index);
+		}
+
+		if (candidates == null) {
+			return updateLine(column ? colSolvers[index] : rowSolvers[index],
+					column, index, line, dirtyCrossLines);
+		}
+
+		List<Position> remaining = new ArrayList<Position>(candidates.size());
+		for (Position p : candidates) {
+			if (isConsistent(p, line)) {
+				remaining.add(p);
+			}
+		}
+		if (remaining.isEmpty()) {
+			return -1;
+		}
+		if (remaining.size() < candidates.size()) {
+			if (column) {
+				colCandidates.set(index, remaining);
+			} else {
+				rowCandidates.set(index, remaining);
+			}
+		}
+
+		int changed = 0;
+		for (int i = 0; i < length; i++) {
+			if (line[i] != KnowledgeGrid.UNKNOWN) {
+				continue;
+			}
+			boolean mark = remaining.get(0).hasMark(i);
+			boolean equal = true;
+			for (int j = 1; j < remaining.size() && equal; j++) {
+				equal = remaining.get(j).hasMark(i) == mark;
+			}
+			if (equal) {
+				byte state = mark ? KnowledgeGrid.FILLED : KnowledgeGrid.EMPTY;
+				if (column) {
+					grid.set(index, i, state);
+				} else {
+					grid.set(i, index, state);
+				}
+				dirtyCrossLines[i] = true;
+				changed++;
+			}
+		}
+
+		return changed;
+
+	}
+
+	/**
+	 * Determines the cells of a line without enumerated positions.
+	 * 
+	 * @return the number of newly determined cells, -1 if the blocks don't
+	 *         fit
+	 */
+	private int updateLine(LineSolver solver, boolean column, int index,
+			byte[] line, boolean[] dirtyCrossLines) {
+
+		byte[] solved = line.clone();
+		if (!solver.solve(solved)) {
+			return -1;
+		}
+
+		int changed = 0;
+		for (int i = 0; i < line.length; i++) {
+			if (solved[i] == line[i]) {
+				continue;
+			}
+			if (column) {
+				grid.set(index, i, solved[i]);
+			} else {
+				grid.set(i, index, solved[i]);
+			}
+			dirtyCrossLines[i] = true;
+			changed++;
+		}
+
+		return changed;
+
+	}
+
+	private static boolean isConsistent(Position p, byte[] line) {
+		for (int i = 0; i < line.length; i++) {
+			if (line[i] == KnowledgeGrid.UNKNOWN) {
+				continue;
+			}
+			if (p.hasMark(i) != (line[i] == KnowledgeGrid.FILLED)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void notifyListener() {
+		if (listener != null && !listener.progress(grid)) {
+			throw new CancellationException("solving aborted by listener");
+		}
+	}
+
+	/**
+	 * Returns the current knowledge about the cells.
+	 * 
+	 * @return the grid
+	 */
+	public KnowledgeGrid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * Returns the positions of the given column that are still possible.
+	 * 
+	 * @param col
+	 *            the column
+	 * @return the possible positions or null if the positions of the column
+	 *         haven't been enumerated
+	 */
+	public List<Position> getColumnCandidates(int col) {
+		List<Position> candidates = colCandidates.get(col);
+		return candidates == null ? null : new ArrayList<Position>(candidates);
+	}
+
+	/**
+	 * Returns the positions of the given row that are still possible.
+	 * 
+	 * @param row
+	 *            the row
+	 * @return the possible positions or null if the positions of the row
+	 *         haven't been enumerated
+	 */
+	public List<Position> getRowCandidates(int row) {
+		List<Position> candidates = rowCandidates.get(row);
+		return candidates == null ? null : new ArrayList<Position>(candidates);
+	}
+
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.util.Arrays;
+
+/**
+ * Determines the cells of a single line from its blocks and the cells known so
+ * far without enumerating the positions of the blocks. For every prefix and
+ * suffix of the line it is computed which blocks fit into it; a cell can be
+ * empty if the blocks before it fit into the prefix and the blocks after it
+ * into the suffix, and a cell can be marked if a block can be placed over it
+ * that way. This takes time proportional to the length of the line times the
+ * number of blocks.
+ * <p>
+ * Lines of at most {@value BitLineSolver#MAX_LENGTH} cells are handed to a
+ * {@link BitLineSolver} which computes the same tables on bit masks.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class LineSolver {
+
+	/**
+	 * The lengths of the blocks, blocks of length zero are left out.
+	 */
+	private final int[] blocks;
+
+	private final int length;
+
+	/**
+	 * The earliest start of every block found by the last call to solve().
+	 */
+	private final int[] earliestStarts;
+
+	/**
+	 * The latest start of every block found by the last call to solve().
+	 */
+	private final int[] latestStarts;
+
+	/**
+	 * The solver working on bit masks, null if the line is too long for it.
+	 */
+	private final BitLineSolver bitSolver;
+
+	/**
+	 * The tables of solveCells(), see there. They are allocated by the first
+	 * call and kept, so solving a long line doesn't allocate anything.
+	 */
+	private int[] emptyBefore;
+
+	private int[] filledBefore;
+
+	private boolean[] prefix;
+
+	private boolean[] suffix;
+
+	private int[] coverDelta;
+
+	/**
+	 * Creates a new solver for a line.
+	 * 
+	 * @param blockInfo
+	 *            the blocks of the line
+	 * @param length
+	 *            the length of the line
+	 */
+	public LineSolver(Blocks blockInfo, int length) {
+		int count = 0;
+		for (int block : blockInfo.getBlocks()) {
+			if (block > 0) {
+				count++;
+			}
+		}
+		this.blocks = new int[count];
+		int i = 0;
+		for (int block : blockInfo.getBlocks()) {
+			if (block > 0) {
+				blocks[i++] = block;
+			}
+		}
+		this.length = length;
+		this.earliestStarts = new int[count];
+		this.latestStarts = new int[count];
+		this.bitSolver = length <= BitLineSolver.MAX_LENGTH ? new BitLineSolver(
+				blockInfo, length) : null;
+	}
+
+	/**
+	 * Creates a new solver for the same line as the given one. Solvers keep
+	 * the starts found by the last call to solve(), so every thread needs its
+	 * own one.
+	 * 
+	 * @param solver
+	 *            the solver to copy
+	 */
+	public LineSolver(LineSolver solver) {
+		this.blocks = solver.blocks;
+		this.length = solver.length;
+		this.earliestStarts = new int[blocks.length];
+		this.latestStarts = new int[blocks.length];
+		this.bitSolver = solver.bitSolver == null ? null : new BitLineSolver(
+				solver.bitSolver);
+	}
+
+	/**
+	 * Determines as many cells of the line as possible. The states are the
+	 * ones of {@link KnowledgeGrid}.
+	 * 
+	 * @param line
+	 *            the states of the cells, unknown cells get updated
+	 * @return false if the blocks can't be placed consistently with the known
+	 *         cells, true otherwise
+	 */
+	public boolean solve(byte[] line) {
+		if (bitSolver == null) {
+			return solveCells(line);
+		}
+		if (!bitSolver.solve(line)) {
+			return false;
+		}
+		for (int j = 0; j < blocks.length; j++) {
+			earliestStarts[j] = bitSolver.getEarliestStart(j);
+			latestStarts[j] = bitSolver.getLatestStart(j);
+		}
+		return true;
+	}
+
+	/**
+	 * Determines as many cells of the line as possible cell by cell, without
+	 * a {@link BitLineSolver} even if the line is short enough for it.
+	 * 
+	 * @param line
+	 *            the states of the cells, unknown cells get updated
+	 * @return false if the blocks can't be placed consistently with the known
+	 *         cells, true otherwise
+	 */
+	public boolean solveCells(byte[] line) {
+
+		int k = blocks.length;
+		int n = length;
+		int stride = n + 1;
+		if (prefix == null) {
+			emptyBefore = new int[stride];
+			filledBefore = new int[stride];
+			prefix = new boolean[(k + 1) * stride];
+			suffix = new boolean[(k + 1) * stride];
+			coverDelta = new int[stride];
+		}
+
+		// emptyBefore[i] is the number of empty cells in [0, i)
+		for (int i = 0; i < n; i++) {
+			emptyBefore[i + 1] = emptyBefore[i]
+					+ (line[i] == KnowledgeGrid.EMPTY ? 1 : 0);
+			filledBefore[i + 1] = filledBefore[i]
+					+ (line[i] == KnowledgeGrid.FILLED ? 1 : 0);
+		}
+
+		// prefix[j * stride + i]: the first j blocks fit into [0, i)
+		for (int i = 0; i <= n; i++) {
+			prefix[i] = filledBefore[i] == 0;
+		}
+		for (int j = 1; j <= k; j++) {
+			int b = blocks[j - 1];
+			int row = j * stride;
+			prefix[row] = false;
+			for (int i = 1; i <= n; i++) {
+				boolean fits = prefix[row + i - 1]
+						&& line[i - 1] != KnowledgeGrid.FILLED;
+				if (!fits && i >= b && emptyBefore[i] == emptyBefore[i - b]) {
+					fits = fitsBefore(line, j - 1, i - b);
+				}
+				prefix[row + i] = fits;
+			}
+		}
+
+		// suffix[j * stride + i]: the blocks from j on fit into [i, n)
+		for (int i = 0; i <= n; i++) {
+			suffix[k * stride + i] = filledBefore[n] == filledBefore[i];
+		}
+		for (int j = k - 1; j >= 0; j--) {
+			int b = blocks[j];
+			int row = j * stride;
+			suffix[row + n] = false;
+			for (int i = n - 1; i >= 0; i--) {
+				boolean fits = suffix[row + i + 1]
+						&& line[i] != KnowledgeGrid.FILLED;
+				if (!fits && i + b <= n && emptyBefore[i + b] == emptyBefore[i]) {
+					fits = fitsAfter(line, j, i + b);
+				}
+				suffix[row + i] = fits;
+			}
+		}
+
+		if (!prefix[k * stride + n]) {
+			return false;
+		}
+
+		// the number of blocks that can cover a cell, as differences
+		Arrays.fill(coverDelta, 0);
+		for (int j = 0; j < k; j++) {
+			int b = blocks[j];
+			earliestStarts[j] = -1;
+			for (int s = 0; s + b <= n; s++) {
+				if (emptyBefore[s + b] == emptyBefore[s]
+						&& fitsBefore(line, j, s) && fitsAfter(line, j, s + b)) {
+					if (earliestStarts[j] < 0) {
+						earliestStarts[j] = s;
+					}
+					latestStarts[j] = s;
+					coverDelta[s]++;
+					coverDelta[s + b]--;
+				}
+			}
+		}
+
+		int cover = 0;
+		for (int i = 0; i < n; i++) {
+			cover += coverDelta[i];
+			boolean canFill = cover > 0;
+			boolean canEmpty = false;
+			if (line[i] != KnowledgeGrid.FILLED) {
+				for (int j = 0; j <= k && !canEmpty; j++) {
+					canEmpty = prefix[j * stride + i]
+							&& suffix[j * stride + i + 1];
+				}
+			}
+			if (canFill && !canEmpty) {
+				line[i] = KnowledgeGrid.FILLED;
+			} else if (canEmpty && !canFill) {
+				line[i] = KnowledgeGrid.EMPTY;
+			} else if (!canFill && !canEmpty) {
+				return false;
+			}
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Counts the positions of the blocks that are consistent with the known
+	 * cells.
+	 * 
+	 * @param line
+	 *            the states of the cells, it isn't changed
+	 * @return the number of positions, possibly rounded
+	 */
+	public double countPositions(byte[] line) {
+
+		int k = blocks.length;
+		int n = length;
+
+		int[] emptyBefore = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			emptyBefore[i + 1] = emptyBefore[i]
+					+ (line[i] == KnowledgeGrid.EMPTY ? 1 : 0);
+		}
+
+		// count[j][i]: the number of ways the first j blocks fit into [0, i)
+		double[][] count = new double[k + 1][n + 1];
+		count[0][0] = 1;
+		for (int i = 1; i <= n; i++) {
+			count[0][i] = line[i - 1] == KnowledgeGrid.FILLED ? 0
+					: count[0][i - 1];
+		}
+		for (int j = 1; j <= k; j++) {
+			int b = blocks[j - 1];
+			for (int i = 1; i <= n; i++) {
+				// either the last cell is empty or block j - 1 ends there
+				double ways = line[i - 1] == KnowledgeGrid.FILLED ? 0
+						: count[j][i - 1];
+				if (i >= b && emptyBefore[i] == emptyBefore[i - b]) {
+					int start = i - b;
+					if (start == 0) {
+						ways += j == 1 ? 1 : 0;
+					} else if (line[start - 1] != KnowledgeGrid.FILLED) {
+						ways += count[j - 1][start - 1];
+					}
+				}
+				count[j][i] = ways;
+			}
+		}
+
+		return count[k][n];
+
+	}
+
+	/**
+	 * Returns whether block j can start at the given cell as far as the
+	 * blocks before it are concerned.
+	 */
+	private boolean fitsBefore(byte[] line, int j, int start) {
+		if (start == 0) {
+			return j == 0;
+		}
+		return line[start - 1] != KnowledgeGrid.FILLED
+				&& prefix[j * (length + 1) + start - 1];
+	}
+
+	/**
+	 * Returns whether block j can end before the given cell as far as the
+	 * blocks after it are concerned.
+	 */
+	private boolean fitsAfter(byte[] line, int j, int end) {
+		if (end == length) {
+			return j == blocks.length - 1;
+		}
+		return line[end] != KnowledgeGrid.FILLED
+				&& suffix[(j + 1) * (length + 1) + end + 1];
+	}
+
+	/**
+	 * Returns the number of blocks of length greater than zero.
+	 * 
+	 * @return the number of blocks
+	 */
+	public int getBlockCount() {
+		return blocks.length;
+	}
+
+	/**
+	 * Returns the length of a block.
+	 * 
+	 * @param block
+	 *            the index of the block among the blocks of length greater
+	 *            than zero
+	 * @return the length
+	 */
+	public int getBlockLength(int block) {
+		return blocks[block];
+	}
+
+	/**
+	 * Returns the earliest cell a block can start at according to the last
+	 * successful call to {@link #solve(byte[])}.
+	 * 
+	 * @param block
+	 *            the index of the block
+	 * @return the earliest start
+	 */
+	public int getEarliestStart(int block) {
+		return earliestStarts[block];
+	}
+
+	/**
+	 * Returns the latest cell a block can start at according to the last
+	 * successful call to {@link #solve(byte[])}.
+	 * 
+	 * @param block
+	 *            the index of the block
+	 * @return the latest start
+	 */
+	public int getLatestStart(int block) {
+		return latestStarts[block];
+	}
+
+}
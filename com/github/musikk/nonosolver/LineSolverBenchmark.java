@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.github.musikk.nonosolver.corpus.CorpusEntry;
+import com.github.musikk.nonosolver.corpus.CorpusReader;
+
+/**
+ * Compares {@link LineSolver#solveCells(byte[])} with the
+ * {@link BitLineSolver} on the lines of all nonograms of a corpus file whose
+ * solution is stored. Every line is solved with a part of the cells of the
+ * solution known, from none to most of them, and with a few of the known cells
+ * flipped to include contradictions. Both solvers have to draw the same
+ * conclusions; lines longer than {@value BitLineSolver#MAX_LENGTH} cells are
+ * left out.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class LineSolverBenchmark {
+
+	private static final int WARM_UP_ROUNDS = 5;
+
+	private static final int ROUNDS = 20;
+
+	/**
+	 * The probabilities with which a cell of the solution is known.
+	 */
+	private static final double[] KNOWN = { 0, 0.1, 0.25, 0.5, 0.75 };
+
+	/**
+	 * The probability with which a known cell is flipped.
+	 */
+	private static final double FLIPPED = 0.01;
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.err.println("usage: LineSolverBenchmark <corpus file>");
+			return;
+		}
+
+		List<LineSolver> solvers = new ArrayList<LineSolver>();
+		List<BitLineSolver> bitSolvers = new ArrayList<BitLineSolver>();
+		List<byte[]> lines = new ArrayList<byte[]>();
+		Random random = new Random(0);
+		CorpusReader reader = new CorpusReader(new File(args[0]));
+		try {
+			for (int number = 1; number <= reader.getMaxNumber(); number++) {
+				CorpusEntry entry = reader.get(number);
+				if (entry == null || entry.getSolution() == null) {
+					continue;
+				}
+				BitGrid solution = entry.getSolution();
+				Blocks[] cols = entry.getCols();
+				for (int col = 0; col < cols.length; col++) {
+					boolean[] cells = new boolean[solution.getHeight()];
+					for (int row = 0; row < cells.length; row++) {
+						cells[row] = solution.get(col, row);
+					}
+					addLines(cols[col], cells, random, solvers, bitSolvers,
+							lines);
+				}
+				Blocks[] rows = entry.getRows();
+				for (int row = 0; row < rows.length; row++) {
+					boolean[] cells = new boolean[solution.getWidth()];
+					for (int col = 0; col < cells.length; col++) {
+						cells[col] = solution.get(col, row);
+					}
+					addLines(rows[row], cells, random, solvers, bitSolvers,
+							lines);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (lines.isEmpty()) {
+			System.err.println("no solutions in the corpus file, convert it"
+					+ " with -solve");
+			return;
+		}
+
+		int contradictions = 0;
+		for (int i = 0; i < lines.size(); i++) {
+			byte[] expected = lines.get(i).clone();
+			byte[] actual = lines.get(i).clone();
+			boolean solved = solvers.get(i).solveCells(expected);
+			if (bitSolvers.get(i).solve(actual) != solved
+					|| solved && !Arrays.equals(expected, actual)) {
+				throw new IllegalStateException("the solvers disagree on "
+						+ Arrays.toString(lines.get(i)));
+			}
+			if (!solved) {
+				contradictions++;
+			}
+		}
+
+		long cellNanos = 0;
+		long bitNanos = 0;
+		for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < lines.size(); i++) {
+				solvers.get(i).solveCells(lines.get(i).clone());
+			}
+			long middle = System.nanoTime();
+			for (int i = 0; i < lines.size(); i++) {
+				bitSolvers.get(i).solve(lines.get(i).clone());
+			}
+			long end = System.nanoTime();
+			if (round >= WARM_UP_ROUNDS) {
+				cellNanos += middle - start;
+				bitNanos += end - middle;
+			}
+		}
+
+		long count = (long) ROUNDS * lines.size();
+		System.err.println(lines.size() + " lines, " + contradictions
+				+ " contradictions");
+		System.err.println(String.format("cells %8.1f ns/line",
+				(double) cellNanos / count));
+		System.err.println(String.format("bits  %8.1f ns/line",
+				(double) bitNanos / count));
+
+	}
+
+	private static void addLines(Blocks blocks, boolean[] cells,
+			Random random, List<LineSolver> solvers,
+			List<BitLineSolver> bitSolvers, List<byte[]> lines) {
+		if (cells.length > BitLineSolver.MAX_LENGTH) {
+			return;
+		}
+		LineSolver solver = new LineSolver(blocks, cells.length);
+		BitLineSolver bitSolver = new BitLineSolver(blocks, cells.length);
+		for (double known : KNOWN) {
+			byte[] line = new byte[cells.length];
+			for (int i = 0; i < cells.length; i++) {
+				if (random.nextDouble() >= known) {
+					continue;
+				}
+				boolean marked = cells[i] ^ random.nextDouble() < FLIPPED;
+				line[i] = marked ? KnowledgeGrid.FILLED : KnowledgeGrid.EMPTY;
+			}
+			solvers.add(solver);
+			bitSolvers.add(bitSolver);
+			lines.add(line);
+		}
+	}
+
+}
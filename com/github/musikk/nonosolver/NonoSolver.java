@@ -26,29 +26,29 @@
  */
 package com.github.musikk.nonosolver;
 
-import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.imageio.ImageIO;
-
-import com.github.musikk.minisat4j.Clause;
-import com.github.musikk.minisat4j.Solver;
-import com.github.musikk.minisat4j.SolverResult;
-import com.github.musikk.minisat4j.Variable;
+import com.github.musikk.nonosolver.sat.SatSolver;
+import com.github.musikk.nonosolver.sat.SatSolvers;
+import com.github.musikk.nonosolver.util.ArrayUtils;
 import com.github.musikk.nonosolver.util.ImageCreator;
-import com.github.musikk.minisat4j.util.Timer;
 
 /**
- * This class solves a nonogram utilizing the minisat constraint solver.
+ * This class solves a nonogram utilizing a SAT solver, by default minisat. See
+ * {@link SatSolvers} for the available backends.
+ * <p>
+ * Usually a variable is created for every possible position of every line.
+ * Lines with more positions than the budget of {@link Positions} allows are
+ * encoded by the starts of their blocks instead, which takes a number of
+ * variables proportional to the length of the line times its number of
+ * blocks.
  * 
  * @author Werner Hahn
  * @version 0.1
@@ -75,25 +75,88 @@ public class NonoSolver {
 	private final int height;
 
 	/**
-	 * The Solver instance used to solve the nonogram.
+	 * The SAT solver used to solve the nonogram.
+	 */
+	private final SatSolver solver;
+
+	/**
+	 * The variables of all cells.
 	 */
-	private final Solver solver;
+	private int[][] cellVariables;
 
 	/**
-	 * The result of the Solver.
+	 * The variables of the positions of all columns, indexed by the index of
+	 * the positions.
 	 */
-	private SolverResult solverResult;
+	private int[][] colPositionVariables;
 
 	/**
-	 * An array of Variables for all cells.
+	 * The variables of the positions of all rows, indexed by the index of the
+	 * positions.
 	 */
-	private final Variable[][] cellVariables;
+	private int[][] rowPositionVariables;
 
 	/**
 	 * The time it took to create the constraint system.
 	 */
 	private long constraintCreationTime;
 
+	/**
+	 * The time the Solver took.
+	 */
+	private long solvingTime;
+
+	/**
+	 * The number of clauses handed to the Solver so far.
+	 */
+	private volatile int clauseCount;
+
+	/**
+	 * The stage the solving process is in.
+	 */
+	private volatile Stage stage = Stage.CONSTRAINTS;
+
+	/**
+	 * The listener that gets notified about the progress, may be null.
+	 */
+	private SolveListener listener;
+
+	/**
+	 * How the cells are tied to the positions.
+	 */
+	private Encoding encoding = Encoding.EQUIVALENCE;
+
+	/**
+	 * The positions of all rows the CNF was created from.
+	 */
+	private List<List<Position>> rowCandidates;
+
+	/**
+	 * The prober used after the line propagation, may be null.
+	 */
+	private Prober prober;
+
+	/**
+	 * The knowledge about the cells.
+	 */
+	private KnowledgeGrid grid;
+
+	/**
+	 * The solution if one was found.
+	 */
+	private boolean[][] solution;
+
+	/**
+	 * Whether {@link #createConstraints()} has finished.
+	 */
+	private boolean constraintsCreated;
+
+	/**
+	 * Whether the nonogram has a solution if that was found out without the
+	 * SAT solver, null otherwise.
+	 */
+	private Boolean decided;
+
 	/**
 	 * Creates a new nonogram solver for the nonogram described by the given
 	 * file.
@@ -102,25 +165,143 @@ public class NonoSolver {
 	 *            the nonogram
 	 */
 	public NonoSolver(File nonoFile) {
+		this(new BlockCreator(nonoFile));
+	}
+
+	/**
+	 * Creates a new nonogram solver for the nonogram described by the given
+	 * block creator.
+	 * 
+	 * @param bc
+	 *            the block creator holding the nonogram
+	 */
+	public NonoSolver(BlockCreator bc) {
+		this(bc.getCols(), bc.getRows());
+	}
 
-		BlockCreator bc = new BlockCreator(nonoFile);
-		Blocks[] columns = bc.getCols();
-		Blocks[] rows = bc.getRows();
+	/**
+	 * Creates a new nonogram solver for the nonogram described by the given
+	 * block information.
+	 * 
+	 * @param columns
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 */
+	public NonoSolver(Blocks[] columns, Blocks[] rows) {
+		this(columns, rows, SatSolvers.create());
+	}
 
-		Positions[][] positions = calculatePositions(columns, rows);
+	/**
+	 * Creates a new nonogram solver for the nonogram described by the given
+	 * block information that uses the given SAT solver. Large nonograms are
+	 * solved without enumerating any positions, see
+	 * {@link Positions#getDefaultBudget(int, int)}.
+	 * 
+	 * @param columns
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 * @param solver
+	 *            the SAT solver, no constraints must have been added to it
+	 */
+	public NonoSolver(Blocks[] columns, Blocks[] rows, SatSolver solver) {
+		this(columns, rows, solver, Positions.getDefaultBudget(columns.length,
+				rows.length));
+	}
+
+	/**
+	 * Creates a new nonogram solver for the nonogram described by the given
+	 * block information that uses the given SAT solver and enumerates the
+	 * positions of a line only if there are not more of them than the given
+	 * budget.
+	 * 
+	 * @param columns
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 * @param solver
+	 *            the SAT solver, no constraints must have been added to it
+	 * @param positionBudget
+	 *            the maximum number of positions to enumerate for a line
+	 * @throws IllegalArgumentException
+	 *             if the nonogram is colored, see
+	 *             {@link com.github.musikk.nonosolver.color.ColorNonoSolver}
+	 */
+	public NonoSolver(Blocks[] columns, Blocks[] rows, SatSolver solver,
+			long positionBudget) {
+		this(solver, calculatePositions(columns, rows, positionBudget, null));
+	}
+
+	/**
+	 * Creates a new nonogram solver for the given positions, see
+	 * {@link #calculatePositions(Blocks[], Blocks[], long, AtomicInteger)}.
+	 * 
+	 * @param solver
+	 *            the SAT solver, no constraints must have been added to it
+	 * @param positions
+	 *            the positions of all columns and all rows
+	 */
+	NonoSolver(SatSolver solver, Positions[][] positions) {
 		this.colPositions = positions[0];
 		this.rowPositions = positions[1];
-		this.width = columns.length;
-		this.height = rows.length;
-		this.solver = new Solver();
-
-		cellVariables = new Variable[width][];
-		for (int i = 0; i < width; i++) {
-			cellVariables[i] = new Variable[height];
-			for (int j = 0; j < height; j++) {
-				cellVariables[i][j] = Variable.getVariable();
+		this.width = colPositions.length;
+		this.height = rowPositions.length;
+		this.solver = solver;
+	}
+
+	/**
+	 * Creates a variable for every cell and every position that is still
+	 * possible.
+	 * 
+	 * @param propagator
+	 *            the propagator holding the possible positions
+	 */
+	private void createVariables(LinePropagator propagator) {
+
+		cellVariables = new int[width][height];
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				// the ladder encoding needs a variable for every cell
+				boolean eliminated = encoding == Encoding.ROW_LINKED
+						&& colPositions[col].isEnumerated()
+						&& rowPositions[row].isEnumerated();
+				if (!eliminated) {
+					cellVariables[col][row] = solver.newVariable();
+				}
 			}
 		}
+
+		colPositionVariables = new int[width][];
+		for (int col = 0; col < width; col++) {
+			colPositionVariables[col] = createPositionVariables(
+					colPositions[col], propagator.getColumnCandidates(col));
+		}
+		rowPositionVariables = new int[height][];
+		for (int row = 0; row < height; row++) {
+			rowPositionVariables[row] = createPositionVariables(
+					rowPositions[row], propagator.getRowCandidates(row));
+		}
+
+	}
+
+	/**
+	 * Creates a variable for every given candidate.
+	 * 
+	 * @return the variables indexed by the index of the positions, zero for
+	 *         positions that aren't possible anymore, null if the positions
+	 *         haven't been enumerated
+	 */
+	private int[] createPositionVariables(Positions positions,
+			List<Position> candidates) {
+		if (candidates == null) {
+			return null;
+		}
+		int[] variables = new int[positions.size()];
+		for (Position p : candidates) {
+			variables[p.getIndex()] = solver.newVariable();
+		}
+		return variables;
 	}
 
 	/**
@@ -134,114 +315,706 @@ public class NonoSolver {
 	 * @param positions
 	 *            all positions that contain the cell the variable is associated
 	 *            with
-	 * @return the constraints
+	 * @param positionVariables
+	 *            the variables of the positions of the line
 	 */
-	private static List<Clause> createCellConstraintsForCell(Variable cellVar,
-			List<Position> positions) {
+	private void createCellConstraintsForCell(int cellVar,
+			List<Position> positions, int[] positionVariables) {
 
-		List<Variable> positionVars = new ArrayList<Variable>(positions.size());
-		for (Position p : positions) {
-			positionVars.add(p.getVariable());
+		int[] positionVars = new int[positions.size()];
+		for (int i = 0; i < positionVars.length; i++) {
+			positionVars[i] = positionVariables[positions.get(i).getIndex()];
 		}
-		return Arrays.asList(Clause.equivalence(cellVar, positionVars));
+		solver.addEquivalence(cellVar, positionVars);
 	}
 
-	private List<Clause> createCellConstraints() {
+	/**
+	 * Returns all positions of the given ones that have a mark in the field
+	 * specified by the parameter.
+	 * 
+	 * @param positions
+	 *            the positions
+	 * @param field
+	 *            zero based position of the mark in question
+	 * @return the positions with a mark in the field
+	 */
+	private static List<Position> getPositions(List<Position> positions,
+			int field) {
+		List<Position> result = new ArrayList<Position>();
+		for (Position position : positions) {
+			if (position.hasMark(field)) {
+				result.add(position);
+			}
+		}
+		return result;
+	}
 
-		List<Clause> cellConstraints = new ArrayList<Clause>();
+	private void createCellConstraints(LinePropagator propagator) {
+
+		rowCandidates = new ArrayList<List<Position>>(height);
+		for (int row = 0; row < height; row++) {
+			rowCandidates.add(propagator.getRowCandidates(row));
+		}
 
 		for (int col = 0; col < width; col++) {
-			Positions possibleColumnPositions = this.colPositions[col];
+			checkInterrupted();
+			List<Position> colCandidates = propagator
+					.getColumnCandidates(col);
 			for (int row = 0; row < height; row++) {
-				Positions possibleRowPositions = this.rowPositions[row];
-				Variable cellVar = cellVariables[col][row];
-
-				List<Position> colPositionsForThisCell = possibleColumnPositions
-						.getPositions(row);
-				List<Position> rowPositionsForThisCell = possibleRowPositions
-						.getPositions(col);
-
-				cellConstraints.addAll(createCellConstraintsForCell(cellVar,
-						colPositionsForThisCell));
-				cellConstraints.addAll(createCellConstraintsForCell(cellVar,
-						rowPositionsForThisCell));
+				int cellVar = cellVariables[col][row];
+
+				List<Position> rowPositionsForThisCell = null;
+				if (rowCandidates.get(row) != null) {
+					rowPositionsForThisCell = getPositions(
+							rowCandidates.get(row), col);
+					if (cellVar != 0) {
+						createCellConstraintsForCell(cellVar,
+								rowPositionsForThisCell,
+								rowPositionVariables[row]);
+					}
+				}
+				if (colCandidates == null) {
+					continue;
+				}
+				List<Position> colPositionsForThisCell = getPositions(
+						colCandidates, row);
+				if (encoding == Encoding.EQUIVALENCE) {
+					createCellConstraintsForCell(cellVar,
+							colPositionsForThisCell, colPositionVariables[col]);
+				} else if (encoding == Encoding.ONE_SIDED) {
+					// a marked cell is covered by a position of its column
+					int[] clause = new int[colPositionsForThisCell.size() + 1];
+					clause[0] = -cellVar;
+					for (int i = 1; i < clause.length; i++) {
+						clause[i] = colPositionVariables[col][colPositionsForThisCell
+								.get(i - 1).getIndex()];
+					}
+					solver.addClause(clause);
+				} else if (cellVar != 0) {
+					// all cells of a column have to be tied the same way
+					for (Position p : colPositionsForThisCell) {
+						solver.addClause(-colPositionVariables[col][p
+								.getIndex()], cellVar);
+					}
+				} else {
+					// the cell is marked iff a position of its row covers it
+					int[] clause = new int[rowPositionsForThisCell.size() + 1];
+					for (int i = 1; i < clause.length; i++) {
+						clause[i] = rowPositionVariables[row][rowPositionsForThisCell
+								.get(i - 1).getIndex()];
+					}
+					for (Position p : colPositionsForThisCell) {
+						clause[0] = -colPositionVariables[col][p.getIndex()];
+						solver.addClause(clause.clone());
+					}
+				}
 			}
+			clauseCount = solver.getClauseCount();
 		}
 
-		return cellConstraints;
 	}
 
-	private static List<Clause> createPositionConstraints(Positions positions) {
+	/**
+	 * Checks whether the rows and the columns have the same number of marks
+	 * in total. The encodings other than {@link Encoding#EQUIVALENCE} rely on
+	 * that.
+	 */
+	private boolean isMarkCountEqual() {
+		long count = 0;
+		for (Positions col : colPositions) {
+			count += ArrayUtils.sum(col.getBlockInfo().getBlocks());
+		}
+		for (Positions row : rowPositions) {
+			count -= ArrayUtils.sum(row.getBlockInfo().getBlocks());
+		}
+		return count == 0;
+	}
+
+	private void createPositionConstraints(List<Position> positions,
+			int[] positionVariables) {
 
-		List<Variable> variables = new ArrayList<Variable>();
-		for (Position p : positions.getPositions()) {
-			variables.add(p.getVariable());
+		if (positions == null) {
+			return;
 		}
-		return Arrays.asList(Clause.onlyOne(variables
-				.toArray(new Variable[] {})));
+		int[] variables = new int[positions.size()];
+		for (int i = 0; i < variables.length; i++) {
+			variables[i] = positionVariables[positions.get(i).getIndex()];
+		}
+		solver.addExactlyOne(variables);
 	}
 
-	private List<Clause> createPositionConstraints() {
+	private void createPositionConstraints(LinePropagator propagator) {
 
-		List<Clause> posConstraints = new ArrayList<Clause>();
+		for (int col = 0; col < width; col++) {
+			checkInterrupted();
+			createPositionConstraints(propagator.getColumnCandidates(col),
+					colPositionVariables[col]);
+		}
+		for (int row = 0; row < height; row++) {
+			checkInterrupted();
+			createPositionConstraints(propagator.getRowCandidates(row),
+					rowPositionVariables[row]);
+		}
+		clauseCount = solver.getClauseCount();
 
-		for (Positions col : colPositions) {
-			posConstraints.addAll(createPositionConstraints(col));
+	}
+
+	/**
+	 * Encodes all lines whose positions haven't been enumerated by the starts
+	 * of their blocks.
+	 */
+	private void createBlockStartConstraints(LinePropagator propagator) {
+
+		KnowledgeGrid grid = propagator.getGrid();
+		for (int col = 0; col < width; col++) {
+			if (colPositions[col].isEnumerated()) {
+				continue;
+			}
+			checkInterrupted();
+			byte[] line = new byte[height];
+			for (int row = 0; row < height; row++) {
+				line[row] = grid.get(col, row);
+			}
+			createBlockStartConstraints(colPositions[col], line,
+					cellVariables[col]);
 		}
-		for (Positions row : rowPositions) {
-			posConstraints.addAll(createPositionConstraints(row));
+		for (int row = 0; row < height; row++) {
+			if (rowPositions[row].isEnumerated()) {
+				continue;
+			}
+			checkInterrupted();
+			byte[] line = new byte[width];
+			int[] cells = new int[width];
+			for (int col = 0; col < width; col++) {
+				line[col] = grid.get(col, row);
+				cells[col] = cellVariables[col][row];
+			}
+			createBlockStartConstraints(rowPositions[row], line, cells);
 		}
+		clauseCount = solver.getClauseCount();
 
-		return posConstraints;
 	}
 
 	/**
-	 * Solves the CNF for the nonogram.
+	 * Stands for a literal that is always true in
+	 * {@link #addBlockStartClause(int...)}, its negation for one that is
+	 * always false.
+	 */
+	private static final int TRUE = Integer.MAX_VALUE;
+
+	/**
+	 * Encodes a single line by the starts of its blocks. The variable
+	 * starts[b][p] is true iff block b starts at field p or later. It only
+	 * exists between the earliest and the latest start the line solver finds,
+	 * before that it is always true, after that always false. A field is
+	 * marked iff a block b covers it, i.e. b starts at field - length + 1 or
+	 * later but not at field + 1 or later.
+	 * 
+	 * @param positions
+	 *            the positions of the line, not enumerated
+	 * @param line
+	 *            the known states of the fields
+	 * @param cells
+	 *            the variables of the fields
+	 */
+	private void createBlockStartConstraints(Positions positions, byte[] line,
+			int[] cells) {
+
+		LineSolver lineSolver = new LineSolver(positions.getBlockInfo(),
+				positions.getWidth());
+		lineSolver.solve(line);
+		for (int i = 0; i < line.length; i++) {
+			if (line[i] == KnowledgeGrid.FILLED) {
+				solver.addClause(cells[i]);
+			} else if (line[i] == KnowledgeGrid.EMPTY) {
+				solver.addClause(-cells[i]);
+			}
+		}
+
+		int blockCount = lineSolver.getBlockCount();
+		int[] earliest = new int[blockCount];
+		int[][] starts = new int[blockCount][];
+		for (int b = 0; b < blockCount; b++) {
+			earliest[b] = lineSolver.getEarliestStart(b);
+			int latest = lineSolver.getLatestStart(b);
+			starts[b] = new int[latest - earliest[b] + 2];
+			starts[b][0] = TRUE;
+			for (int p = 1; p <= latest - earliest[b]; p++) {
+				starts[b][p] = solver.newVariable();
+			}
+			starts[b][starts[b].length - 1] = -TRUE;
+		}
+
+		for (int b = 0; b < blockCount; b++) {
+			int length = lineSolver.getBlockLength(b);
+			int latest = earliest[b] + starts[b].length - 2;
+			for (int p = earliest[b] + 1; p <= latest; p++) {
+				// starting at p or later implies starting at p - 1 or later
+				addBlockStartClause(-startsAt(starts, earliest, b, p),
+						startsAt(starts, earliest, b, p - 1));
+				// and the next block starts after this one
+				if (b + 1 < blockCount) {
+					addBlockStartClause(-startsAt(starts, earliest, b, p),
+							startsAt(starts, earliest, b + 1, p + length + 1));
+				}
+			}
+		}
+
+		int[] covering = new int[blockCount];
+		for (int field = 0; field < line.length; field++) {
+			int count = 0;
+			for (int b = 0; b < blockCount; b++) {
+				int length = lineSolver.getBlockLength(b);
+				int latest = earliest[b] + starts[b].length - 2;
+				if (field < earliest[b] || field - length + 1 > latest) {
+					continue;
+				}
+				int from = startsAt(starts, earliest, b, field - length + 1);
+				int after = startsAt(starts, earliest, b, field + 1);
+				// block b covering the field marks it
+				addBlockStartClause(-from, after, cells[field]);
+				covering[count++] = b;
+			}
+			// a marked field lies in none of the gaps around the blocks that
+			// can cover it, i.e. no block ends before it while the next one
+			// starts after it
+			for (int i = 0; i <= count; i++) {
+				int before = i > 0 ? covering[i - 1] : -1;
+				int after = i < count ? covering[i] : -1;
+				int ended = before < 0 ? -TRUE : startsAt(starts, earliest,
+						before, field - lineSolver.getBlockLength(before) + 1);
+				int notStarted = after < 0 ? -TRUE : -startsAt(starts,
+						earliest, after, field + 1);
+				addBlockStartClause(-cells[field], ended, notStarted);
+			}
+		}
+
+	}
+
+	/**
+	 * Returns the literal stating that block b starts at field p or later.
+	 */
+	private static int startsAt(int[][] starts, int[] earliest, int b, int p) {
+		int index = p - earliest[b];
+		if (index <= 0) {
+			return TRUE;
+		}
+		if (index >= starts[b].length - 1) {
+			return -TRUE;
+		}
+		return starts[b][index];
+	}
+
+	/**
+	 * Adds a clause that may contain the constants {@link #TRUE} and -TRUE.
+	 */
+	private void addBlockStartClause(int... literals) {
+		int count = 0;
+		for (int literal : literals) {
+			if (literal == TRUE) {
+				return;
+			}
+			if (literal != -TRUE) {
+				literals[count++] = literal;
+			}
+		}
+		if (count == 0) {
+			throw new IllegalStateException("empty clause");
+		}
+		solver.addClause(Arrays.copyOf(literals, count));
+	}
+
+	/**
+	 * Throws a CancellationException if the current thread has been
+	 * interrupted. The constraint creation checks this regularly so solving
+	 * can be aborted.
+	 */
+	static void checkInterrupted() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("solving interrupted");
+		}
+	}
+
+	/**
+	 * Sets the listener that gets notified whenever more cells are known.
+	 * 
+	 * @param listener
+	 *            the listener, may be null
+	 */
+	public void setListener(SolveListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets how the cells are tied to the positions.
+	 * 
+	 * @param encoding
+	 *            the encoding
+	 */
+	public void setEncoding(Encoding encoding) {
+		this.encoding = encoding;
+	}
+
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Sets the prober that tries to determine more cells after the line
+	 * propagation. Probing is expensive but can shrink the CNF of hard
+	 * nonograms considerably.
+	 * 
+	 * @param prober
+	 *            the prober, null to skip probing
+	 */
+	public void setProber(Prober prober) {
+		this.prober = prober;
+	}
+
+	/**
+	 * Determines as many cells as possible by looking at single lines, see
+	 * {@link LinePropagator}, and, if a {@link Prober} is set, by probing.
+	 * Only if that doesn't solve the nonogram a CNF is created from the
+	 * positions that are still possible. This is the first part of
+	 * {@link #solve()} and is done only once, calling it separately allows to
+	 * create the constraints and to solve them on different threads. If the
+	 * current thread gets interrupted or the listener asks to abort, a
+	 * CancellationException is thrown.
+	 * 
+	 * @return true if the SAT solver is needed, false if the nonogram was
+	 *         either solved or found to have no solution already
+	 */
+	public boolean createConstraints() {
+
+		if (constraintsCreated) {
+			return decided == null;
+		}
+
+		long constraintCreationStart = System.currentTimeMillis();
+
+		LinePropagator propagator = new LinePropagator(colPositions,
+				rowPositions);
+		propagator.setListener(listener);
+		boolean consistent = propagator.propagate();
+		if (consistent && prober != null && !propagator.getGrid().isComplete()) {
+			consistent = prober.probe(propagator);
+		}
+		this.grid = propagator.getGrid();
+		if (!consistent || grid.isComplete()) {
+			this.constraintCreationTime = System.currentTimeMillis()
+					- constraintCreationStart;
+			if (consistent) {
+				this.solution = new boolean[width][height];
+				for (int col = 0; col < width; col++) {
+					for (int row = 0; row < height; row++) {
+						solution[col][row] = grid.get(col, row) == KnowledgeGrid.FILLED;
+					}
+				}
+			}
+			constraintsCreated = true;
+			decided = consistent;
+			stage = Stage.DONE;
+			return false;
+		}
+
+		if (encoding != Encoding.EQUIVALENCE && !isMarkCountEqual()) {
+			this.constraintCreationTime = System.currentTimeMillis()
+					- constraintCreationStart;
+			constraintsCreated = true;
+			decided = false;
+			stage = Stage.DONE;
+			return false;
+		}
+
+		createVariables(propagator);
+		createCellConstraints(propagator);
+		createPositionConstraints(propagator);
+		createBlockStartConstraints(propagator);
+
+		this.constraintCreationTime = System.currentTimeMillis()
+				- constraintCreationStart;
+		constraintsCreated = true;
+		return true;
+
+	}
+
+	/**
+	 * Solves the nonogram. The constraints are created first if that hasn't
+	 * happened yet, see {@link #createConstraints()}, and solved if the SAT
+	 * solver is needed. If the current thread gets interrupted or the
+	 * listener asks to abort, a CancellationException is thrown. Whether the
+	 * SAT solver itself can be interrupted depends on the backend.
 	 * 
 	 * @return true if the CNF is satisfiable, i.e. there is a solution, false
 	 *         otherwise
 	 */
 	public boolean solve() {
+		return solve(new int[0]);
+	}
 
-		Timer constraintCreationTimer = Timer.startTimer();
+	/**
+	 * Solves the nonogram under the assumption that the given literals of
+	 * cell variables are true, e.g. <code>getCellLiteral(3, 4, true)</code>
+	 * to ask whether there is a solution with the cell in column 3 and row 4
+	 * marked. The assumptions only hold for this call. The CNF is created
+	 * once by the first call and kept, so further calls neither create any
+	 * constraints nor lose what the SAT solver has learned. Only the Java SAT
+	 * solver supports assumptions.
+	 * <p>
+	 * The solution is replaced by the one found under the assumptions, the
+	 * knowledge grid and the listener only get the solution of a call without
+	 * assumptions.
+	 * 
+	 * @param assumptions
+	 *            literals of the variables returned by
+	 *            {@link #getCellVariables()}
+	 * @return true if there is a solution under the assumptions, false
+	 *         otherwise
+	 * @throws IllegalStateException
+	 *             if there are assumptions but no CNF was created because the
+	 *             nonogram was decided by the line propagation
+	 * @throws UnsupportedOperationException
+	 *             if there are assumptions but the SAT solver doesn't support
+	 *             them, checked before any constraints are created
+	 */
+	public boolean solve(int[] assumptions) {
 
-		List<Clause> cellConstraints = createCellConstraints();
-		solver.addClauses(cellConstraints);
+		if (assumptions.length > 0 && !solver.supportsAssumptions()) {
+			throw new UnsupportedOperationException(
+					"the SAT solver doesn't support assumptions, select the "
+							+ "Java SAT solver with -D"
+							+ SatSolvers.BACKEND_PROPERTY + "=java");
+		}
+		if (!createConstraints()) {
+			if (assumptions.length > 0) {
+				throw new IllegalStateException(
+						"no CNF, the nonogram was decided without the SAT solver");
+			}
+			return decided;
+		}
 
-		List<Clause> posConstraints = createPositionConstraints();
-		solver.addClauses(posConstraints);
+		checkInterrupted();
+		stage = Stage.SOLVING;
+		long solvingStart = System.currentTimeMillis();
+		boolean satisfiable = solver.solve(assumptions);
+		this.solvingTime = System.currentTimeMillis() - solvingStart;
+		stage = Stage.DONE;
 
-		constraintCreationTimer.stop();
-		this.constraintCreationTime = constraintCreationTimer.getDuration();
+		if (!satisfiable) {
+			if (assumptions.length == 0) {
+				solution = null;
+			}
+			return false;
+		}
+
+		Position[] rowSolution = new Position[height];
+		for (int row = 0; row < height; row++) {
+			if (rowCandidates.get(row) == null) {
+				continue;
+			}
+			for (Position p : rowCandidates.get(row)) {
+				if (solver.getValue(rowPositionVariables[row][p.getIndex()])) {
+					rowSolution[row] = p;
+					break;
+				}
+			}
+		}
+
+		this.solution = new boolean[width][height];
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				int cellVar = cellVariables[col][row];
+				solution[col][row] = cellVar != 0 ? solver.getValue(cellVar)
+						: rowSolution[row].hasMark(col);
+			}
+		}
+		if (assumptions.length > 0) {
+			return true;
+		}
+
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				grid.set(col, row, solution[col][row] ? KnowledgeGrid.FILLED
+						: KnowledgeGrid.EMPTY);
+			}
+		}
+		if (listener != null) {
+			listener.progress(grid);
+		}
+
+		return true;
+
+	}
 
-		this.solverResult = solver.solve();
+	/**
+	 * Returns the literal that states that a cell is marked or empty, for use
+	 * as an assumption of {@link #solve(int[])}.
+	 * 
+	 * @param col
+	 *            the column of the cell
+	 * @param row
+	 *            the row of the cell
+	 * @param marked
+	 *            true for the literal stating that the cell is marked, false
+	 *            for the one stating that it is empty
+	 * @return the literal
+	 * @throws IllegalStateException
+	 *             if no CNF has been created or the cell has no variable in
+	 *             the {@link Encoding#ROW_LINKED} encoding
+	 */
+	public int getCellLiteral(int col, int row, boolean marked) {
+		if (cellVariables == null) {
+			throw new IllegalStateException("no CNF has been created");
+		}
+		int variable = cellVariables[col][row];
+		if (variable == 0) {
+			throw new IllegalStateException("cell (" + col + ", " + row
+					+ ") has no variable in the " + encoding + " encoding");
+		}
+		return marked ? variable : -variable;
+	}
+
+	/**
+	 * Returns the SAT solver variables of all cells. The first index denotes
+	 * the column, the second one the row.
+	 * 
+	 * @return the variables or null if no CNF has been created, an element is
+	 *         zero if the {@link Encoding#ROW_LINKED} encoding eliminated the
+	 *         variable
+	 */
+	public int[][] getCellVariables() {
+		return cellVariables == null ? null : cellVariables.clone();
+	}
+
+	/**
+	 * Returns the solution found by the last call to {@link #solve()}. The
+	 * first index denotes the column, the second one the row. A true element
+	 * represents a marked cell.
+	 * 
+	 * @return the solution or null if there is none
+	 */
+	public boolean[][] getSolution() {
+		return solution == null ? null : solution.clone();
+	}
+
+	/**
+	 * Returns the knowledge about the cells after the last call to
+	 * {@link #solve()}.
+	 * 
+	 * @return the grid or null if solve() wasn't called yet
+	 */
+	public KnowledgeGrid getKnowledgeGrid() {
+		return grid;
+	}
 
-		return solverResult.isSatisfiable();
+	public int getWidth() {
+		return width;
+	}
 
+	public int getHeight() {
+		return height;
 	}
 
-	public Variable[][] getCellVariables() {
-		return cellVariables.clone();
+	public SatSolver getSatSolver() {
+		return solver;
 	}
 
-	public SolverResult getSolverResult() {
-		return solverResult;
+	/**
+	 * Frees the memory the SAT solver holds for the CNF. The solution and the
+	 * knowledge grid stay available, but no more solves may run afterwards.
+	 * Call this when the nonogram is done with to not wait for the garbage
+	 * collector.
+	 */
+	public void close() {
+		solver.close();
 	}
 
 	public long getConstraintCreationTime() {
 		return constraintCreationTime;
 	}
 
-	private static Positions[][] calculatePositions(Blocks[] columns,
-			Blocks[] rows) {
+	public long getSolvingTime() {
+		return solvingTime;
+	}
+
+	/**
+	 * Returns the number of clauses handed to the Solver so far. This may be
+	 * called from another thread while the constraints are created.
+	 * 
+	 * @return the number of clauses
+	 */
+	public int getClauseCount() {
+		return clauseCount;
+	}
+
+	/**
+	 * Returns the number of enumerated positions of all rows and columns.
+	 * 
+	 * @return the number of positions
+	 */
+	public int getPositionCount() {
+		int count = 0;
+		for (Positions col : colPositions) {
+			count += col.size();
+		}
+		for (Positions row : rowPositions) {
+			count += row.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the stage the solving process is in. This may be called from
+	 * another thread.
+	 * 
+	 * @return the stage
+	 */
+	public Stage getStage() {
+		return stage;
+	}
+
+	/**
+	 * Calculates the positions of all lines. This is the part of creating a
+	 * solver that may take long.
+	 * 
+	 * @param budget
+	 *            the maximum number of positions to enumerate for a line
+	 * @param positionCount
+	 *            incremented by the number of positions of every line as soon
+	 *            as they are enumerated, so another thread can follow the
+	 *            progress, may be null
+	 * @return the positions of the columns and the rows
+	 * @throws IllegalArgumentException
+	 *             if the nonogram is colored
+	 */
+	static Positions[][] calculatePositions(Blocks[] columns, Blocks[] rows,
+			long budget, AtomicInteger positionCount) {
+
+		for (Blocks[] lines : new Blocks[][] { columns, rows }) {
+			for (Blocks line : lines) {
+				if (line.isColored()) {
+					throw new IllegalArgumentException(
+							"colored nonograms are solved by ColorNonoSolver");
+				}
+			}
+		}
+
 		Positions[] colPositions = new Positions[columns.length];
 		Positions[] rowPositions = new Positions[rows.length];
 
 		for (int i = 0; i < colPositions.length; i++) {
-			colPositions[i] = new Positions(columns[i], rows.length);
+			checkInterrupted();
+			colPositions[i] = new Positions(columns[i], rows.length, budget);
+			if (positionCount != null) {
+				positionCount.addAndGet(colPositions[i].size());
+			}
 		}
 		for (int i = 0; i < rowPositions.length; i++) {
-			rowPositions[i] = new Positions(rows[i], columns.length);
+			checkInterrupted();
+			rowPositions[i] = new Positions(rows[i], columns.length, budget);
+			if (positionCount != null) {
+				positionCount.addAndGet(rowPositions[i].size());
+			}
 		}
 
 		return new Positions[][] { colPositions, rowPositions };
@@ -253,9 +1026,20 @@ public class NonoSolver {
 			.getProperty("java.io.tmpdir")
 			+ "/nonogram_solution%number%.png";
 
+	/**
+	 * The option that prints the solution to standard output instead of
+	 * writing an image. AWT and ImageIO are then never loaded, which matters
+	 * for the start-up time of single small nonograms.
+	 */
+	private static final String TEXT_OPTION = "-text";
+
 	public static void main(String[] args) {
 
-		if (args.length < 1) {
+		boolean textOnly = args.length >= 1 && TEXT_OPTION.equals(args[0]);
+		if (textOnly) {
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+		if (args.length < 1 || (textOnly && args.length > 1)) {
 			printUsage();
 			return;
 		}
@@ -267,10 +1051,11 @@ public class NonoSolver {
 					inputFileName));
 		}
 
+		// null in text-only mode
 		File outputFile = null;
 		if (args.length >= 2) {
 			outputFile = new File(args[1]);
-		} else {
+		} else if (!textOnly) {
 			int number = 0;
 			boolean fileNameFound = false;
 			while (!fileNameFound) {
@@ -286,119 +1071,94 @@ public class NonoSolver {
 		boolean solved = ns.solve();
 		System.err.println("constraint creation took "
 				+ ns.getConstraintCreationTime() / 1000.0 + "s");
-		System.err.println(ns.getSolverResult());
+		if (ns.getCellVariables() != null) {
+			System.err.println("solving took " + ns.getSolvingTime() / 1000.0
+					+ "s");
+			System.err.println(ns.getSatSolver());
+			ns.close();
+		} else {
+			System.err.println("solved by line propagation");
+		}
 		if (!solved) {
 			System.err.println("unsat");
 			return;
 		}
 
-		Variable[][] cellVariables = ns.getCellVariables();
-		for (int row = 0; row < cellVariables[0].length; row++) {
-			for (int col = 0; col < cellVariables.length; col++) {
-				Variable cellVar = cellVariables[col][row];
-				System.err.print(cellVar.getResult() ? "#" : ".");
+		boolean[][] solution = ns.getSolution();
+		PrintStream out = textOnly ? System.out : System.err;
+		StringBuilder sb = new StringBuilder();
+		for (int row = 0; row < ns.getHeight(); row++) {
+			for (int col = 0; col < ns.getWidth(); col++) {
+				sb.append(solution[col][row] ? '#' : '.');
 			}
-			System.err.println();
+			sb.append('\n');
 		}
+		out.print(sb);
+		out.flush();
 
-		BufferedImage bi = ImageCreator.createImage(ns.getCellVariables(), 10);
-		try {
-			ImageIO.write(bi, "png", outputFile);
-		} catch (IOException e) {
-			throw new RuntimeException("error writing image", e);
+		if (outputFile != null) {
+			try {
+				ImageCreator.writePng(solution, 10, outputFile);
+			} catch (IOException e) {
+				throw new RuntimeException("error writing image", e);
+			}
 		}
 
 	}
 
 	private static void printUsage() {
 		System.err.println("usage: nonosolver [input file]{1} [output file]?");
+		System.err.println("       nonosolver " + TEXT_OPTION
+				+ " [input file]{1}");
 	}
 
 	/**
-	 * A helper class that converts the file format to the block information
-	 * used by the nonogram solver.
-	 * 
-	 * @author werner
-	 * 
+	 * How the variables of the cells are tied to the positions. A cell is
+	 * marked iff one of the positions of its row covers it and iff one of the
+	 * positions of its column covers it. Since exactly one position of every
+	 * line is chosen, it suffices to tie the cells to the row positions in
+	 * both directions and to the column positions in only one: the rows then
+	 * mark exactly as many cells as their blocks add up to. If every marked
+	 * cell has to be covered by the position of its column, or every cell a
+	 * column position covers has to be marked, and the blocks of the columns
+	 * add up to the same number, the columns can't differ from the rows.
 	 */
-	private static class BlockCreator {
-
-		private final File nonoFile;
-
-		private Blocks[] cols;
-
-		private Blocks[] rows;
-
-		public BlockCreator(File nonoFile) {
-			this.nonoFile = nonoFile;
-			calculateBlocks();
-		}
-
-		private void calculateBlocks() {
-
-			try {
-				BufferedReader reader = new BufferedReader(new FileReader(
-						nonoFile));
-
-				cols = extractBlocks(reader, BlockType.COL);
-				rows = extractBlocks(reader, BlockType.ROW);
-
-				reader.close();
-			} catch (FileNotFoundException e) {
-				throw new RuntimeException("file '"
-						+ nonoFile.getAbsolutePath() + "' not found");
-			} catch (IOException e) {
-				throw new RuntimeException("error reading file", e);
-			}
-
-		}
-
-		private static Blocks[] extractBlocks(BufferedReader reader,
-				BlockType blockType) throws IOException {
-
-			String descriptor = reader.readLine();
-			Pattern p = Pattern.compile(blockType + "\\s+(\\d+)");
-			Matcher m = p.matcher(descriptor);
-			if (!m.find()) {
-				throw new RuntimeException("invalid file format, expected "
-						+ blockType + " descriptor but got '" + descriptor
-						+ "'");
-			}
-
-			int blockCount = Integer.parseInt(m.group(1));
-
-			String[] blockStrings = new String[blockCount];
-			for (int i = 0; i < blockCount; i++) {
-				String blockLine = reader.readLine();
-				blockStrings[i] = blockLine;
-			}
-
-			return Blocks.createBlockInfos(blockStrings);
-		}
-
-		public Blocks[] getCols() {
-			return cols.clone();
-		}
-
-		public Blocks[] getRows() {
-			return rows.clone();
-		}
-
-		private static enum BlockType {
-			COL("col"), ROW("row");
-
-			private final String keyWord;
-
-			private BlockType(String keyWord) {
-				this.keyWord = keyWord;
-			}
-
-			@Override
-			public String toString() {
-				return keyWord;
-			}
-		}
+	public static enum Encoding {
+		/**
+		 * Every cell is equivalent to the disjunction of the positions of its
+		 * row and to the one of its column.
+		 */
+		EQUIVALENCE,
+		/**
+		 * Every cell is equivalent to the disjunction of the positions of its
+		 * row, a marked cell only implies the disjunction of the positions of
+		 * its column.
+		 */
+		ONE_SIDED,
+		/**
+		 * Without cell variables, a column position implies for every cell it
+		 * covers the disjunction of the row positions covering the cell.
+		 * Cells of lines without enumerated positions keep their variables.
+		 */
+		ROW_LINKED
+	}
 
+	/**
+	 * The stages of the solving process.
+	 */
+	public static enum Stage {
+		/**
+		 * The possible positions or the constraints are being created.
+		 */
+		CONSTRAINTS,
+		/**
+		 * The Solver is running.
+		 */
+		SOLVING,
+		/**
+		 * The Solver finished.
+		 */
+		DONE
 	}
 
 }
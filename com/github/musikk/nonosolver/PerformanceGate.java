@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.musikk.nonosolver.corpus.CorpusConverter;
+import com.github.musikk.nonosolver.sat.CdclSolver;
+
+/**
+ * Guards against performance regressions. A fixed subset of the nonograms of
+ * <code>nonograms.tar.gz</code> is solved with the Java SAT solver and the
+ * default position budget, and for every nonogram the time to build the
+ * constraints, the time to solve them, the number of clauses and the bytes
+ * allocated by the solving thread are compared against a baseline file. A
+ * metric fails if it exceeds its baseline value by more than the relative
+ * tolerance and the absolute slack together; the slack keeps the timer
+ * resolution and the noise of tiny values from failing the gate.
+ * <p>
+ * The baseline is recorded with <code>-record</code>. The subset is chosen
+ * then: the nonograms are grouped by size class, the larger dimension rounded
+ * up to a multiple of {@value #CLASS_STEP}, and by whether they need the SAT
+ * solver, and up to {@value #PER_GROUP} nonograms evenly spread over the
+ * numbers are taken from every group. Nonograms that take longer than
+ * {@value #RECORD_LIMIT} ms are left out to keep the gate fast. Later runs
+ * measure exactly the nonograms listed in the baseline. Times depend on the
+ * machine, so the baseline should be recorded on the machine that runs the
+ * gate.
+ * <p>
+ * Every nonogram is solved {@value #ROUNDS} times after one round for warming
+ * up, the smallest value of every metric counts. Before checking, the whole
+ * subset is solved {@value #ROUNDS} times to warm up the JVM.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class PerformanceGate {
+
+	static final int PER_GROUP = 3;
+
+	static final int CLASS_STEP = 5;
+
+	static final long RECORD_LIMIT = 2000;
+
+	static final int ROUNDS = 5;
+
+	private static final long TIMEOUT = 30000;
+
+	private static final double TIME_TOLERANCE = 0.5;
+
+	private static final double TIME_SLACK = 10;
+
+	private static final double CLAUSE_TOLERANCE = 0.02;
+
+	private static final double CLAUSE_SLACK = 0;
+
+	private static final double ALLOCATION_TOLERANCE = 0.2;
+
+	private static final double ALLOCATION_SLACK = 1 << 20;
+
+	private final ExecutorService executor = Executors
+			.newSingleThreadExecutor();
+
+	/**
+	 * The metrics of one nonogram.
+	 */
+	static class Measurement {
+
+		final int number;
+
+		final int width;
+
+		final int height;
+
+		/**
+		 * The time to compute the positions and to create the constraints in
+		 * milliseconds.
+		 */
+		double buildTime;
+
+		/**
+		 * The time the SAT solver took in milliseconds, zero if the line
+		 * propagation solved the nonogram.
+		 */
+		double solveTime;
+
+		int clauses;
+
+		long allocatedBytes;
+
+		Measurement(int number, int width, int height) {
+			this.number = number;
+			this.width = width;
+			this.height = height;
+		}
+
+		void merge(Measurement m) {
+			buildTime = Math.min(buildTime, m.buildTime);
+			solveTime = Math.min(solveTime, m.solveTime);
+			clauses = Math.min(clauses, m.clauses);
+			allocatedBytes = Math.min(allocatedBytes, m.allocatedBytes);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d %d %d %.1f %.1f %d %d", number, width,
+					height, buildTime, solveTime, clauses, allocatedBytes);
+		}
+
+		static Measurement parse(String line) {
+			String[] fields = line.trim().split("\\s+");
+			if (fields.length != 7) {
+				throw new IllegalArgumentException("malformed baseline line '"
+						+ line + "'");
+			}
+			Measurement m = new Measurement(Integer.parseInt(fields[0]),
+					Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+			m.buildTime = Double.parseDouble(fields[3]);
+			m.solveTime = Double.parseDouble(fields[4]);
+			m.clauses = Integer.parseInt(fields[5]);
+			m.allocatedBytes = Long.parseLong(fields[6]);
+			return m;
+		}
+
+	}
+
+	/**
+	 * Solves a nonogram once on the thread of the executor.
+	 * 
+	 * @return the metrics or null if the nonogram wasn't solved in time
+	 */
+	private Measurement solve(final int number, final Blocks[] cols,
+			final Blocks[] rows, long timeout) throws InterruptedException {
+
+		Future<Measurement> future = executor
+				.submit(new Callable<Measurement>() {
+					@Override
+					public Measurement call() {
+						com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+								.getThreadMXBean();
+						long thread = Thread.currentThread().getId();
+						long allocated = bean.getThreadAllocatedBytes(thread);
+						long start = System.nanoTime();
+						NonoSolver solver = new NonoSolver(cols, rows,
+								new CdclSolver(), Positions
+										.getDefaultBudget());
+						long positionTime = System.nanoTime() - start;
+						try {
+							if (!solver.solve()) {
+								throw new IllegalStateException("nonogram "
+										+ number + " has no solution");
+							}
+						} finally {
+							solver.close();
+						}
+						Measurement m = new Measurement(number, cols.length,
+								rows.length);
+						m.buildTime = positionTime / 1e6
+								+ solver.getConstraintCreationTime();
+						m.solveTime = solver.getSolvingTime();
+						m.clauses = solver.getClauseCount();
+						m.allocatedBytes = bean
+								.getThreadAllocatedBytes(thread)
+								- allocated;
+						return m;
+					}
+				});
+
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			return null;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+
+	}
+
+	/**
+	 * Measures a nonogram, see the class comment.
+	 * 
+	 * @return the metrics or null if a round wasn't solved in time
+	 */
+	Measurement measure(int number, Blocks[] cols, Blocks[] rows)
+			throws InterruptedException {
+		if (solve(number, cols, rows, TIMEOUT) == null) {
+			return null;
+		}
+		Measurement result = null;
+		for (int round = 0; round < ROUNDS; round++) {
+			Measurement m = solve(number, cols, rows, TIMEOUT);
+			if (m == null) {
+				return null;
+			}
+			if (result == null) {
+				result = m;
+			} else {
+				result.merge(m);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Chooses the subset of nonograms and measures them.
+	 * 
+	 * @param nonograms
+	 *            all nonograms by their numbers
+	 * @return the baseline
+	 */
+	List<Measurement> record(SortedMap<Integer, BlockCreator> nonograms)
+			throws InterruptedException {
+
+		// groups by size class, the nonograms solved by the line propagation
+		// come first in every class
+		SortedMap<Integer, List<Integer>> groups = new TreeMap<Integer, List<Integer>>();
+		for (Map.Entry<Integer, BlockCreator> entry : nonograms.entrySet()) {
+			int number = entry.getKey();
+			BlockCreator bc = entry.getValue();
+			Measurement m = solve(number, bc.getCols(), bc.getRows(),
+					RECORD_LIMIT);
+			if (m == null) {
+				continue;
+			}
+			int size = Math.max(bc.getCols().length, bc.getRows().length);
+			int sizeClass = (size + CLASS_STEP - 1) / CLASS_STEP * CLASS_STEP;
+			Integer group = 2 * sizeClass + (m.clauses > 0 ? 1 : 0);
+			if (!groups.containsKey(group)) {
+				groups.put(group, new ArrayList<Integer>());
+			}
+			groups.get(group).add(number);
+		}
+
+		List<Measurement> baseline = new ArrayList<Measurement>();
+		for (List<Integer> numbers : groups.values()) {
+			int chosen = Math.min(PER_GROUP, numbers.size());
+			for (int i = 0; i < chosen; i++) {
+				int number = numbers.get(i * numbers.size() / chosen);
+				BlockCreator bc = nonograms.get(number);
+				Measurement m = measure(number, bc.getCols(), bc.getRows());
+				if (m != null) {
+					baseline.add(m);
+					System.err.println(m);
+				}
+			}
+		}
+		return baseline;
+
+	}
+
+	/**
+	 * Measures the nonograms of the baseline again and compares the metrics.
+	 * 
+	 * @param nonograms
+	 *            all nonograms by their numbers
+	 * @param baseline
+	 *            the baseline
+	 * @param out
+	 *            where the differences are reported
+	 * @return the number of nonograms that failed
+	 */
+	int check(SortedMap<Integer, BlockCreator> nonograms,
+			List<Measurement> baseline, PrintWriter out)
+			throws InterruptedException {
+
+		// the recording has solved all nonograms before measuring, the
+		// compiler has to see the same code paths here
+		for (int round = 0; round < ROUNDS; round++) {
+			for (Measurement expected : baseline) {
+				BlockCreator bc = nonograms.get(expected.number);
+				if (bc != null) {
+					solve(expected.number, bc.getCols(), bc.getRows(),
+							TIMEOUT);
+				}
+			}
+		}
+
+		int failed = 0;
+		for (Measurement expected : baseline) {
+			BlockCreator bc = nonograms.get(expected.number);
+			List<String> diffs = new ArrayList<String>();
+			Measurement actual = null;
+			if (bc == null) {
+				diffs.add("missing from the archive");
+			} else if (bc.getCols().length != expected.width
+					|| bc.getRows().length != expected.height) {
+				diffs.add("size changed to " + bc.getCols().length + "x"
+						+ bc.getRows().length);
+			} else {
+				actual = measure(expected.number, bc.getCols(), bc.getRows());
+				if (actual == null) {
+					diffs.add("timed out after " + TIMEOUT + " ms");
+				} else {
+					compare(diffs, "build ms", expected.buildTime,
+							actual.buildTime, TIME_TOLERANCE, TIME_SLACK);
+					compare(diffs, "solve ms", expected.solveTime,
+							actual.solveTime, TIME_TOLERANCE, TIME_SLACK);
+					compare(diffs, "clauses", expected.clauses,
+							actual.clauses, CLAUSE_TOLERANCE, CLAUSE_SLACK);
+					compare(diffs, "allocated bytes",
+							expected.allocatedBytes, actual.allocatedBytes,
+							ALLOCATION_TOLERANCE, ALLOCATION_SLACK);
+				}
+			}
+			if (!diffs.isEmpty()) {
+				failed++;
+				out.println("FAIL nonogram " + expected.number + " ("
+						+ expected.width + "x" + expected.height + ")");
+				for (String diff : diffs) {
+					out.println("    " + diff);
+				}
+			} else {
+				out.println("ok   nonogram " + expected.number + " ("
+						+ expected.width + "x" + expected.height + ")");
+			}
+			out.flush();
+		}
+		return failed;
+
+	}
+
+	private static void compare(List<String> diffs, String metric,
+			double expected, double actual, double tolerance, double slack) {
+		if (actual > expected * (1 + tolerance) + slack) {
+			diffs.add(String.format("%-16s %14s -> %14s (%+.0f%%, "
+					+ "allowed %+.0f%% plus %.0f)", metric, format(expected),
+					format(actual), expected == 0 ? 100.0
+							: (actual / expected - 1) * 100, tolerance * 100,
+					slack));
+		}
+	}
+
+	private static String format(double value) {
+		return value == Math.rint(value) ? String.valueOf((long) value)
+				: String.format("%.1f", value);
+	}
+
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	static SortedMap<Integer, BlockCreator> readNonograms(File archive)
+			throws IOException {
+		SortedMap<Integer, BlockCreator> nonograms = new TreeMap<Integer, BlockCreator>();
+		for (Map.Entry<Integer, byte[]> entry : CorpusConverter.readArchive(
+				archive).entrySet()) {
+			nonograms.put(entry.getKey(), new BlockCreator(new BufferedReader(
+					new InputStreamReader(new ByteArrayInputStream(entry
+							.getValue()), "US-ASCII"))));
+		}
+		return nonograms;
+	}
+
+	static List<Measurement> readBaseline(File file) throws IOException {
+		List<Measurement> baseline = new ArrayList<Measurement>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "US-ASCII"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				baseline.add(Measurement.parse(line));
+			}
+		} finally {
+			reader.close();
+		}
+		return baseline;
+	}
+
+	static void writeBaseline(File file, List<Measurement> baseline)
+			throws IOException {
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "US-ASCII"));
+		try {
+			out.println("# performance baseline, recorded with "
+					+ "PerformanceGate -record");
+			out.println("# java " + System.getProperty("java.version") + ", "
+					+ System.getProperty("os.name") + " "
+					+ System.getProperty("os.arch") + ", "
+					+ Runtime.getRuntime().availableProcessors()
+					+ " processors");
+			out.println("# number width height build_ms solve_ms clauses "
+					+ "allocated_bytes");
+			for (Measurement m : baseline) {
+				out.println(m);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		if (args.length < 2) {
+			System.err.println("usage: PerformanceGate <nonograms.tar.gz>"
+					+ " <baseline file> [-record]");
+			System.exit(2);
+		}
+		File archive = new File(args[0]);
+		File baselineFile = new File(args[1]);
+		boolean record = args.length >= 3 && args[2].equals("-record");
+
+		SortedMap<Integer, BlockCreator> nonograms = readNonograms(archive);
+		PerformanceGate gate = new PerformanceGate();
+		int failed;
+		int count;
+		try {
+			if (record) {
+				List<Measurement> baseline = gate.record(nonograms);
+				writeBaseline(baselineFile, baseline);
+				System.out.println("recorded " + baseline.size()
+						+ " nonograms to " + baselineFile);
+				return;
+			}
+			List<Measurement> baseline = readBaseline(baselineFile);
+			count = baseline.size();
+			failed = gate.check(nonograms, baseline, new PrintWriter(
+					System.out));
+		} finally {
+			gate.shutdown();
+		}
+
+		System.out.println((failed == 0 ? "PASSED" : "FAILED") + ": "
+				+ failed + " of " + count + " nonograms exceed the baseline");
+		System.exit(failed == 0 ? 0 : 1);
+
+	}
+
+}
@@ -26,12 +26,9 @@
  */
 package com.github.musikk.nonosolver;
 
-import java.util.Arrays;
-
-import com.github.musikk.minisat4j.Variable;
-
 /**
- * Immutable class that represents a position of marks in a row or column.
+ * Immutable class that represents a position of marks in a row or column. The
+ * marks are stored by the {@link Positions} of the row or column.
  * 
  * @author Werner Hahn
  * @version 0.1
@@ -39,47 +36,36 @@ import com.github.musikk.minisat4j.Variable;
  */
 public class Position {
 
-	/**
-	 * Every element of this array denotes the start of a new block.
-	 */
-	private final int[] positions;
-
-	/**
-	 * The associated block info for this row or column.
-	 */
-	private final Blocks blockInfo;
-
 	/**
 	 * The length of this row or column.
 	 */
 	private final int width;
 
 	/**
-	 * The Variable for the constraint solver that represents this position.
+	 * The index of this position among all positions of its row or column.
 	 */
-	private final Variable variable;
+	private final int index;
 
 	/**
-	 * A lazily computed array of marks. A true element represents a marked
-	 * cell.
+	 * The positions of the row or column that store the marks.
 	 */
-	private boolean[] marks;
+	private final Positions owner;
 
 	/**
 	 * Creates a new instance of this class.
 	 * 
-	 * @param positions
-	 *            the positions for this object
-	 * @param blockInfo
-	 *            the block info for this object
 	 * @param width
 	 *            the length of the row or column
+	 * @param index
+	 *            the index of this position among all positions of its row or
+	 *            column
+	 * @param owner
+	 *            the positions of the row or column that store the marks
 	 */
-	public Position(int[] positions, Blocks blockInfo, int width) {
-		this.positions = positions;
-		this.blockInfo = blockInfo;
+	Position(int width, int index, Positions owner) {
 		this.width = width;
-		this.variable = Variable.getVariable();
+		this.index = index;
+		this.owner = owner;
 	}
 
 	/**
@@ -90,36 +76,19 @@ public class Position {
 	 * @return true if the field is marked, false otherwise
 	 */
 	public boolean hasMark(int field) {
-		return getMarks()[field];
+		return owner.hasMark(index, field);
 	}
 
 	/**
-	 * Returns the marks of this field. If this is the first invocation of the
-	 * method, the field gets calculated first.
+	 * Returns the marks of this position. A new array is created on every
+	 * call, {@link #hasMark(int)} is cheaper.
 	 * 
 	 * @return the field of marks.
 	 */
 	public boolean[] getMarks() {
-		if (marks == null) {
-			marks = calculateMarks();
-		}
-		return marks;
-	}
-
-	/**
-	 * Calculates the marks based on the positions array.
-	 * 
-	 * @return the marks array
-	 */
-	private boolean[] calculateMarks() {
 		boolean[] marks = new boolean[width];
-		Arrays.fill(marks, false);
-		for (int i = 0; i < positions.length; i++) {
-			int pos = positions[i];
-			int blockLength = blockInfo.getBlocks()[i];
-			for (int j = pos; j < blockLength + pos; j++) {
-				marks[j] = true;
-			}
+		for (int i = 0; i < width; i++) {
+			marks[i] = hasMark(i);
 		}
 		return marks;
 	}
@@ -129,21 +98,21 @@ public class Position {
 	 */
 	@Override
 	public String toString() {
-		boolean[] marks = calculateMarks();
-		String s = "";
-		for (boolean mark : marks) {
-			s += (mark ? "#" : " ");
+		StringBuilder sb = new StringBuilder(width);
+		for (int i = 0; i < width; i++) {
+			sb.append(hasMark(i) ? '#' : ' ');
 		}
-		return s;
+		return sb.toString();
 	}
 
 	/**
-	 * Returns the Variable representing this Position.
+	 * Returns the index of this position among all positions of its row or
+	 * column.
 	 * 
-	 * @return the Variable representing this Position
+	 * @return the index
 	 */
-	public Variable getVariable() {
-		return variable;
+	public int getIndex() {
+		return index;
 	}
 
 }
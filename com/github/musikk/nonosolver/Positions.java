@@ -27,6 +27,7 @@
 package com.github.musikk.nonosolver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.github.musikk.nonosolver.util.ArrayUtils;
@@ -35,6 +36,17 @@ import com.github.musikk.nonosolver.util.ArrayUtils;
  * Immutable class that organizes a collection of {@link Position Positions}
  * that represents all possible positions a {@link Blocks Block} with a given
  * width can create.
+ * <p>
+ * The number of positions grows exponentially with the number of blocks, so
+ * they are only enumerated if their number, which is known in advance, doesn't
+ * exceed a budget. Lines over budget have to be handled by a
+ * {@link LineSolver} instead. The default budget can be set with the system
+ * property {@value #BUDGET_PROPERTY}.
+ * <p>
+ * Nonograms of at least {@value #LARGE_PUZZLE_CELLS} cells are solved in the
+ * large-puzzle mode: no positions are enumerated at all unless the property is
+ * set, so memory only grows with the primitive tables of the line solvers and
+ * the CNF.
  * 
  * @author Werner Hahn
  * @version 0.1
@@ -42,6 +54,28 @@ import com.github.musikk.nonosolver.util.ArrayUtils;
  */
 public class Positions {
 
+	/**
+	 * The system property that sets the default budget.
+	 */
+	public static final String BUDGET_PROPERTY = "nonosolver.positionBudget";
+
+	/**
+	 * The default budget if the system property isn't set.
+	 */
+	public static final long DEFAULT_BUDGET = 100;
+
+	/**
+	 * The number of cells from which on a nonogram is solved in the
+	 * large-puzzle mode, see {@link #getDefaultBudget(int, int)}.
+	 */
+	public static final int LARGE_PUZZLE_CELLS = 100 * 100;
+
+	/**
+	 * The largest array the VMs reliably allocate, a few words below
+	 * Integer.MAX_VALUE.
+	 */
+	private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
 	/**
 	 * The length of the associated row or column.
 	 */
@@ -58,9 +92,40 @@ public class Positions {
 	 */
 	private final List<Position> positions;
 
+	/**
+	 * Whether the positions have been enumerated.
+	 */
+	private final boolean enumerated;
+
+	/**
+	 * The number of longs the marks of a single position take.
+	 */
+	private final int wordsPerPosition;
+
+	/**
+	 * The marks of all positions, bit-packed. The marks of the position with
+	 * index i start at i * wordsPerPosition, bit j of a word denotes field 64
+	 * * word + j.
+	 */
+	private final long[] marks;
+
+	/**
+	 * The marks while the positions are enumerated, null afterwards.
+	 */
+	private long[] markBuffer;
+
+	/**
+	 * The lengths of the blocks and their sum, so the enumeration doesn't
+	 * have to copy them from the block info.
+	 */
+	private final int[] blockLengths;
+
+	private final int blockSum;
+
 	/**
 	 * Creates a new instance of this class and calculates all possible
-	 * positions based on the given block info and width.
+	 * positions based on the given block info and width unless there are more
+	 * of them than the default budget allows.
 	 * 
 	 * @param blockInfo
 	 *            the block info for the row or column
@@ -68,10 +133,175 @@ public class Positions {
 	 *            the length of the row or column
 	 */
 	public Positions(Blocks blockInfo, int width) {
+		this(blockInfo, width, getDefaultBudget());
+	}
+
+	/**
+	 * Creates a new instance of this class and calculates all possible
+	 * positions based on the given block info and width unless there are more
+	 * of them than the budget allows.
+	 * 
+	 * @param blockInfo
+	 *            the block info for the row or column
+	 * @param width
+	 *            the length of the row or column
+	 * @param budget
+	 *            the maximum number of positions to enumerate, lines with
+	 *            more positions than fit into an array are never enumerated
+	 */
+	public Positions(Blocks blockInfo, int width, long budget) {
 		this.width = width;
 		this.blockInfo = blockInfo;
 		this.positions = new ArrayList<Position>();
-		this.computePositions();
+		this.blockLengths = blockInfo.getBlocks();
+		this.blockSum = ArrayUtils.sum(blockLengths);
+		if (!verifyLength()) {
+			throw new IllegalArgumentException("row too wide for width "
+					+ this.width);
+		}
+		long count = countPositions(blockInfo, width);
+		this.wordsPerPosition = (width + 63) >>> 6;
+		// whatever the budget, the marks have to fit into an array
+		this.enumerated = count <= budget
+				&& count <= MAX_ARRAY_LENGTH / wordsPerPosition;
+		if (enumerated) {
+			this.markBuffer = new long[(int) Math.max(count, 1)
+					* wordsPerPosition];
+			this.computePositions();
+			this.marks = Arrays.copyOf(markBuffer, positions.size()
+					* wordsPerPosition);
+			this.markBuffer = null;
+		} else {
+			this.marks = new long[0];
+		}
+	}
+
+	/**
+	 * Returns the default budget, either from the system property
+	 * {@value #BUDGET_PROPERTY} or {@link #DEFAULT_BUDGET}.
+	 * 
+	 * @return the default budget
+	 */
+	public static long getDefaultBudget() {
+		return Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Returns the default budget for a nonogram of the given size. That is
+	 * the one of {@link #getDefaultBudget()} unless the nonogram has at least
+	 * {@value #LARGE_PUZZLE_CELLS} cells and the system property
+	 * {@value #BUDGET_PROPERTY} isn't set, then it is 0.
+	 * 
+	 * @param width
+	 *            the number of columns
+	 * @param height
+	 *            the number of rows
+	 * @return the default budget
+	 */
+	public static long getDefaultBudget(int width, int height) {
+		if ((long) width * height >= LARGE_PUZZLE_CELLS
+				&& System.getProperty(BUDGET_PROPERTY) == null) {
+			return 0;
+		}
+		return getDefaultBudget();
+	}
+
+	/**
+	 * Returns the number of positions the given blocks have on a line of the
+	 * given length without enumerating them. With k blocks and s cells left
+	 * after placing the blocks with a single empty cell between them the s
+	 * free cells are distributed over k + 1 gaps, which amounts to C(s + k,
+	 * k) positions.
+	 * 
+	 * @param blockInfo
+	 *            the block info for the row or column
+	 * @param width
+	 *            the length of the row or column
+	 * @return the number of positions, 0 if the blocks don't fit and
+	 *         Long.MAX_VALUE if the number exceeds the range of long
+	 */
+	public static long countPositions(Blocks blockInfo, int width) {
+		int k = countBlocks(blockInfo);
+		int slack = getSlack(blockInfo, width);
+		if (slack < 0) {
+			return 0;
+		}
+		return binomial(slack + k, k);
+	}
+
+	/**
+	 * Returns the decimal logarithm of {@link #countPositions(Blocks, int)}
+	 * which is useful if the number itself is too large.
+	 * 
+	 * @param blockInfo
+	 *            the block info for the row or column
+	 * @param width
+	 *            the length of the row or column
+	 * @return the logarithm of the number of positions
+	 */
+	public static double log10CountPositions(Blocks blockInfo, int width) {
+		int k = countBlocks(blockInfo);
+		int slack = getSlack(blockInfo, width);
+		if (slack < 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		double log = 0;
+		for (int i = 1; i <= k; i++) {
+			log += Math.log10((double) (slack + i) / i);
+		}
+		return log;
+	}
+
+	/**
+	 * Returns the number of blocks of length greater than zero.
+	 */
+	private static int countBlocks(Blocks blockInfo) {
+		int count = 0;
+		for (int block : blockInfo.getBlocks()) {
+			if (block > 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of cells that are free to distribute between the
+	 * blocks, negative if the blocks don't fit.
+	 */
+	private static int getSlack(Blocks blockInfo, int width) {
+		int k = countBlocks(blockInfo);
+		return width - ArrayUtils.sum(blockInfo.getBlocks())
+				- Math.max(k - 1, 0);
+	}
+
+	/**
+	 * Computes C(n, k), saturating at Long.MAX_VALUE.
+	 */
+	static long binomial(int n, int k) {
+		k = Math.min(k, n - k);
+		long result = 1;
+		for (int i = 1; i <= k; i++) {
+			// result * (n - k + i) / i is always integral
+			long factor = n - k + i;
+			long gcd = gcd(result, i);
+			long a = result / gcd;
+			long b = factor / (i / gcd);
+			if (a > Long.MAX_VALUE / b) {
+				return Long.MAX_VALUE;
+			}
+			result = a * b;
+		}
+		return result;
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
 	}
 
 	/**
@@ -83,6 +313,7 @@ public class Positions {
 	 * @return
 	 */
 	public List<Position> getPositions(int field) {
+		checkEnumerated();
 		List<Position> positions = new ArrayList<Position>();
 
 		for (Position position : this.positions) {
@@ -99,25 +330,20 @@ public class Positions {
 	 */
 	private void computePositions() {
 
-		if (!verifyLength()) {
-			throw new IllegalArgumentException("row too wide for width "
-					+ this.width);
-		}
-
 		if (blockInfo.getNumberOfBlocks() == 0) {
 			return;
 		}
 
-		shiftPosition(new int[blockInfo.getNumberOfBlocks()], 0);
+		shiftPosition(new int[blockLengths.length], 0);
 
 	}
 
 	private void shiftPosition(int[] positions, int currentPosition) {
 
-		while (positions[0] < (width - ArrayUtils.sum(blockInfo.getBlocks()) + blockInfo
-				.getNumberOfBlocks())) {
+		int[] blocks = blockLengths;
+		while (positions[0] < (width - blockSum + blocks.length)) {
 
-			if (currentPosition >= blockInfo.getNumberOfBlocks()) {
+			if (currentPosition >= blocks.length) {
 				return;
 			}
 
@@ -125,20 +351,20 @@ public class Positions {
 				positions[currentPosition] = 0;
 			} else {
 				if (positions[currentPosition] == 0) {
-					positions[currentPosition] = blockInfo.getBlocks()[currentPosition - 1]
+					positions[currentPosition] = blocks[currentPosition - 1]
 							+ positions[currentPosition - 1] + 1;
 				}
 			}
 
 			shiftPosition(positions, currentPosition + 1);
-			if (currentPosition == blockInfo.getNumberOfBlocks() - 1) {
-				this.positions.add(new Position(positions.clone(), blockInfo,
-						width));
+			if (currentPosition == blocks.length - 1) {
+				NonoSolver.checkInterrupted();
+				addPosition(positions);
 			}
 
 			int rightSum = 0;
-			for (int i = currentPosition; i < blockInfo.getNumberOfBlocks(); i++) {
-				rightSum += blockInfo.getBlocks()[i];
+			for (int i = currentPosition; i < blocks.length; i++) {
+				rightSum += blocks[i];
 				if (i != currentPosition) {
 					rightSum++;
 				}
@@ -146,8 +372,7 @@ public class Positions {
 			if (width - positions[currentPosition] > rightSum) {
 
 				positions[currentPosition]++;
-				for (int i = currentPosition + 1; i < blockInfo
-						.getNumberOfBlocks(); i++) {
+				for (int i = currentPosition + 1; i < blocks.length; i++) {
 					positions[i] = 0;
 				}
 			} else {
@@ -157,15 +382,81 @@ public class Positions {
 
 	}
 
+	/**
+	 * Adds a position and stores its marks.
+	 * 
+	 * @param starts
+	 *            the starts of the blocks
+	 */
+	private void addPosition(int[] starts) {
+		int index = this.positions.size();
+		int offset = index * wordsPerPosition;
+		if (offset + wordsPerPosition > markBuffer.length) {
+			markBuffer = Arrays.copyOf(markBuffer, 2 * markBuffer.length);
+		}
+		for (int i = 0; i < starts.length; i++) {
+			for (int field = starts[i]; field < starts[i] + blockLengths[i]; field++) {
+				markBuffer[offset + (field >>> 6)] |= 1L << field;
+			}
+		}
+		this.positions.add(new Position(width, index, this));
+	}
+
+	/**
+	 * Checks whether the position with the given index has a mark in the
+	 * given field.
+	 */
+	boolean hasMark(int index, int field) {
+		return (marks[index * wordsPerPosition + (field >>> 6)] & (1L << field)) != 0;
+	}
+
 	/**
 	 * Returns all possible positions.
 	 * 
 	 * @return all possible positions
+	 * @throws IllegalStateException
+	 *             if the positions haven't been enumerated
 	 */
 	public List<Position> getPositions() {
+		checkEnumerated();
 		return new ArrayList<Position>(positions);
 	}
 
+	/**
+	 * Returns the number of enumerated positions.
+	 * 
+	 * @return the number of possible positions, 0 if they haven't been
+	 *         enumerated
+	 */
+	public int size() {
+		return positions.size();
+	}
+
+	/**
+	 * Returns whether the positions have been enumerated or their number
+	 * exceeded the budget.
+	 * 
+	 * @return true if the positions are available
+	 */
+	public boolean isEnumerated() {
+		return enumerated;
+	}
+
+	public Blocks getBlockInfo() {
+		return blockInfo;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	private void checkEnumerated() {
+		if (!enumerated) {
+			throw new IllegalStateException("the positions of '" + blockInfo
+					+ "' exceed the budget and haven't been enumerated");
+		}
+	}
+
 	/**
 	 * Checks whether the length of this row or column is sufficient for the
 	 * given block info.
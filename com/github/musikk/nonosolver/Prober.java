@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Determines cells the line propagation alone can't determine by trying them.
+ * Every unknown cell is set to marked and to empty in turn and the
+ * consequences are propagated on a copy of the {@link LinePropagator}. If one
+ * of the two leads to a contradiction, the cell and everything that follows
+ * from the other state are known. Otherwise every cell that ends up in the
+ * same state either way is known. The cells are probed in parallel; the
+ * copies share the candidates and take snapshots of the grid, so a probe only
+ * copies what it changes.
+ * <p>
+ * Probing is repeated with the cells found in the previous round until no new
+ * cells are found.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class Prober {
+
+	/**
+	 * The number of tasks per thread the cells of a round are divided into.
+	 */
+	private static final int TASKS_PER_THREAD = 4;
+
+	private final ExecutorService executor;
+
+	private final int threads;
+
+	private int rounds;
+
+	private int probeCount;
+
+	private int foundCount;
+
+	/**
+	 * Creates a new prober.
+	 * 
+	 * @param executor
+	 *            the executor running the probes
+	 * @param threads
+	 *            the number of threads of the executor
+	 */
+	public Prober(ExecutorService executor, int threads) {
+		this.executor = executor;
+		this.threads = threads;
+	}
+
+	/**
+	 * Probes all unknown cells of the given propagator and sets the cells
+	 * found. The propagator has to be propagated already. If the current
+	 * thread gets interrupted a CancellationException is thrown.
+	 * 
+	 * @param propagator
+	 *            the propagator
+	 * @return false if a contradiction was found, i.e. the nonogram has no
+	 *         solution, true otherwise
+	 */
+	public boolean probe(LinePropagator propagator) {
+
+		while (!propagator.getGrid().isComplete()) {
+
+			rounds++;
+			KnowledgeGrid grid = propagator.getGrid();
+			List<int[]> unknown = new ArrayList<int[]>();
+			for (int col = 0; col < grid.getWidth(); col++) {
+				for (int row = 0; row < grid.getHeight(); row++) {
+					if (grid.get(col, row) == KnowledgeGrid.UNKNOWN) {
+						unknown.add(new int[] { col, row });
+					}
+				}
+			}
+			probeCount += unknown.size();
+
+			List<int[]> found = probe(propagator, unknown);
+			if (found == null) {
+				return false;
+			}
+			if (found.isEmpty()) {
+				return true;
+			}
+
+			for (int[] cell : found) {
+				if (!propagator.setCell(cell[0], cell[1], (byte) cell[2])) {
+					return false;
+				}
+			}
+			foundCount += found.size();
+			if (!propagator.propagate()) {
+				return false;
+			}
+
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Probes the given cells in parallel.
+	 * 
+	 * @return the cells found as column, row and state or null if there is a
+	 *         contradiction
+	 */
+	private List<int[]> probe(LinePropagator propagator, List<int[]> cells) {
+
+		int taskCount = Math.min(cells.size(), threads * TASKS_PER_THREAD);
+		List<Future<List<int[]>>> futures = new ArrayList<Future<List<int[]>>>(
+				taskCount);
+		for (int t = 0; t < taskCount; t++) {
+			int from = cells.size() * t / taskCount;
+			int to = cells.size() * (t + 1) / taskCount;
+			futures.add(executor.submit(new ProbeTask(propagator, cells
+					.subList(from, to))));
+		}
+
+		List<int[]> found = new ArrayList<int[]>();
+		try {
+			for (Future<List<int[]>> future : futures) {
+				List<int[]> result = future.get();
+				if (result == null) {
+					cancel(futures);
+					return null;
+				}
+				found.addAll(result);
+			}
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("probing interrupted");
+		} catch (ExecutionException e) {
+			cancel(futures);
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("error probing", e.getCause());
+		}
+		return found;
+
+	}
+
+	private static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Probes some cells, each one on its own copy of the propagator.
+	 */
+	private static class ProbeTask implements Callable<List<int[]>> {
+
+		private final LinePropagator propagator;
+
+		private final List<int[]> cells;
+
+		ProbeTask(LinePropagator propagator, List<int[]> cells) {
+			this.propagator = propagator;
+			this.cells = cells;
+		}
+
+		@Override
+		public List<int[]> call() {
+			KnowledgeGrid base = propagator.getGrid();
+			List<int[]> found = new ArrayList<int[]>();
+			// the states already found, each cell is reported once per task
+			byte[][] reported = new byte[base.getWidth()][base.getHeight()];
+			for (int[] cell : cells) {
+				int col = cell[0];
+				int row = cell[1];
+				KnowledgeGrid filled = tryState(col, row, KnowledgeGrid.FILLED);
+				KnowledgeGrid empty = tryState(col, row, KnowledgeGrid.EMPTY);
+				if (filled == null && empty == null) {
+					return null;
+				}
+				for (int c = 0; c < base.getWidth(); c++) {
+					for (int r = 0; r < base.getHeight(); r++) {
+						if (base.get(c, r) != KnowledgeGrid.UNKNOWN) {
+							continue;
+						}
+						byte state;
+						if (filled == null) {
+							state = empty.get(c, r);
+						} else if (empty == null) {
+							state = filled.get(c, r);
+						} else {
+							state = filled.get(c, r) == empty.get(c, r) ? filled
+									.get(c, r) : KnowledgeGrid.UNKNOWN;
+						}
+						if (state == KnowledgeGrid.UNKNOWN
+								|| reported[c][r] == state) {
+							continue;
+						}
+						if (reported[c][r] != KnowledgeGrid.UNKNOWN) {
+							// two probes force different states
+							return null;
+						}
+						reported[c][r] = state;
+						found.add(new int[] { c, r, state });
+					}
+				}
+			}
+			return found;
+		}
+
+		/**
+		 * Sets a cell on a copy of the propagator and propagates.
+		 * 
+		 * @return the resulting grid or null if there is a contradiction
+		 */
+		private KnowledgeGrid tryState(int col, int row, byte state) {
+			LinePropagator copy = propagator.copy();
+			copy.setCell(col, row, state);
+			return copy.propagate() ? copy.getGrid() : null;
+		}
+
+	}
+
+	/**
+	 * Returns the number of rounds of probing done so far.
+	 * 
+	 * @return the number of rounds
+	 */
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * Returns the number of cells probed so far.
+	 * 
+	 * @return the number of probes
+	 */
+	public int getProbeCount() {
+		return probeCount;
+	}
+
+	/**
+	 * Returns the number of cells found by probing so far, not counting the
+	 * ones the propagation found afterwards.
+	 * 
+	 * @return the number of cells found
+	 */
+	public int getFoundCount() {
+		return foundCount;
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+/**
+ * Immutable class that represents the outcome of a {@link TimedSolver} run
+ * along with the metrics gathered up to its end.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class SolveResult {
+
+	/**
+	 * The possible outcomes of a run.
+	 */
+	public static enum Status {
+		/**
+		 * A solution was found.
+		 */
+		SOLVED,
+		/**
+		 * The nonogram has no solution.
+		 */
+		UNSATISFIABLE,
+		/**
+		 * The deadline passed before the solving process finished.
+		 */
+		TIMEOUT
+	}
+
+	private final Status status;
+
+	/**
+	 * The solution, null unless the status is SOLVED.
+	 */
+	private final boolean[][] solution;
+
+	/**
+	 * The stage the solving process was in when it ended.
+	 */
+	private final NonoSolver.Stage stage;
+
+	/**
+	 * The wall clock time of the whole run in milliseconds.
+	 */
+	private final long elapsedTime;
+
+	private final long constraintCreationTime;
+
+	private final long solvingTime;
+
+	private final int positionCount;
+
+	private final int clauseCount;
+
+	SolveResult(Status status, boolean[][] solution, NonoSolver.Stage stage,
+			long elapsedTime, long constraintCreationTime, long solvingTime,
+			int positionCount, int clauseCount) {
+		this.status = status;
+		this.solution = solution;
+		this.stage = stage;
+		this.elapsedTime = elapsedTime;
+		this.constraintCreationTime = constraintCreationTime;
+		this.solvingTime = solvingTime;
+		this.positionCount = positionCount;
+		this.clauseCount = clauseCount;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the solution. The first index denotes the column, the second one
+	 * the row.
+	 * 
+	 * @return the solution or null if no solution was found
+	 */
+	public boolean[][] getSolution() {
+		return solution == null ? null : solution.clone();
+	}
+
+	public NonoSolver.Stage getStage() {
+		return stage;
+	}
+
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * Returns the time it took to create the constraint system. Zero if the
+	 * creation didn't finish.
+	 * 
+	 * @return the constraint creation time
+	 */
+	public long getConstraintCreationTime() {
+		return constraintCreationTime;
+	}
+
+	/**
+	 * Returns the time the Solver took. Zero if the Solver didn't finish.
+	 * 
+	 * @return the solving time
+	 */
+	public long getSolvingTime() {
+		return solvingTime;
+	}
+
+	/**
+	 * Returns the number of possible positions of all rows and columns. Zero
+	 * if their computation didn't finish.
+	 * 
+	 * @return the number of positions
+	 */
+	public int getPositionCount() {
+		return positionCount;
+	}
+
+	/**
+	 * Returns the number of clauses created up to the end of the run.
+	 * 
+	 * @return the number of clauses
+	 */
+	public int getClauseCount() {
+		return clauseCount;
+	}
+
+	@Override
+	public String toString() {
+		return status + " after " + elapsedTime + "ms in stage " + stage
+				+ " (positions: " + positionCount + ", clauses: "
+				+ clauseCount + ", constraint creation: "
+				+ constraintCreationTime + "ms, solving: " + solvingTime
+				+ "ms)";
+	}
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.musikk.nonosolver.sat.SatSolvers;
+
+/**
+ * Solves nonograms with a deadline. Every nonogram is solved on its own
+ * thread so a single long running nonogram doesn't hold up anything but the
+ * caller waiting for it. When the deadline passes the thread gets interrupted,
+ * which aborts the computation of the positions and the creation of the
+ * constraints, and a result with status {@link SolveResult.Status#TIMEOUT
+ * TIMEOUT} and the metrics gathered so far is returned.
+ * <p>
+ * Whether the SAT solver can be interrupted depends on the backend. The Java
+ * backend stops right away, minisat can't be interrupted. A nonogram that
+ * times out during solving with minisat keeps its thread busy until minisat
+ * returns, the result is discarded then. Such a nonogram keeps counting
+ * against the maximum number of nonograms solved at the same time, so
+ * nonograms that time out don't pile up on the cores; a new nonogram waits
+ * until one finishes. The waiting counts against its deadline, so no call
+ * takes much longer than the given timeout.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class TimedSolver {
+
+	private final ExecutorService executor;
+
+	/**
+	 * Permits for the nonograms being solved, including the ones that timed
+	 * out but can't be interrupted.
+	 */
+	private final Semaphore solving;
+
+	/**
+	 * Creates a new instance that solves as many nonograms at the same time as
+	 * there are processors, each on a daemon thread.
+	 */
+	public TimedSolver() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a new instance that solves up to the given number of nonograms
+	 * at the same time, each on a daemon thread.
+	 * 
+	 * @param maxSolving
+	 *            the maximum number of nonograms solved at the same time
+	 */
+	public TimedSolver(int maxSolving) {
+		this(maxSolving, new ThreadFactory() {
+			private int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "timed-solver-" + count++);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Creates a new instance that uses threads of the given factory. A new
+	 * thread is requested for every nonogram that doesn't find an idle one.
+	 * With a factory for virtual threads this is a thread per nonogram.
+	 * 
+	 * @param maxSolving
+	 *            the maximum number of nonograms solved at the same time
+	 * @param threadFactory
+	 *            the factory for the solving threads
+	 */
+	public TimedSolver(int maxSolving, ThreadFactory threadFactory) {
+		if (maxSolving < 1) {
+			throw new IllegalArgumentException("maxSolving must be positive");
+		}
+		this.executor = Executors.newCachedThreadPool(threadFactory);
+		this.solving = new Semaphore(maxSolving);
+	}
+
+	/**
+	 * Solves the given nonogram.
+	 * 
+	 * @param columns
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 * @param timeout
+	 *            the maximum time in milliseconds, including the time spent
+	 *            waiting for a thread
+	 * @return the result
+	 * @throws InterruptedException
+	 *             if the calling thread gets interrupted while waiting
+	 */
+	public SolveResult solve(final Blocks[] columns, final Blocks[] rows,
+			long timeout) throws InterruptedException {
+
+		long start = System.currentTimeMillis();
+		if (!solving.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+			return createResult(SolveResult.Status.TIMEOUT, null, 0, start);
+		}
+		final AtomicReference<NonoSolver> solverRef = new AtomicReference<NonoSolver>();
+		final AtomicInteger positionCount = new AtomicInteger();
+		// whoever sets it releases the permit: the solving thread when it's
+		// done or the caller if the nonogram never started
+		final AtomicBoolean started = new AtomicBoolean();
+
+		Future<Boolean> future;
+		try {
+			future = executor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					if (!started.compareAndSet(false, true)) {
+						return false;
+					}
+					try {
+						NonoSolver ns = new NonoSolver(SatSolvers.create(),
+								NonoSolver.calculatePositions(columns, rows,
+										Positions.getDefaultBudget(
+												columns.length, rows.length),
+										positionCount));
+						solverRef.set(ns);
+						try {
+							return ns.solve();
+						} finally {
+							ns.close();
+						}
+					} finally {
+						solving.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			solving.release();
+			throw e;
+		}
+
+		boolean solved;
+		try {
+			solved = future.get(
+					timeout - (System.currentTimeMillis() - start),
+					TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			cancel(future, started);
+			return createResult(SolveResult.Status.TIMEOUT, solverRef.get(),
+					positionCount.get(), start);
+		} catch (InterruptedException e) {
+			cancel(future, started);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("error solving nonogram", e.getCause());
+		}
+
+		return createResult(solved ? SolveResult.Status.SOLVED
+				: SolveResult.Status.UNSATISFIABLE, solverRef.get(), 0, start);
+
+	}
+
+	private void cancel(Future<Boolean> future, AtomicBoolean started) {
+		future.cancel(true);
+		if (started.compareAndSet(false, true)) {
+			solving.release();
+		}
+	}
+
+	/**
+	 * Creates the result.
+	 * 
+	 * @param ns
+	 *            the solver or null if the positions are still being
+	 *            enumerated
+	 * @param positionCount
+	 *            the number of positions enumerated so far, used if there is
+	 *            no solver
+	 */
+	private static SolveResult createResult(SolveResult.Status status,
+			NonoSolver ns, int positionCount, long start) {
+
+		long elapsedTime = System.currentTimeMillis() - start;
+		if (ns == null) {
+			return new SolveResult(status, null, NonoSolver.Stage.CONSTRAINTS,
+					elapsedTime, 0, 0, positionCount, 0);
+		}
+
+		NonoSolver.Stage stage = ns.getStage();
+		boolean done = stage == NonoSolver.Stage.DONE;
+		boolean[][] solution = status == SolveResult.Status.SOLVED ? ns
+				.getSolution() : null;
+		return new SolveResult(status, solution, stage, elapsedTime,
+				stage != NonoSolver.Stage.CONSTRAINTS ? ns
+						.getConstraintCreationTime() : 0,
+				done ? ns.getSolvingTime() : 0, ns.getPositionCount(),
+				ns.getClauseCount());
+
+	}
+
+	/**
+	 * Stops all threads, running nonograms get interrupted.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
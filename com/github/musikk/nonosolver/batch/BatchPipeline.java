@@ -0,0 +1,584 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.musikk.nonosolver.BlockCreator;
+import com.github.musikk.nonosolver.NonoSolver;
+import com.github.musikk.nonosolver.util.ImageCreator;
+
+/**
+ * Solves many nonograms in a pipeline of four stages: parsing the files,
+ * building the constraints, solving them and rendering the solutions to PNG
+ * files. Parsing and rendering mostly wait for I/O and the image encoder while
+ * building and solving keep a processor busy, so every stage gets its own
+ * threads and works on other nonograms than the others at the same time.
+ * <p>
+ * The stages are connected by bounded queues. A stage whose successor can't
+ * keep up blocks once the queue in between is full, so the nonograms in
+ * flight and the memory they take are limited no matter how many nonograms
+ * there are. The statistics of every stage, see {@link #getStats()}, tell
+ * where the nonograms pile up and which stage needs more threads.
+ * <p>
+ * A nonogram that fails in a stage skips the remaining ones and is reported
+ * with its error.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class BatchPipeline {
+
+	/**
+	 * The default capacity of the queues between the stages.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	/**
+	 * The default size of a cell in the rendered images.
+	 */
+	public static final int DEFAULT_CELL_SIZE = 10;
+
+	/**
+	 * Marks the end of the input of a stage, every thread of a stage takes
+	 * one.
+	 */
+	private static final Job END = new Job(null);
+
+	private final Stage[] stages;
+
+	private final File outputDirectory;
+
+	private final List<Result> results = Collections
+			.synchronizedList(new ArrayList<Result>());
+
+	private final AtomicInteger submitted = new AtomicInteger();
+
+	private volatile long startTime;
+
+	/**
+	 * Creates a new pipeline.
+	 * 
+	 * @param threads
+	 *            the number of threads of the parse, build, solve and render
+	 *            stage, in this order
+	 * @param queueCapacity
+	 *            the capacity of every queue between two stages
+	 * @param outputDirectory
+	 *            the directory the images are written to, null to not render
+	 *            the solutions
+	 */
+	public BatchPipeline(int[] threads, int queueCapacity,
+			final File outputDirectory) {
+
+		if (threads.length != 4) {
+			throw new IllegalArgumentException(
+					"expected the threads of 4 stages, got " + threads.length);
+		}
+		this.outputDirectory = outputDirectory;
+
+		BlockingQueue<Job> parseQueue = new ArrayBlockingQueue<Job>(
+				queueCapacity);
+		BlockingQueue<Job> buildQueue = new ArrayBlockingQueue<Job>(
+				queueCapacity);
+		BlockingQueue<Job> solveQueue = new ArrayBlockingQueue<Job>(
+				queueCapacity);
+		BlockingQueue<Job> renderQueue = new ArrayBlockingQueue<Job>(
+				queueCapacity);
+
+		this.stages = new Stage[] {
+				new Stage("parse", threads[0], parseQueue, buildQueue) {
+					@Override
+					void process(Job job) {
+						job.blockCreator = new BlockCreator(job.file);
+					}
+				}, new Stage("build", threads[1], buildQueue, solveQueue) {
+					@Override
+					void process(Job job) {
+						job.solver = new NonoSolver(job.blockCreator);
+						job.blockCreator = null;
+						job.solver.createConstraints();
+					}
+				}, new Stage("solve", threads[2], solveQueue, renderQueue) {
+					@Override
+					void process(Job job) {
+						try {
+							if (job.solver.solve()) {
+								job.solution = job.solver.getSolution();
+							}
+						} finally {
+							job.solver.close();
+						}
+						job.solver = null;
+					}
+				}, new Stage("render", threads[3], renderQueue, null) {
+					@Override
+					void process(Job job) throws IOException {
+						if (job.solution != null && outputDirectory != null) {
+							File file = new File(outputDirectory, job.file
+									.getName()
+									+ ".png");
+							ImageCreator.writePng(job.solution,
+									DEFAULT_CELL_SIZE, file);
+						}
+					}
+				} };
+
+	}
+
+	/**
+	 * Solves the given nonograms. This method blocks until all of them have
+	 * passed all stages and may only be called once.
+	 * 
+	 * @param files
+	 *            the nonogram files
+	 * @return the results in the order the nonograms were finished
+	 * @throws InterruptedException
+	 *             if the calling thread gets interrupted, the threads of the
+	 *             stages are interrupted as well then
+	 */
+	public List<Result> run(List<File> files) throws InterruptedException {
+
+		startTime = System.nanoTime();
+		for (Stage stage : stages) {
+			stage.start();
+		}
+		try {
+			for (File file : files) {
+				stages[0].input.put(new Job(file));
+				submitted.incrementAndGet();
+			}
+			for (int i = 0; i < stages[0].threads.length; i++) {
+				stages[0].input.put(END);
+			}
+			for (Stage stage : stages) {
+				for (Thread thread : stage.threads) {
+					thread.join();
+				}
+			}
+		} finally {
+			for (Stage stage : stages) {
+				for (Thread thread : stage.threads) {
+					thread.interrupt();
+				}
+			}
+		}
+
+		return new ArrayList<Result>(results);
+
+	}
+
+	/**
+	 * Returns the statistics of all stages so far. This may be called from
+	 * another thread while the pipeline is running.
+	 * 
+	 * @return the statistics in the order of the stages
+	 */
+	public List<StageStats> getStats() {
+		long elapsed = startTime == 0 ? 0 : System.nanoTime() - startTime;
+		List<StageStats> stats = new ArrayList<StageStats>();
+		for (Stage stage : stages) {
+			stats.add(stage.getStats(elapsed));
+		}
+		return stats;
+	}
+
+	/**
+	 * Returns the number of nonograms handed to the first stage so far.
+	 * 
+	 * @return the number of nonograms
+	 */
+	public int getSubmittedCount() {
+		return submitted.get();
+	}
+
+	/**
+	 * Returns the number of nonograms that have passed all stages so far.
+	 * 
+	 * @return the number of nonograms
+	 */
+	public int getFinishedCount() {
+		return results.size();
+	}
+
+	/**
+	 * A nonogram on its way through the stages. The fields are handed from
+	 * thread to thread by the queues, which makes them visible to the next
+	 * stage. Everything a later stage doesn't need is dropped as early as
+	 * possible.
+	 */
+	private static class Job {
+
+		final File file;
+
+		final long startTime = System.nanoTime();
+
+		BlockCreator blockCreator;
+
+		NonoSolver solver;
+
+		boolean[][] solution;
+
+		Exception error;
+
+		String failedStage;
+
+		Job(File file) {
+			this.file = file;
+		}
+
+	}
+
+	/**
+	 * A stage with its threads and the queue it takes the nonograms from.
+	 */
+	private abstract class Stage {
+
+		final String name;
+
+		final Thread[] threads;
+
+		final BlockingQueue<Job> input;
+
+		/**
+		 * The queue of the next stage, null for the last stage.
+		 */
+		final BlockingQueue<Job> output;
+
+		/**
+		 * The threads that haven't taken their end marker yet.
+		 */
+		final AtomicInteger running;
+
+		final AtomicInteger processed = new AtomicInteger();
+
+		final AtomicInteger failed = new AtomicInteger();
+
+		final AtomicLong busyTime = new AtomicLong();
+
+		/**
+		 * The time spent waiting for the next stage to make room.
+		 */
+		final AtomicLong blockedTime = new AtomicLong();
+
+		/**
+		 * The time spent waiting for the previous stage.
+		 */
+		final AtomicLong idleTime = new AtomicLong();
+
+		/**
+		 * The sum of the input queue sizes seen whenever a nonogram was
+		 * taken.
+		 */
+		final AtomicLong depthSum = new AtomicLong();
+
+		final AtomicInteger maxDepth = new AtomicInteger();
+
+		Stage(String name, int threadCount, BlockingQueue<Job> input,
+				BlockingQueue<Job> output) {
+			if (threadCount < 1) {
+				throw new IllegalArgumentException("stage " + name
+						+ " needs at least one thread");
+			}
+			this.name = name;
+			this.threads = new Thread[threadCount];
+			this.input = input;
+			this.output = output;
+			this.running = new AtomicInteger(threadCount);
+			for (int i = 0; i < threadCount; i++) {
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						boolean ended = false;
+						try {
+							work();
+							ended = true;
+						} catch (InterruptedException e) {
+							// the pipeline is shut down
+							ended = true;
+						} finally {
+							if (!ended) {
+								// a thread that dies still ends the next stage
+								try {
+									end();
+								} catch (InterruptedException e) {
+									// the pipeline is shut down
+								}
+							}
+						}
+					}
+				}, "batch-" + name + "-" + i);
+				threads[i].setDaemon(true);
+			}
+		}
+
+		void start() {
+			for (Thread thread : threads) {
+				thread.start();
+			}
+		}
+
+		abstract void process(Job job) throws Exception;
+
+		private void work() throws InterruptedException {
+
+			while (true) {
+				long waitStart = System.nanoTime();
+				int depth = input.size();
+				Job job = input.take();
+				long start = System.nanoTime();
+				idleTime.addAndGet(start - waitStart);
+
+				if (job == END) {
+					end();
+					return;
+				}
+
+				depthSum.addAndGet(depth);
+				int max;
+				while ((max = maxDepth.get()) < depth
+						&& !maxDepth.compareAndSet(max, depth)) {
+				}
+
+				if (job.error == null) {
+					try {
+						process(job);
+					} catch (InterruptedException e) {
+						throw e;
+					} catch (Exception e) {
+						fail(job, e);
+					} catch (Error e) {
+						// e.g. OutOfMemoryError or StackOverflowError, the
+						// memory of the nonogram is released right away
+						job.blockCreator = null;
+						fail(job, new RuntimeException(e.toString()));
+					}
+				}
+				long end = System.nanoTime();
+				busyTime.addAndGet(end - start);
+				processed.incrementAndGet();
+
+				if (output != null) {
+					output.put(job);
+					blockedTime.addAndGet(System.nanoTime() - end);
+				} else {
+					results.add(new Result(job));
+				}
+			}
+
+		}
+
+		/**
+		 * Called by every thread of this stage once it is done. The last one
+		 * ends the next stage.
+		 */
+		private void end() throws InterruptedException {
+			if (running.decrementAndGet() == 0 && output != null) {
+				for (int i = 0; i < getNextStageThreads(); i++) {
+					output.put(END);
+				}
+			}
+		}
+
+		private void fail(Job job, Exception e) {
+			job.error = e;
+			job.failedStage = name;
+			if (job.solver != null) {
+				job.solver.close();
+				job.solver = null;
+			}
+			failed.incrementAndGet();
+		}
+
+		private int getNextStageThreads() {
+			int index = Arrays.asList(stages).indexOf(this);
+			return stages[index + 1].threads.length;
+		}
+
+		StageStats getStats(long elapsedTime) {
+			int count = processed.get();
+			return new StageStats(name, threads.length, count, failed.get(),
+					input.size(), count == 0 ? 0 : (double) depthSum.get()
+							/ count, maxDepth.get(), elapsedTime, busyTime
+							.get(), blockedTime.get(), idleTime.get());
+		}
+
+	}
+
+	/**
+	 * The outcome of a nonogram.
+	 */
+	public static class Result {
+
+		private final File file;
+
+		private final boolean[][] solution;
+
+		private final Exception error;
+
+		private final String failedStage;
+
+		private final long latency;
+
+		Result(Job job) {
+			this.file = job.file;
+			this.solution = job.solution;
+			this.error = job.error;
+			this.failedStage = job.failedStage;
+			this.latency = System.nanoTime() - job.startTime;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Returns the solution. The first index denotes the column, the
+		 * second one the row.
+		 * 
+		 * @return the solution or null if there is none or the nonogram failed
+		 */
+		public boolean[][] getSolution() {
+			return solution;
+		}
+
+		/**
+		 * Returns the error the nonogram failed with.
+		 * 
+		 * @return the error or null if the nonogram passed all stages
+		 */
+		public Exception getError() {
+			return error;
+		}
+
+		/**
+		 * Returns the name of the stage the nonogram failed in.
+		 * 
+		 * @return the name of the stage or null if the nonogram passed all
+		 *         stages
+		 */
+		public String getFailedStage() {
+			return failedStage;
+		}
+
+		/**
+		 * Returns the time from handing the nonogram to the first stage until
+		 * it left the last one, including the time spent in the queues.
+		 * 
+		 * @return the time in nanoseconds
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		@Override
+		public String toString() {
+			String outcome = error != null ? "failed in " + failedStage + ": "
+					+ error : solution != null ? "solved" : "unsatisfiable";
+			return file.getName() + " " + outcome;
+		}
+
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+
+		if (args.length < 1) {
+			printUsage();
+			return;
+		}
+
+		File input = new File(args[0]);
+		File[] files = input.isDirectory() ? input.listFiles()
+				: new File[] { input };
+		if (files == null) {
+			System.err.println("could not list '" + input + "'");
+			return;
+		}
+		Arrays.sort(files);
+		List<File> nonograms = new ArrayList<File>();
+		for (File file : files) {
+			if (file.isFile()) {
+				nonograms.add(file);
+			}
+		}
+
+		File outputDirectory = args.length >= 2 && !args[1].equals("-") ? new File(
+				args[1])
+				: null;
+		if (outputDirectory != null && !outputDirectory.isDirectory()
+				&& !outputDirectory.mkdirs()) {
+			System.err.println("could not create '" + outputDirectory + "'");
+			return;
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		int[] threads = { 1, Math.max(1, processors / 2),
+				Math.max(1, processors / 2), 1 };
+		for (int i = 0; i < threads.length && i + 2 < args.length; i++) {
+			threads[i] = Integer.parseInt(args[i + 2]);
+		}
+
+		BatchPipeline pipeline = new BatchPipeline(threads,
+				DEFAULT_QUEUE_CAPACITY, outputDirectory);
+		long start = System.currentTimeMillis();
+		List<Result> results = pipeline.run(nonograms);
+		long elapsed = System.currentTimeMillis() - start;
+
+		int solved = 0;
+		int failed = 0;
+		for (Result result : results) {
+			if (result.getError() != null) {
+				failed++;
+				System.err.println(result);
+			} else if (result.getSolution() != null) {
+				solved++;
+			}
+		}
+		System.err.println(results.size() + " nonograms in " + elapsed
+				+ " ms, " + solved + " solved, " + failed + " failed");
+		System.err.println(StageStats.HEADER);
+		for (StageStats stats : pipeline.getStats()) {
+			System.err.println(stats);
+		}
+
+	}
+
+	private static void printUsage() {
+		System.err.println("usage: BatchPipeline <nonogram directory|file>"
+				+ " [output directory|-] [parse build solve render threads]");
+	}
+
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.github.musikk.nonosolver.SolveResult;
+
+/**
+ * An append-only file of the outcomes of nonograms, one line per outcome. A
+ * batch run appends an entry whenever a nonogram is done with and reads the
+ * journal back when it is restarted to skip what is already done.
+ * <p>
+ * Forcing every entry to the disk would cost more than solving most
+ * nonograms, so entries are written and forced in groups: once
+ * {@code syncEvery} of them are pending, and by a background thread every
+ * {@code syncInterval} milliseconds, so entries don't wait for the next
+ * append when solving slows down. A crash loses at most the entries written
+ * since then, and these nonograms are simply solved again. A line cut off by
+ * a crash is dropped when the journal is opened.
+ * <p>
+ * The lines consist of the name of the nonogram, the outcome, the timeout in
+ * milliseconds and the elapsed time in milliseconds separated by tabs,
+ * followed by the error for the outcome FAILED. A nonogram may have several
+ * entries, the last one counts.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class Journal {
+
+	/**
+	 * The outcome of a nonogram whose solving threw an exception.
+	 */
+	public static final String FAILED = "FAILED";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final int syncEvery;
+
+	/**
+	 * The last entry of every nonogram.
+	 */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * The lines not written yet.
+	 */
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+	private int pendingCount;
+
+	private boolean closed;
+
+	/**
+	 * Syncs every {@code syncInterval} milliseconds, null if there is no
+	 * interval.
+	 */
+	private final ScheduledExecutorService syncer;
+
+	/**
+	 * The error of the last sync in the background, thrown by the next call.
+	 */
+	private IOException syncError;
+
+	/**
+	 * Opens a journal and reads its entries. The file is created if it
+	 * doesn't exist.
+	 * 
+	 * @param journalFile
+	 *            the file
+	 * @param syncEvery
+	 *            the number of entries after which they are forced to the
+	 *            disk
+	 * @param syncInterval
+	 *            the time in milliseconds after which pending entries are
+	 *            forced to the disk, 0 or Long.MAX_VALUE to only sync by
+	 *            count
+	 * @throws IOException
+	 *             if the file can't be read or opened for writing
+	 */
+	public Journal(File journalFile, int syncEvery, long syncInterval)
+			throws IOException {
+		if (syncEvery < 1) {
+			throw new IllegalArgumentException("syncEvery must be positive");
+		}
+		this.syncEvery = syncEvery;
+		this.file = new RandomAccessFile(journalFile, "rw");
+		this.channel = file.getChannel();
+		try {
+			read();
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		if (syncInterval > 0 && syncInterval < Long.MAX_VALUE) {
+			this.syncer = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "journal-sync");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			syncer.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					syncInBackground();
+				}
+			}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+		} else {
+			this.syncer = null;
+		}
+	}
+
+	/**
+	 * Reads all complete lines and truncates the file after the last one.
+	 */
+	private void read() throws IOException {
+
+		long length = channel.size();
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("journal too large");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) length);
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+		}
+		byte[] bytes = buffer.array();
+
+		int lineStart = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == '\n') {
+				String line = new String(bytes, lineStart, i - lineStart, UTF_8);
+				Entry entry = Entry.parse(line);
+				if (entry == null) {
+					throw new IOException("malformed journal line '" + line
+							+ "'");
+				}
+				entries.put(entry.getName(), entry);
+				lineStart = i + 1;
+			}
+		}
+
+		// whatever follows the last line break was cut off
+		channel.truncate(lineStart);
+		channel.position(lineStart);
+
+	}
+
+	/**
+	 * Returns the last entry of a nonogram.
+	 * 
+	 * @param name
+	 *            the name of the nonogram
+	 * @return the entry or null if there is none
+	 */
+	public synchronized Entry get(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Returns the last entries of all nonograms.
+	 * 
+	 * @return the entries by the names of the nonograms
+	 */
+	public synchronized Map<String, Entry> getEntries() {
+		return Collections.unmodifiableMap(new HashMap<String, Entry>(entries));
+	}
+
+	/**
+	 * Appends an entry. It is written to the file and forced to the disk
+	 * together with others, see above.
+	 * 
+	 * @param entry
+	 *            the entry
+	 * @throws IOException
+	 *             if the entries can't be written
+	 */
+	public synchronized void append(Entry entry) throws IOException {
+		if (closed) {
+			throw new IOException("journal is closed");
+		}
+		throwSyncError();
+		entries.put(entry.getName(), entry);
+		byte[] line = (entry.toString() + "\n").getBytes(UTF_8);
+		pending.write(line, 0, line.length);
+		pendingCount++;
+		if (pendingCount >= syncEvery) {
+			sync();
+		}
+	}
+
+	private synchronized void syncInBackground() {
+		try {
+			sync();
+		} catch (IOException e) {
+			syncError = e;
+		}
+	}
+
+	private void throwSyncError() throws IOException {
+		if (syncError != null) {
+			IOException e = syncError;
+			syncError = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes all pending entries and forces them to the disk.
+	 * 
+	 * @throws IOException
+	 *             if the entries can't be written
+	 */
+	public synchronized void sync() throws IOException {
+		if (closed) {
+			return;
+		}
+		if (pendingCount > 0) {
+			ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			pending.reset();
+			pendingCount = 0;
+			channel.force(false);
+		}
+		// whatever failed in the background is on the disk now
+		syncError = null;
+	}
+
+	/**
+	 * Writes all pending entries and closes the file.
+	 * 
+	 * @throws IOException
+	 *             if the entries can't be written
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		if (syncer != null) {
+			syncer.shutdownNow();
+		}
+		try {
+			throwSyncError();
+			sync();
+		} finally {
+			closed = true;
+			file.close();
+		}
+	}
+
+	/**
+	 * The outcome of a nonogram.
+	 */
+	public static class Entry {
+
+		private final String name;
+
+		private final String outcome;
+
+		private final long timeout;
+
+		private final long elapsedTime;
+
+		private final String error;
+
+		/**
+		 * Creates an entry of a nonogram that was solved, found to be
+		 * unsatisfiable or timed out.
+		 * 
+		 * @param name
+		 *            the name of the nonogram, without tabs or line breaks
+		 * @param status
+		 *            the status
+		 * @param timeout
+		 *            the timeout in milliseconds
+		 * @param elapsedTime
+		 *            the elapsed time in milliseconds
+		 */
+		public Entry(String name, SolveResult.Status status, long timeout,
+				long elapsedTime) {
+			this(name, status.name(), timeout, elapsedTime, null);
+		}
+
+		/**
+		 * Creates an entry of a nonogram whose solving threw an exception.
+		 * 
+		 * @param name
+		 *            the name of the nonogram, without tabs or line breaks
+		 * @param timeout
+		 *            the timeout in milliseconds
+		 * @param elapsedTime
+		 *            the elapsed time in milliseconds
+		 * @param error
+		 *            the exception
+		 */
+		public Entry(String name, long timeout, long elapsedTime,
+				Throwable error) {
+			this(name, FAILED, timeout, elapsedTime, String.valueOf(error)
+					.replaceAll("[\\t\\r\\n]+", " "));
+		}
+
+		private Entry(String name, String outcome, long timeout,
+				long elapsedTime, String error) {
+			if (name.matches(".*[\\t\\r\\n].*")) {
+				throw new IllegalArgumentException("illegal name '" + name
+						+ "'");
+			}
+			this.name = name;
+			this.outcome = outcome;
+			this.timeout = timeout;
+			this.elapsedTime = elapsedTime;
+			this.error = error;
+		}
+
+		/**
+		 * Parses a line of the journal.
+		 * 
+		 * @return the entry or null if the line is malformed
+		 */
+		static Entry parse(String line) {
+			String[] fields = line.split("\t", 5);
+			if (fields.length < 4) {
+				return null;
+			}
+			try {
+				String outcome = fields[1];
+				if (!outcome.equals(FAILED)) {
+					SolveResult.Status.valueOf(outcome);
+				}
+				return new Entry(fields[0], outcome, Long.parseLong(fields[2]),
+						Long.parseLong(fields[3]), fields.length > 4 ? fields[4]
+								: null);
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the status of the nonogram.
+		 * 
+		 * @return the status or null if solving it failed
+		 */
+		public SolveResult.Status getStatus() {
+			return outcome.equals(FAILED) ? null : SolveResult.Status
+					.valueOf(outcome);
+		}
+
+		public long getTimeout() {
+			return timeout;
+		}
+
+		public long getElapsedTime() {
+			return elapsedTime;
+		}
+
+		/**
+		 * Returns the error solving the nonogram failed with.
+		 * 
+		 * @return the error or null if it didn't fail
+		 */
+		public String getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return name + "\t" + outcome + "\t" + timeout + "\t" + elapsedTime
+					+ (error != null ? "\t" + error : "");
+		}
+
+	}
+
+}
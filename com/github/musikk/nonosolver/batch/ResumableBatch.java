@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.musikk.nonosolver.BlockCreator;
+import com.github.musikk.nonosolver.SolveResult;
+import com.github.musikk.nonosolver.TimedSolver;
+
+/**
+ * Solves many nonograms with a deadline each and records every outcome in a
+ * {@link Journal}, so a run that is interrupted can be resumed. A nonogram
+ * with an entry in the journal is skipped unless it timed out; one that timed
+ * out gets twice the time of its last attempt, up to a maximum. A nonogram
+ * that timed out with the maximum is given up on.
+ * <p>
+ * A nonogram that failed is done with as well. The failures are malformed
+ * files and errors of the solver, which another attempt with more time
+ * doesn't cure. Once the file is fixed or the solver got more memory, the
+ * lines of the nonogram have to be removed from the journal to try it again.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class ResumableBatch {
+
+	/**
+	 * The default timeout of a first attempt in milliseconds.
+	 */
+	public static final long DEFAULT_TIMEOUT = 10000;
+
+	/**
+	 * By how much the default timeout may grow over the attempts.
+	 */
+	public static final int DEFAULT_MAX_TIMEOUT_FACTOR = 16;
+
+	/**
+	 * The default number of entries forced to the disk together.
+	 */
+	public static final int DEFAULT_SYNC_EVERY = 64;
+
+	/**
+	 * The default time in milliseconds after which pending entries are forced
+	 * to the disk.
+	 */
+	public static final long DEFAULT_SYNC_INTERVAL = 1000;
+
+	private final Journal journal;
+
+	private final long timeout;
+
+	private final long maxTimeout;
+
+	private final int threads;
+
+	private int skipped;
+
+	/**
+	 * Creates a new batch.
+	 * 
+	 * @param journal
+	 *            the journal to skip nonograms by and to append the outcomes
+	 *            to
+	 * @param timeout
+	 *            the timeout of a first attempt in milliseconds
+	 * @param maxTimeout
+	 *            the largest timeout in milliseconds
+	 * @param threads
+	 *            the number of nonograms solved at the same time
+	 */
+	public ResumableBatch(Journal journal, long timeout, long maxTimeout,
+			int threads) {
+		if (timeout <= 0 || maxTimeout < timeout || threads < 1) {
+			throw new IllegalArgumentException("timeout " + timeout
+					+ ", max timeout " + maxTimeout + ", threads " + threads);
+		}
+		this.journal = journal;
+		this.timeout = timeout;
+		this.maxTimeout = maxTimeout;
+		this.threads = threads;
+	}
+
+	/**
+	 * Returns the timeout of the next attempt of a nonogram.
+	 * 
+	 * @param name
+	 *            the name of the nonogram
+	 * @return the timeout in milliseconds or zero if the nonogram is done
+	 *         with, i.e. it was solved, found to be unsatisfiable, failed or
+	 *         timed out with the maximum
+	 */
+	long getTimeout(String name) {
+		Journal.Entry entry = journal.get(name);
+		if (entry == null) {
+			return timeout;
+		}
+		// failed entries have no status, they are final like the others
+		if (entry.getStatus() != SolveResult.Status.TIMEOUT
+				|| entry.getTimeout() >= maxTimeout) {
+			return 0;
+		}
+		return Math.min(maxTimeout, Math.max(timeout, 2 * entry.getTimeout()));
+	}
+
+	/**
+	 * Solves the given nonograms that aren't done with yet. The entries are
+	 * appended to the journal, which is synced before this method returns.
+	 * 
+	 * @param files
+	 *            the nonogram files, they are named by their file names
+	 * @return the entries of the nonograms attempted in the order they were
+	 *         finished
+	 * @throws IOException
+	 *             if the journal can't be written
+	 * @throws InterruptedException
+	 *             if the calling thread gets interrupted
+	 */
+	public List<Journal.Entry> run(List<File> files) throws IOException,
+			InterruptedException {
+
+		final List<Journal.Entry> entries = Collections
+				.synchronizedList(new ArrayList<Journal.Entry>());
+		final TimedSolver solver = new TimedSolver(threads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		skipped = 0;
+
+		try {
+			for (final File file : files) {
+				final String name = file.getName();
+				final long attemptTimeout = getTimeout(name);
+				if (attemptTimeout == 0) {
+					skipped++;
+					continue;
+				}
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException,
+							InterruptedException {
+						Journal.Entry entry = attempt(solver, file,
+								attemptTimeout);
+						journal.append(entry);
+						entries.add(entry);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			solver.shutdown();
+			journal.sync();
+		}
+
+		return new ArrayList<Journal.Entry>(entries);
+
+	}
+
+	/**
+	 * Solves a nonogram file.
+	 * 
+	 * @return the entry of the outcome, exceptions are reported as failed
+	 */
+	static Journal.Entry attempt(TimedSolver solver, File file, long timeout)
+			throws InterruptedException {
+		long start = System.currentTimeMillis();
+		try {
+			BlockCreator bc = new BlockCreator(file);
+			SolveResult result = solver.solve(bc.getCols(), bc.getRows(),
+					timeout);
+			return new Journal.Entry(file.getName(), result.getStatus(),
+					timeout, result.getElapsedTime());
+		} catch (RuntimeException e) {
+			return new Journal.Entry(file.getName(), timeout, System
+					.currentTimeMillis()
+					- start, e);
+		} catch (OutOfMemoryError e) {
+			return new Journal.Entry(file.getName(), timeout, System
+					.currentTimeMillis()
+					- start, e);
+		}
+	}
+
+	/**
+	 * Returns the number of nonograms the last run skipped because they were
+	 * done with.
+	 * 
+	 * @return the number of nonograms
+	 */
+	public int getSkippedCount() {
+		return skipped;
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		if (args.length < 2) {
+			printUsage();
+			return;
+		}
+
+		File input = new File(args[0]);
+		File[] files = input.isDirectory() ? input.listFiles()
+				: new File[] { input };
+		if (files == null) {
+			System.err.println("could not list '" + input + "'");
+			return;
+		}
+		Arrays.sort(files);
+		List<File> nonograms = new ArrayList<File>();
+		for (File file : files) {
+			if (file.isFile()) {
+				nonograms.add(file);
+			}
+		}
+
+		long timeout = args.length >= 3 ? Long.parseLong(args[2])
+				: DEFAULT_TIMEOUT;
+		long maxTimeout = args.length >= 4 ? Long.parseLong(args[3]) : timeout
+				* DEFAULT_MAX_TIMEOUT_FACTOR;
+		int threads = args.length >= 5 ? Integer.parseInt(args[4]) : Runtime
+				.getRuntime().availableProcessors();
+
+		final Journal journal = new Journal(new File(args[1]),
+				DEFAULT_SYNC_EVERY, DEFAULT_SYNC_INTERVAL);
+		// an interrupted run keeps what it has finished
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				try {
+					journal.close();
+				} catch (IOException e) {
+					System.err.println("could not close the journal: " + e);
+				}
+			}
+		});
+
+		ResumableBatch batch = new ResumableBatch(journal, timeout,
+				maxTimeout, threads);
+		long start = System.currentTimeMillis();
+		List<Journal.Entry> entries = batch.run(nonograms);
+		long elapsed = System.currentTimeMillis() - start;
+		journal.close();
+
+		int[] counts = new int[SolveResult.Status.values().length];
+		int failed = 0;
+		for (Journal.Entry entry : entries) {
+			if (entry.getStatus() == null) {
+				failed++;
+				System.err.println(entry.getName() + " failed: "
+						+ entry.getError());
+			} else {
+				counts[entry.getStatus().ordinal()]++;
+			}
+		}
+		System.err.println(entries.size() + " nonograms in " + elapsed
+				+ " ms, " + batch.getSkippedCount() + " skipped, "
+				+ counts[SolveResult.Status.SOLVED.ordinal()] + " solved, "
+				+ counts[SolveResult.Status.UNSATISFIABLE.ordinal()]
+				+ " unsatisfiable, "
+				+ counts[SolveResult.Status.TIMEOUT.ordinal()]
+				+ " timed out, " + failed + " failed");
+
+	}
+
+	private static void printUsage() {
+		System.err.println("usage: ResumableBatch <nonogram directory|file>"
+				+ " <journal file> [timeout] [max timeout] [threads]");
+	}
+
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.batch;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.musikk.nonosolver.BlockCreator;
+import com.github.musikk.nonosolver.DifficultyEstimator;
+import com.github.musikk.nonosolver.SolveResult;
+import com.github.musikk.nonosolver.corpus.CorpusConverter;
+import com.github.musikk.nonosolver.sat.SatSolvers;
+
+/**
+ * Splits a set of nonograms into units in a {@link WorkDirectory}, waits for
+ * {@link ShardWorker ShardWorkers} to solve them and merges their results.
+ * The workers may run on this machine, where the coordinator can start them,
+ * or on any machine that shares the directory. Meanwhile the coordinator
+ * moves units with expired leases back to pending.
+ * <p>
+ * The nonograms are ordered by the {@link DifficultyEstimator}, the most
+ * expensive ones first, and dealt to the units in turn. Every unit gets about
+ * the same share of expensive nonograms, so no worker is left with a unit
+ * full of them while the others are done.
+ * <p>
+ * The coordinator keeps no state of its own: started again on the same
+ * directory it doesn't shard again but picks up where the units are.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class ShardCoordinator {
+
+	/**
+	 * The default number of nonograms of a unit.
+	 */
+	public static final int DEFAULT_UNIT_SIZE = 25;
+
+	/**
+	 * The name of the file in the work directory the results are merged
+	 * into.
+	 */
+	public static final String MERGED_RESULTS = "results.txt";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final long POLL_INTERVAL = 1000;
+
+	private final WorkDirectory workDirectory;
+
+	private final File root;
+
+	ShardCoordinator(File root) {
+		this.root = root;
+		this.workDirectory = new WorkDirectory(root);
+	}
+
+	/**
+	 * Splits the nonograms into units unless that has happened already. The
+	 * units are staged under temporary names and published only after the
+	 * number of units has been written, so an interrupted sharding starts
+	 * over without publishing any nonogram twice and an interrupted
+	 * publishing is finished.
+	 * 
+	 * @param nonograms
+	 *            the contents of the nonogram files by their names
+	 * @param unitSize
+	 *            the number of nonograms of a unit
+	 * @return the number of units
+	 */
+	int shard(SortedMap<String, byte[]> nonograms, int unitSize)
+			throws IOException, InterruptedException {
+
+		workDirectory.create();
+		int units = workDirectory.getUnitCount();
+		if (units < 0) {
+			List<Map.Entry<String, byte[]>> entries = longestFirst(nonograms);
+			units = (entries.size() + unitSize - 1) / unitSize;
+			for (int index = 0; index < units; index++) {
+				File staged = getStaged(index);
+				if (staged.isDirectory()) {
+					// left by an interrupted sharding, maybe for another size
+					File[] files = staged.listFiles();
+					if (files != null) {
+						for (File file : files) {
+							file.delete();
+						}
+					}
+				} else if (!staged.mkdir()) {
+					throw new IOException("could not create '" + staged + "'");
+				}
+				// dealt like cards, every unit gets its share of the
+				// expensive nonograms
+				for (int i = index; i < entries.size(); i += units) {
+					Map.Entry<String, byte[]> entry = entries.get(i);
+					WorkDirectory.writeAtomically(
+							new File(staged, entry.getKey()), entry.getValue());
+				}
+			}
+			workDirectory.setUnitCount(units);
+		}
+
+		for (int index = 0; index < units; index++) {
+			File staged = getStaged(index);
+			if (staged.isDirectory()
+					&& !staged.renameTo(new File(workDirectory.pending,
+							WorkDirectory.getUnitName(index)))) {
+				throw new IOException("could not publish '" + staged + "'");
+			}
+		}
+		return units;
+
+	}
+
+	/**
+	 * Returns the directory a unit is staged in. Workers ignore names starting
+	 * with a dot.
+	 */
+	private File getStaged(int index) {
+		return new File(workDirectory.pending, "."
+				+ WorkDirectory.getUnitName(index));
+	}
+
+	/**
+	 * Orders nonograms from the most expensive to the cheapest according to
+	 * their estimates. Nonograms that can't be read come last, they fail
+	 * right away.
+	 * 
+	 * @param nonograms
+	 *            the contents of the nonogram files by their names
+	 * @return the nonograms in the order they should be solved
+	 */
+	static List<Map.Entry<String, byte[]>> longestFirst(
+			SortedMap<String, byte[]> nonograms) throws InterruptedException {
+
+		final DifficultyEstimator estimator = new DifficultyEstimator();
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime
+				.getRuntime().availableProcessors());
+		final Map<String, DifficultyEstimator.Estimate> estimates;
+		estimates = new HashMap<String, DifficultyEstimator.Estimate>();
+		try {
+			List<Future<DifficultyEstimator.Estimate>> futures;
+			futures = new ArrayList<Future<DifficultyEstimator.Estimate>>();
+			for (final byte[] nonogram : nonograms.values()) {
+				futures.add(executor
+						.submit(new Callable<DifficultyEstimator.Estimate>() {
+							@Override
+							public DifficultyEstimator.Estimate call()
+									throws IOException {
+								return estimate(estimator, nonogram);
+							}
+						}));
+			}
+			int i = 0;
+			for (String name : nonograms.keySet()) {
+				try {
+					estimates.put(name, futures.get(i++).get());
+				} catch (ExecutionException e) {
+					// left without an estimate
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		final Comparator<DifficultyEstimator.Estimate> comparator;
+		comparator = DifficultyEstimator.longestFirst();
+		List<Map.Entry<String, byte[]>> entries;
+		entries = new ArrayList<Map.Entry<String, byte[]>>(nonograms
+				.entrySet());
+		// the sort is stable, equal estimates stay in the order of the names
+		Collections.sort(entries, new Comparator<Map.Entry<String, byte[]>>() {
+			@Override
+			public int compare(Map.Entry<String, byte[]> e1,
+					Map.Entry<String, byte[]> e2) {
+				DifficultyEstimator.Estimate estimate1 = estimates.get(e1
+						.getKey());
+				DifficultyEstimator.Estimate estimate2 = estimates.get(e2
+						.getKey());
+				if (estimate1 == null || estimate2 == null) {
+					return (estimate1 == null ? 1 : 0)
+							- (estimate2 == null ? 1 : 0);
+				}
+				return comparator.compare(estimate1, estimate2);
+			}
+		});
+		return entries;
+
+	}
+
+	private static DifficultyEstimator.Estimate estimate(
+			DifficultyEstimator estimator, byte[] nonogram) throws IOException {
+		BlockCreator bc = new BlockCreator(new BufferedReader(
+				new InputStreamReader(new ByteArrayInputStream(nonogram),
+						UTF_8)));
+		return estimator.estimate(bc.getCols(), bc.getRows());
+	}
+
+	/**
+	 * Reads the nonograms of a directory or a gzip compressed tar archive.
+	 * 
+	 * @return the contents of the nonogram files by their names
+	 */
+	static SortedMap<String, byte[]> readNonograms(File input)
+			throws IOException {
+		SortedMap<String, byte[]> nonograms = new TreeMap<String, byte[]>();
+		if (input.isDirectory()) {
+			File[] files = input.listFiles();
+			if (files == null) {
+				throw new IOException("could not list '" + input + "'");
+			}
+			for (File file : files) {
+				if (file.isFile() && !file.getName().startsWith(".")) {
+					nonograms.put(file.getName(), WorkDirectory.readFile(file));
+				}
+			}
+		} else {
+			for (Map.Entry<Integer, byte[]> entry : CorpusConverter
+					.readArchive(input).entrySet()) {
+				nonograms.put("nonogram." + entry.getKey(), entry.getValue());
+			}
+		}
+		return nonograms;
+	}
+
+	/**
+	 * Starts a worker in a new JVM with the class path and SAT backend of
+	 * this one.
+	 */
+	private Process startWorker(long timeout, int leaseTimeout)
+			throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		String backend = System.getProperty(SatSolvers.BACKEND_PROPERTY);
+		if (backend != null) {
+			command.add("-D" + SatSolvers.BACKEND_PROPERTY + "=" + backend);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ShardWorker.class.getName());
+		command.add(root.getPath());
+		command.add(String.valueOf(timeout));
+		command.add(String.valueOf(leaseTimeout));
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/**
+	 * Waits until all units have results, moving units with expired leases
+	 * back to pending.
+	 * 
+	 * @param workers
+	 *            the workers started by the coordinator, if all of them exit
+	 *            before the units are done this method gives up
+	 * @return true if all units have results
+	 */
+	boolean await(int units, long leaseTimeout, List<Process> workers)
+			throws IOException, InterruptedException {
+		int reported = -1;
+		while (true) {
+			int finished = WorkDirectory.list(workDirectory.results).size();
+			if (finished != reported) {
+				System.err.println(finished + " of " + units + " units done");
+				reported = finished;
+			}
+			if (finished >= units) {
+				return true;
+			}
+			for (String leased : WorkDirectory.list(workDirectory.leased)) {
+				if (workDirectory.reclaim(leased, leaseTimeout)) {
+					System.err.println("lease " + leased + " expired");
+				}
+			}
+			if (!workers.isEmpty() && !isAnyAlive(workers)) {
+				return false;
+			}
+			Thread.sleep(POLL_INTERVAL);
+		}
+	}
+
+	private static boolean isAnyAlive(List<Process> processes) {
+		for (Process process : processes) {
+			try {
+				process.exitValue();
+			} catch (IllegalThreadStateException e) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Merges the results of all units into one file, sorted by the names of
+	 * the nonograms. Results left behind by workers that crashed are deleted.
+	 * 
+	 * @return the entries
+	 */
+	SortedMap<String, Journal.Entry> merge() throws IOException {
+		SortedMap<String, Journal.Entry> merged;
+		merged = new TreeMap<String, Journal.Entry>();
+		for (String unit : WorkDirectory.list(workDirectory.results)) {
+			Journal journal = new Journal(new File(workDirectory.results,
+					unit), 1, 0);
+			try {
+				merged.putAll(journal.getEntries());
+			} finally {
+				journal.close();
+			}
+		}
+		File[] files = workDirectory.results.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().startsWith(".")) {
+					file.delete();
+				}
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Journal.Entry entry : merged.values()) {
+			sb.append(entry).append('\n');
+		}
+		WorkDirectory.writeAtomically(new File(root, MERGED_RESULTS), sb
+				.toString().getBytes(UTF_8));
+		return merged;
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		if (args.length < 2) {
+			printUsage();
+			return;
+		}
+
+		File input = new File(args[0]);
+		File root = new File(args[1]);
+		int unitSize = args.length >= 3 ? Integer.parseInt(args[2])
+				: DEFAULT_UNIT_SIZE;
+		int workerCount = args.length >= 4 ? Integer.parseInt(args[3]) : 0;
+		int leaseTimeout = args.length >= 5 ? Integer.parseInt(args[4])
+				: ShardWorker.DEFAULT_LEASE_TIMEOUT;
+		long timeout = args.length >= 6 ? Long.parseLong(args[5])
+				: ResumableBatch.DEFAULT_TIMEOUT;
+		if (1000L * leaseTimeout <= timeout) {
+			System.err.println("the lease timeout has to exceed the timeout");
+			return;
+		}
+
+		ShardCoordinator coordinator = new ShardCoordinator(root);
+		long start = System.currentTimeMillis();
+		// the workers wait for the units while they are being estimated
+		List<Process> workers = new ArrayList<Process>();
+		for (int i = 0; i < workerCount; i++) {
+			workers.add(coordinator.startWorker(timeout, leaseTimeout));
+		}
+		boolean complete;
+		try {
+			int units = new WorkDirectory(root).getUnitCount();
+			if (units < 0) {
+				units = coordinator.shard(readNonograms(input), unitSize);
+			}
+			System.err.println(units + " units in '" + root + "'");
+			complete = coordinator.await(units, 1000L * leaseTimeout, workers);
+			if (complete) {
+				// they exit once they see all results
+				for (Process worker : workers) {
+					worker.waitFor();
+				}
+			}
+		} finally {
+			for (Process worker : workers) {
+				worker.destroy();
+			}
+		}
+		if (!complete) {
+			System.err.println("all workers exited before the units were"
+					+ " done");
+			return;
+		}
+
+		SortedMap<String, Journal.Entry> merged = coordinator.merge();
+		long elapsed = System.currentTimeMillis() - start;
+		int[] counts = new int[SolveResult.Status.values().length];
+		int failed = 0;
+		for (Journal.Entry entry : merged.values()) {
+			if (entry.getStatus() == null) {
+				failed++;
+			} else {
+				counts[entry.getStatus().ordinal()]++;
+			}
+		}
+		System.err.println(merged.size() + " nonograms in " + elapsed
+				+ " ms, " + counts[SolveResult.Status.SOLVED.ordinal()]
+				+ " solved, "
+				+ counts[SolveResult.Status.UNSATISFIABLE.ordinal()]
+				+ " unsatisfiable, "
+				+ counts[SolveResult.Status.TIMEOUT.ordinal()]
+				+ " timed out, " + failed + " failed, merged into '"
+				+ new File(root, MERGED_RESULTS) + "'");
+
+	}
+
+	private static void printUsage() {
+		System.err.println("usage: ShardCoordinator"
+				+ " <nonogram directory|archive.tar.gz> <work directory>"
+				+ " [unit size] [local workers] [lease timeout in s]"
+				+ " [timeout]");
+	}
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.musikk.nonosolver.TimedSolver;
+
+/**
+ * Solves the units of a {@link WorkDirectory} until all of them have
+ * results. A worker claims a pending unit, solves its nonograms one after
+ * the other while a thread renews the lease and publishes the outcomes if it
+ * still holds the lease then. If the lease is lost the unit is abandoned
+ * after the current nonogram. With no pending units left, the worker moves
+ * expired leases back to pending itself, so the work gets done even without
+ * a running coordinator.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class ShardWorker {
+
+	/**
+	 * The default time in seconds after which a lease that isn't renewed
+	 * expires.
+	 */
+	public static final int DEFAULT_LEASE_TIMEOUT = 60;
+
+	/**
+	 * The time in milliseconds to wait before looking for pending units
+	 * again.
+	 */
+	private static final long POLL_INTERVAL = 1000;
+
+	private final WorkDirectory workDirectory;
+
+	private final String name;
+
+	private final long timeout;
+
+	private final long leaseTimeout;
+
+	/**
+	 * Solves one nonogram at a time. A nonogram that timed out but can't be
+	 * interrupted holds up the next one instead of running beside it.
+	 */
+	private final TimedSolver solver = new TimedSolver(1);
+
+	private int solvedUnits;
+
+	/**
+	 * Creates a new worker.
+	 * 
+	 * @param workDirectory
+	 *            the shared directory
+	 * @param timeout
+	 *            the timeout of a nonogram in milliseconds
+	 * @param leaseTimeout
+	 *            the time in milliseconds after which a lease that isn't
+	 *            renewed expires
+	 */
+	ShardWorker(WorkDirectory workDirectory, long timeout, long leaseTimeout) {
+		this.workDirectory = workDirectory;
+		// pid and host, without the characters that separate unit and worker
+		this.name = ManagementFactory.getRuntimeMXBean().getName().replaceAll(
+				"[^A-Za-z0-9-]", "-");
+		this.timeout = timeout;
+		this.leaseTimeout = leaseTimeout;
+	}
+
+	/**
+	 * Works on units until all of them have results.
+	 */
+	void run() throws IOException, InterruptedException {
+		try {
+			while (true) {
+				int units = workDirectory.getUnitCount();
+				if (units >= 0 && WorkDirectory.list(workDirectory.results)
+						.size() >= units) {
+					return;
+				}
+				if (!claimAndSolve()) {
+					for (String leased : WorkDirectory
+							.list(workDirectory.leased)) {
+						if (workDirectory.reclaim(leased, leaseTimeout)) {
+							System.err.println(name + " found the lease "
+									+ leased + " expired");
+						}
+					}
+					Thread.sleep(POLL_INTERVAL);
+				}
+			}
+		} finally {
+			solver.shutdown();
+		}
+	}
+
+	/**
+	 * Claims and solves a pending unit.
+	 * 
+	 * @return false if there was none to claim
+	 */
+	private boolean claimAndSolve() throws IOException, InterruptedException {
+		for (String unit : WorkDirectory.list(workDirectory.pending)) {
+			File lease = workDirectory.claim(unit, name);
+			if (lease != null) {
+				solve(lease);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void solve(final File lease) throws IOException,
+			InterruptedException {
+
+		final AtomicBoolean lost = new AtomicBoolean();
+		Thread renewer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(leaseTimeout / 3);
+						if (!WorkDirectory.renew(lease)) {
+							lost.set(true);
+							return;
+						}
+					}
+				} catch (InterruptedException e) {
+					// the unit is done
+				}
+			}
+		}, "lease-renewer");
+		renewer.setDaemon(true);
+		renewer.start();
+
+		File resultFile = new File(workDirectory.results, "."
+				+ lease.getName() + ".tmp");
+		resultFile.delete();
+		// the results are published as a whole, forcing them once is enough
+		Journal journal = new Journal(resultFile, Integer.MAX_VALUE,
+				Long.MAX_VALUE);
+		boolean complete = false;
+		try {
+			for (String nonogram : WorkDirectory.list(lease)) {
+				if (lost.get()) {
+					break;
+				}
+				journal.append(ResumableBatch.attempt(solver, new File(lease,
+						nonogram), timeout));
+			}
+			complete = !lost.get();
+		} finally {
+			renewer.interrupt();
+			journal.close();
+			if (!complete) {
+				resultFile.delete();
+			}
+		}
+
+		if (complete && workDirectory.finish(lease, resultFile)) {
+			solvedUnits++;
+		} else {
+			System.err.println(name + " lost the lease of "
+					+ WorkDirectory.getUnit(lease.getName()));
+		}
+
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		if (args.length < 1) {
+			System.err.println("usage: ShardWorker <work directory>"
+					+ " [timeout] [lease timeout in s]");
+			return;
+		}
+
+		WorkDirectory workDirectory = new WorkDirectory(new File(args[0]));
+		long timeout = args.length >= 2 ? Long.parseLong(args[1])
+				: ResumableBatch.DEFAULT_TIMEOUT;
+		long leaseTimeout = 1000 * (args.length >= 3 ? Long.parseLong(args[2])
+				: DEFAULT_LEASE_TIMEOUT);
+		if (leaseTimeout <= timeout) {
+			System.err.println("the lease timeout has to exceed the timeout");
+			return;
+		}
+
+		ShardWorker worker = new ShardWorker(workDirectory, timeout,
+				leaseTimeout);
+		worker.run();
+		System.err.println(worker.name + " solved " + worker.solvedUnits
+				+ " units");
+
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.batch;
+
+/**
+ * Immutable snapshot of the statistics of a stage of a {@link BatchPipeline}.
+ * A stage that is busy most of the time while its input queue is full holds
+ * up the pipeline and deserves more threads, a stage that is mostly blocked
+ * waits for its successor.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class StageStats {
+
+	static final String HEADER = String.format(
+			"%-8s %7s %9s %6s %6s %8s %6s %10s %6s %8s %6s", "stage",
+			"threads", "processed", "failed", "queue", "avgqueue", "max",
+			"per second", "busy", "blocked", "idle");
+
+	private final String name;
+
+	private final int threads;
+
+	private final int processed;
+
+	private final int failed;
+
+	private final int queueDepth;
+
+	private final double averageQueueDepth;
+
+	private final int maxQueueDepth;
+
+	private final long elapsedTime;
+
+	private final long busyTime;
+
+	private final long blockedTime;
+
+	private final long idleTime;
+
+	StageStats(String name, int threads, int processed, int failed,
+			int queueDepth, double averageQueueDepth, int maxQueueDepth,
+			long elapsedTime, long busyTime, long blockedTime, long idleTime) {
+		this.name = name;
+		this.threads = threads;
+		this.processed = processed;
+		this.failed = failed;
+		this.queueDepth = queueDepth;
+		this.averageQueueDepth = averageQueueDepth;
+		this.maxQueueDepth = maxQueueDepth;
+		this.elapsedTime = elapsedTime;
+		this.busyTime = busyTime;
+		this.blockedTime = blockedTime;
+		this.idleTime = idleTime;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Returns the number of nonograms that have left this stage, including
+	 * the failed ones.
+	 * 
+	 * @return the number of nonograms
+	 */
+	public int getProcessed() {
+		return processed;
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the number of nonograms waiting for this stage at the time of
+	 * the snapshot.
+	 * 
+	 * @return the number of nonograms
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * Returns the average number of nonograms that were waiting when this
+	 * stage took the next one.
+	 * 
+	 * @return the average queue depth
+	 */
+	public double getAverageQueueDepth() {
+		return averageQueueDepth;
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Returns the number of nonograms per second this stage has processed
+	 * since the pipeline was started.
+	 * 
+	 * @return the throughput
+	 */
+	public double getThroughput() {
+		return elapsedTime == 0 ? 0 : processed * 1e9 / elapsedTime;
+	}
+
+	/**
+	 * Returns the fraction of the time the threads of this stage spent
+	 * processing nonograms.
+	 * 
+	 * @return the utilization between 0 and 1
+	 */
+	public double getUtilization() {
+		return fraction(busyTime);
+	}
+
+	/**
+	 * Returns the fraction of the time the threads of this stage spent
+	 * waiting for room in the queue of the next stage.
+	 * 
+	 * @return the fraction between 0 and 1
+	 */
+	public double getBlockedFraction() {
+		return fraction(blockedTime);
+	}
+
+	/**
+	 * Returns the fraction of the time the threads of this stage spent
+	 * waiting for nonograms.
+	 * 
+	 * @return the fraction between 0 and 1
+	 */
+	public double getIdleFraction() {
+		return fraction(idleTime);
+	}
+
+	private double fraction(long time) {
+		return elapsedTime == 0 ? 0 : (double) time / threads / elapsedTime;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%-8s %7d %9d %6d %6d %8.2f %6d %10.1f %5.0f%% %7.0f%% %5.0f%%",
+				name, threads, processed, failed, queueDepth,
+				averageQueueDepth, maxQueueDepth, getThroughput(),
+				getUtilization() * 100, getBlockedFraction() * 100,
+				getIdleFraction() * 100);
+	}
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The directory shared by a {@link ShardCoordinator} and its
+ * {@link ShardWorker ShardWorkers}. The nonograms are split into units, every
+ * unit is a directory with the nonogram files that moves through the
+ * subdirectories by renames, which are atomic within a file system:
+ * <ul>
+ * <li>pending: units nobody works on</li>
+ * <li>leased: units a worker has claimed, named
+ * <code>&lt;unit&gt;.&lt;worker&gt;</code>. The worker renews its lease by
+ * setting the modification time of the directory. A lease that isn't renewed
+ * in time expires and the unit is moved back to pending. A worker that is
+ * done renames its lease to <code>&lt;unit&gt;.&lt;worker&gt;.finishing</code>
+ * before it publishes the results.</li>
+ * <li>results: the outcomes of the finished units in the format of a
+ * {@link Journal}, one file per unit</li>
+ * <li>done: units with results</li>
+ * </ul>
+ * Whoever succeeds in renaming a unit owns the next step, all others find the
+ * unit gone. In particular a worker whose lease expired and was moved back to
+ * pending can't rename it to finishing, so it never publishes results, which
+ * may be missing nonograms that vanished from under it. The results of a
+ * unit can still be published twice if a worker stalls between renaming its
+ * lease to finishing and publishing for longer than a lease; both results
+ * are complete then. The machines sharing the directory need roughly
+ * synchronized clocks.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+class WorkDirectory {
+
+	/**
+	 * The file holding the number of units, written once sharding is
+	 * complete.
+	 */
+	private static final String UNIT_COUNT_FILE = "units";
+
+	/**
+	 * The suffix of a lease whose results are being published.
+	 */
+	private static final String FINISHING_SUFFIX = ".finishing";
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private final File root;
+
+	final File pending;
+
+	final File leased;
+
+	final File results;
+
+	final File done;
+
+	WorkDirectory(File root) {
+		this.root = root;
+		this.pending = new File(root, "pending");
+		this.leased = new File(root, "leased");
+		this.results = new File(root, "results");
+		this.done = new File(root, "done");
+	}
+
+	/**
+	 * Creates the subdirectories.
+	 */
+	void create() throws IOException {
+		for (File dir : new File[] { pending, leased, results, done }) {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("could not create '" + dir + "'");
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of units.
+	 * 
+	 * @return the number of units or -1 if sharding isn't complete
+	 */
+	int getUnitCount() throws IOException {
+		File file = new File(root, UNIT_COUNT_FILE);
+		if (!file.exists()) {
+			return -1;
+		}
+		return Integer.parseInt(new String(readFile(file), ASCII).trim());
+	}
+
+	void setUnitCount(int count) throws IOException {
+		writeAtomically(new File(root, UNIT_COUNT_FILE), (count + "\n")
+				.getBytes(ASCII));
+	}
+
+	/**
+	 * Returns the name of a unit.
+	 * 
+	 * @param index
+	 *            the index of the unit
+	 * @return the name
+	 */
+	static String getUnitName(int index) {
+		return String.format("unit-%05d", index);
+	}
+
+	/**
+	 * Returns the unit of a leased directory or a temporary file.
+	 */
+	static String getUnit(String name) {
+		int dot = name.indexOf('.');
+		return dot < 0 ? name : name.substring(0, dot);
+	}
+
+	/**
+	 * Returns the names of the files of a directory, sorted. Names starting
+	 * with a dot are temporary and left out.
+	 */
+	static List<String> list(File dir) {
+		String[] names = dir.list();
+		List<String> list = new ArrayList<String>();
+		if (names != null) {
+			Arrays.sort(names);
+			for (String name : names) {
+				if (!name.startsWith(".")) {
+					list.add(name);
+				}
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Tries to claim a pending unit for a worker.
+	 * 
+	 * @return the leased directory or null if the unit is gone
+	 */
+	File claim(String unit, String worker) {
+		File lease = new File(leased, unit + "." + worker);
+		if (!new File(pending, unit).renameTo(lease)) {
+			return null;
+		}
+		// renaming keeps the modification time
+		return renew(lease) ? lease : null;
+	}
+
+	/**
+	 * Renews a lease.
+	 * 
+	 * @return false if the lease is lost
+	 */
+	static boolean renew(File lease) {
+		return lease.setLastModified(System.currentTimeMillis());
+	}
+
+	/**
+	 * Moves a leased unit back to pending if its lease has expired, or to
+	 * done if it has results.
+	 * 
+	 * @return true if the unit was moved back to pending
+	 */
+	boolean reclaim(String leasedName, long leaseTimeout) {
+		File lease = new File(leased, leasedName);
+		String unit = getUnit(leasedName);
+		if (new File(results, unit).exists()) {
+			retire(lease, unit);
+			return false;
+		}
+		long modified = lease.lastModified();
+		if (modified == 0
+				|| System.currentTimeMillis() - modified < leaseTimeout) {
+			return false;
+		}
+		return lease.renameTo(new File(pending, unit));
+	}
+
+	/**
+	 * Publishes the results of a unit and moves it to done, provided the
+	 * lease is still held. Otherwise the results are deleted.
+	 * 
+	 * @param resultFile
+	 *            the results, a temporary file in the results directory
+	 * @return false if the lease was lost
+	 */
+	boolean finish(File lease, File resultFile) throws IOException {
+		String unit = getUnit(lease.getName());
+		// fails if the lease expired and the unit was moved back to pending
+		File finishing = new File(leased, lease.getName() + FINISHING_SUFFIX);
+		if (!lease.renameTo(finishing)) {
+			resultFile.delete();
+			return false;
+		}
+		// publishing gets a lease period of its own, if the worker dies
+		// before, the unit expires like any other lease
+		renew(finishing);
+		if (!resultFile.renameTo(new File(results, unit))) {
+			throw new IOException("could not publish the results of " + unit);
+		}
+		retire(finishing, unit);
+		return true;
+	}
+
+	/**
+	 * Moves a leased unit with results to done, or deletes it if another
+	 * worker got there first.
+	 */
+	private void retire(File lease, String unit) {
+		if (lease.renameTo(new File(done, unit))) {
+			return;
+		}
+		File[] files = lease.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		lease.delete();
+	}
+
+	/**
+	 * Writes a file under a temporary name and renames it, so readers never
+	 * see a partial file.
+	 */
+	static void writeAtomically(File file, byte[] content) throws IOException {
+		File temp = new File(file.getParentFile(), "." + file.getName()
+				+ ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			throw new IOException("could not rename '" + temp + "' to '"
+					+ file + "'");
+		}
+	}
+
+	static byte[] readFile(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] content = new byte[(int) in.length()];
+			in.readFully(content);
+			return content;
+		} finally {
+			in.close();
+		}
+	}
+
+}
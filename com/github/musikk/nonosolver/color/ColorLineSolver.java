@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.color;
+
+import java.util.Arrays;
+
+import com.github.musikk.nonosolver.Blocks;
+
+/**
+ * Determines the cells of a single line of a colored nonogram that are equal
+ * in all placements of its blocks consistent with what is known, like
+ * {@link com.github.musikk.nonosolver.LineSolver} does for nonograms without
+ * colors. What is known about a cell is the set of colors it may still have as
+ * a bit mask, bit 0 standing for an empty cell and bit c for color c.
+ * <p>
+ * Two blocks of the same color need at least one empty field between them,
+ * blocks of different colors may touch. The placements are never enumerated:
+ * whether the first j blocks fit left of a field and whether the blocks from j
+ * on fit right of it is computed for all j and fields, which takes time linear
+ * in the number of blocks times the length of the line. The tables are kept
+ * between calls, so every thread needs its own solver.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class ColorLineSolver {
+
+	/**
+	 * The bit of an empty cell.
+	 */
+	public static final int EMPTY = 1;
+
+	/**
+	 * The lengths of the blocks, blocks of length zero are left out.
+	 */
+	private final int[] blocks;
+
+	private final int[] colors;
+
+	/**
+	 * gaps[j] is the number of empty fields needed between block j and block
+	 * j + 1.
+	 */
+	private final int[] gaps;
+
+	private final int length;
+
+	/**
+	 * The highest color of the blocks.
+	 */
+	private final int maxColor;
+
+	/**
+	 * The tables of solve(), kept to not allocate them for every line, see
+	 * there.
+	 */
+	private final int[] notBefore;
+
+	private final boolean[] prefix;
+
+	private final boolean[] suffix;
+
+	private final int[] coverDelta;
+
+	private final int[] cover;
+
+	/**
+	 * The earliest start of every block found by the last call to solve().
+	 */
+	private final int[] earliestStarts;
+
+	/**
+	 * The latest start of every block found by the last call to solve().
+	 */
+	private final int[] latestStarts;
+
+	/**
+	 * Creates a new solver for a line.
+	 * 
+	 * @param blockInfo
+	 *            the blocks of the line
+	 * @param length
+	 *            the length of the line
+	 */
+	public ColorLineSolver(Blocks blockInfo, int length) {
+		int[] allBlocks = blockInfo.getBlocks();
+		int[] allColors = blockInfo.getColors();
+		int count = 0;
+		for (int block : allBlocks) {
+			if (block > 0) {
+				count++;
+			}
+		}
+		this.blocks = new int[count];
+		this.colors = new int[count];
+		int i = 0;
+		int max = 0;
+		for (int b = 0; b < allBlocks.length; b++) {
+			if (allBlocks[b] > 0) {
+				blocks[i] = allBlocks[b];
+				colors[i] = allColors[b];
+				max = Math.max(max, colors[i]);
+				i++;
+			}
+		}
+		this.gaps = new int[count];
+		for (int j = 0; j + 1 < count; j++) {
+			gaps[j] = colors[j] == colors[j + 1] ? 1 : 0;
+		}
+		this.length = length;
+		this.maxColor = max;
+		this.earliestStarts = new int[count];
+		this.latestStarts = new int[count];
+		this.notBefore = new int[(max + 1) * (length + 1)];
+		this.prefix = new boolean[(count + 1) * (length + 1)];
+		this.suffix = new boolean[(count + 1) * (length + 1)];
+		this.coverDelta = new int[(max + 1) * (length + 1)];
+		this.cover = new int[max + 1];
+	}
+
+	/**
+	 * Narrows down the colors of the cells of the line as far as possible.
+	 * 
+	 * @param line
+	 *            the colors every cell may still have, they get updated
+	 * @return false if the blocks can't be placed consistently with the
+	 *         colors, true otherwise
+	 */
+	public boolean solve(int[] line) {
+
+		int k = blocks.length;
+		int n = length;
+		int stride = n + 1;
+
+		// notBefore[c * stride + i] is the number of cells in [0, i) that
+		// can't have color c, where color 0 is empty
+		for (int c = 0; c <= maxColor; c++) {
+			int bit = 1 << c;
+			int offset = c * stride;
+			notBefore[offset] = 0;
+			for (int i = 0; i < n; i++) {
+				notBefore[offset + i + 1] = notBefore[offset + i]
+						+ ((line[i] & bit) == 0 ? 1 : 0);
+			}
+		}
+
+		// prefix[j * stride + i]: the first j blocks fit into [0, i), the
+		// cells of it they don't cover are empty
+		for (int i = 0; i <= n; i++) {
+			prefix[i] = notBefore[i] == 0;
+		}
+		for (int j = 1; j <= k; j++) {
+			int b = blocks[j - 1];
+			int color = colors[j - 1] * stride;
+			int row = j * stride;
+			prefix[row] = false;
+			for (int i = 1; i <= n; i++) {
+				boolean fits = prefix[row + i - 1]
+						&& (line[i - 1] & EMPTY) != 0;
+				if (!fits && i >= b
+						&& notBefore[color + i] == notBefore[color + i - b]) {
+					fits = fitsBefore(j - 1, i - b);
+				}
+				prefix[row + i] = fits;
+			}
+		}
+
+		// suffix[j * stride + i]: the blocks from j on fit into [i, n), the
+		// cells of it they don't cover are empty
+		for (int i = 0; i <= n; i++) {
+			suffix[k * stride + i] = notBefore[n] == notBefore[i];
+		}
+		for (int j = k - 1; j >= 0; j--) {
+			int b = blocks[j];
+			int color = colors[j] * stride;
+			int row = j * stride;
+			suffix[row + n] = false;
+			for (int i = n - 1; i >= 0; i--) {
+				boolean fits = suffix[row + i + 1] && (line[i] & EMPTY) != 0;
+				if (!fits && i + b <= n
+						&& notBefore[color + i + b] == notBefore[color + i]) {
+					fits = fitsAfter(j, i + b);
+				}
+				suffix[row + i] = fits;
+			}
+		}
+
+		if (!prefix[k * stride + n]) {
+			return false;
+		}
+
+		// the number of blocks of every color that can cover a cell, as
+		// differences
+		Arrays.fill(coverDelta, 0);
+		for (int j = 0; j < k; j++) {
+			int b = blocks[j];
+			int color = colors[j] * stride;
+			earliestStarts[j] = -1;
+			for (int s = 0; s + b <= n; s++) {
+				if (notBefore[color + s + b] == notBefore[color + s]
+						&& fitsBefore(j, s) && fitsAfter(j, s + b)) {
+					if (earliestStarts[j] < 0) {
+						earliestStarts[j] = s;
+					}
+					latestStarts[j] = s;
+					coverDelta[color + s]++;
+					coverDelta[color + s + b]--;
+				}
+			}
+		}
+
+		Arrays.fill(cover, 0);
+		for (int i = 0; i < n; i++) {
+			int possible = 0;
+			for (int c = 1; c <= maxColor; c++) {
+				cover[c] += coverDelta[c * stride + i];
+				if (cover[c] > 0) {
+					possible |= 1 << c;
+				}
+			}
+			if ((line[i] & EMPTY) != 0) {
+				for (int j = 0; j <= k; j++) {
+					if (prefix[j * stride + i] && suffix[j * stride + i + 1]) {
+						possible |= EMPTY;
+						break;
+					}
+				}
+			}
+			possible &= line[i];
+			if (possible == 0) {
+				return false;
+			}
+			line[i] = possible;
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Returns whether block j can start at field s as far as the blocks
+	 * before it are concerned.
+	 */
+	private boolean fitsBefore(int j, int s) {
+		if (j == 0) {
+			return prefix[s];
+		}
+		int gap = gaps[j - 1];
+		return s >= gap && prefix[j * (length + 1) + s - gap]
+				&& notBefore[s] == notBefore[s - gap];
+	}
+
+	/**
+	 * Returns whether the blocks after block j fit if block j ends before
+	 * field e.
+	 */
+	private boolean fitsAfter(int j, int e) {
+		if (j == blocks.length - 1) {
+			return suffix[(j + 1) * (length + 1) + e];
+		}
+		int gap = gaps[j];
+		return e + gap <= length && suffix[(j + 1) * (length + 1) + e + gap]
+				&& notBefore[e + gap] == notBefore[e];
+	}
+
+	/**
+	 * Returns the number of blocks of the line, blocks of length zero are not
+	 * counted.
+	 * 
+	 * @return the number of blocks
+	 */
+	public int getBlockCount() {
+		return blocks.length;
+	}
+
+	public int getBlockLength(int block) {
+		return blocks[block];
+	}
+
+	public int getBlockColor(int block) {
+		return colors[block];
+	}
+
+	/**
+	 * Returns the number of empty fields needed between a block and the next
+	 * one.
+	 * 
+	 * @param block
+	 *            the block
+	 * @return 1 if the next block has the same color, 0 otherwise
+	 */
+	public int getGap(int block) {
+		return gaps[block];
+	}
+
+	/**
+	 * Returns the earliest start of a block found by the last successful call
+	 * to {@link #solve(int[])}.
+	 * 
+	 * @param block
+	 *            the block
+	 * @return the earliest start
+	 */
+	public int getEarliestStart(int block) {
+		return earliestStarts[block];
+	}
+
+	/**
+	 * Returns the latest start of a block found by the last successful call
+	 * to {@link #solve(int[])}.
+	 * 
+	 * @param block
+	 *            the block
+	 * @return the latest start
+	 */
+	public int getLatestStart(int block) {
+		return latestStarts[block];
+	}
+
+}
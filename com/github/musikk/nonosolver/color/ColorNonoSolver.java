@@ -0,0 +1,612 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.color;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+import javax.imageio.ImageIO;
+
+import com.github.musikk.nonosolver.BlockCreator;
+import com.github.musikk.nonosolver.Blocks;
+import com.github.musikk.nonosolver.sat.SatSolver;
+import com.github.musikk.nonosolver.sat.SatSolvers;
+import com.github.musikk.nonosolver.util.ImageCreator;
+
+/**
+ * Solves colored nonograms, see {@link Blocks}. Nonograms without colors are
+ * solved as well, they just have a single color.
+ * <p>
+ * First the colors every cell may still have are narrowed down by solving the
+ * lines one after the other with {@link ColorLineSolver} until nothing
+ * changes. If cells are left with more than one color, a CNF is created for
+ * them only:
+ * <ul>
+ * <li>A cell with two colors left gets a single variable, a cell with more
+ * colors one variable for every color of which exactly one is true.</li>
+ * <li>Every line is encoded by the starts of its blocks as in
+ * {@link com.github.musikk.nonosolver.NonoSolver}, between the earliest and
+ * the latest start the line solver finds. A block covering a cell gives it the
+ * color of the block, a cell of a color is covered by one of the blocks of
+ * that color. Lines whose cells are all known are left out.</li>
+ * </ul>
+ * Since the line solver never enumerates any placements, the size of the CNF
+ * grows with the number of blocks times the freedom they have left, not with
+ * the number of placements.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class ColorNonoSolver {
+
+	/**
+	 * Stands for a literal that is always true in
+	 * {@link #addClause(int...)}, its negation for one that is always false.
+	 */
+	private static final int TRUE = Integer.MAX_VALUE;
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * The highest color of all blocks.
+	 */
+	private final int maxColor;
+
+	private final ColorLineSolver[] colSolvers;
+
+	private final ColorLineSolver[] rowSolvers;
+
+	/**
+	 * The colors every cell may still have as bit masks, see
+	 * {@link ColorLineSolver}. The first index denotes the column, the second
+	 * one the row.
+	 */
+	private final int[][] grid;
+
+	private final SatSolver solver;
+
+	/**
+	 * The literal stating that a cell has a color, for every cell and color.
+	 * Null until the CNF is created.
+	 */
+	private int[][][] cellLiterals;
+
+	/**
+	 * The solution if one was found.
+	 */
+	private int[][] solution;
+
+	private long constraintCreationTime;
+
+	private long solvingTime;
+
+	private int clauseCount;
+
+	/**
+	 * Creates a new solver for the nonogram described by the given block
+	 * information.
+	 * 
+	 * @param columns
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 */
+	public ColorNonoSolver(Blocks[] columns, Blocks[] rows) {
+		this(columns, rows, SatSolvers.create());
+	}
+
+	/**
+	 * Creates a new solver for the nonogram described by the given block
+	 * information that uses the given SAT solver.
+	 * 
+	 * @param columns
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 * @param solver
+	 *            the SAT solver, no constraints must have been added to it
+	 */
+	public ColorNonoSolver(Blocks[] columns, Blocks[] rows, SatSolver solver) {
+		this.width = columns.length;
+		this.height = rows.length;
+		this.solver = solver;
+
+		int max = 1;
+		this.colSolvers = new ColorLineSolver[width];
+		for (int col = 0; col < width; col++) {
+			colSolvers[col] = new ColorLineSolver(columns[col], height);
+			max = Math.max(max, getMaxColor(columns[col]));
+		}
+		this.rowSolvers = new ColorLineSolver[height];
+		for (int row = 0; row < height; row++) {
+			rowSolvers[row] = new ColorLineSolver(rows[row], width);
+			max = Math.max(max, getMaxColor(rows[row]));
+		}
+		this.maxColor = max;
+
+		this.grid = new int[width][height];
+		for (int[] column : grid) {
+			Arrays.fill(column, (1 << (maxColor + 1)) - 1);
+		}
+	}
+
+	private static int getMaxColor(Blocks blocks) {
+		int max = 0;
+		for (int color : blocks.getColors()) {
+			max = Math.max(max, color);
+		}
+		return max;
+	}
+
+	/**
+	 * Solves the nonogram. If the current thread gets interrupted, a
+	 * CancellationException is thrown. Whether the SAT solver itself can be
+	 * interrupted depends on the backend.
+	 * 
+	 * @return true if there is a solution, false otherwise
+	 */
+	public boolean solve() {
+
+		long constraintCreationStart = System.currentTimeMillis();
+		boolean consistent = propagate();
+		boolean complete = consistent && isComplete();
+		if (!consistent || complete) {
+			constraintCreationTime = System.currentTimeMillis()
+					- constraintCreationStart;
+			if (complete) {
+				solution = new int[width][height];
+				for (int col = 0; col < width; col++) {
+					for (int row = 0; row < height; row++) {
+						solution[col][row] = Integer
+								.numberOfTrailingZeros(grid[col][row]);
+					}
+				}
+			}
+			return complete;
+		}
+
+		createCellVariables();
+		for (int col = 0; col < width; col++) {
+			int[] line = grid[col].clone();
+			int[][] literals = new int[height][];
+			for (int row = 0; row < height; row++) {
+				literals[row] = cellLiterals[col][row];
+			}
+			createLineConstraints(colSolvers[col], line, literals);
+		}
+		for (int row = 0; row < height; row++) {
+			int[] line = new int[width];
+			int[][] literals = new int[width][];
+			for (int col = 0; col < width; col++) {
+				line[col] = grid[col][row];
+				literals[col] = cellLiterals[col][row];
+			}
+			createLineConstraints(rowSolvers[row], line, literals);
+		}
+		clauseCount = solver.getClauseCount();
+		constraintCreationTime = System.currentTimeMillis()
+				- constraintCreationStart;
+
+		checkInterrupted();
+		long solvingStart = System.currentTimeMillis();
+		boolean satisfiable = solver.solve();
+		solvingTime = System.currentTimeMillis() - solvingStart;
+		if (!satisfiable) {
+			return false;
+		}
+
+		solution = new int[width][height];
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				for (int c = 0; c <= maxColor; c++) {
+					if (isTrue(cellLiterals[col][row][c])) {
+						solution[col][row] = c;
+						break;
+					}
+				}
+			}
+		}
+		return true;
+
+	}
+
+	/**
+	 * Solves the lines one after the other until no more colors are ruled
+	 * out. Only lines whose cells changed since they were solved last are
+	 * solved again.
+	 * 
+	 * @return false if a line can't be solved, true otherwise
+	 */
+	private boolean propagate() {
+
+		boolean[] dirtyCols = new boolean[width];
+		boolean[] dirtyRows = new boolean[height];
+		Arrays.fill(dirtyCols, true);
+		Arrays.fill(dirtyRows, true);
+
+		boolean dirty = true;
+		while (dirty) {
+			dirty = false;
+			for (int col = 0; col < width; col++) {
+				if (!dirtyCols[col]) {
+					continue;
+				}
+				checkInterrupted();
+				dirtyCols[col] = false;
+				int[] line = grid[col].clone();
+				if (!colSolvers[col].solve(line)) {
+					return false;
+				}
+				for (int row = 0; row < height; row++) {
+					if (line[row] != grid[col][row]) {
+						grid[col][row] = line[row];
+						dirtyRows[row] = true;
+						dirty = true;
+					}
+				}
+			}
+			for (int row = 0; row < height; row++) {
+				if (!dirtyRows[row]) {
+					continue;
+				}
+				checkInterrupted();
+				dirtyRows[row] = false;
+				int[] line = new int[width];
+				for (int col = 0; col < width; col++) {
+					line[col] = grid[col][row];
+				}
+				if (!rowSolvers[row].solve(line)) {
+					return false;
+				}
+				for (int col = 0; col < width; col++) {
+					if (line[col] != grid[col][row]) {
+						grid[col][row] = line[col];
+						dirtyCols[col] = true;
+						dirty = true;
+					}
+				}
+			}
+		}
+
+		return true;
+
+	}
+
+	private boolean isComplete() {
+		for (int[] column : grid) {
+			for (int colors : column) {
+				if (Integer.bitCount(colors) != 1) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the literals of all cells. A cell with a single color left gets
+	 * constants, one with two colors a single variable and one with more
+	 * colors a variable for every color.
+	 */
+	private void createCellVariables() {
+
+		cellLiterals = new int[width][height][];
+		for (int col = 0; col < width; col++) {
+			for (int row = 0; row < height; row++) {
+				int colors = grid[col][row];
+				int[] literals = new int[maxColor + 1];
+				Arrays.fill(literals, -TRUE);
+				int count = Integer.bitCount(colors);
+				if (count == 1) {
+					literals[Integer.numberOfTrailingZeros(colors)] = TRUE;
+				} else if (count == 2) {
+					int variable = solver.newVariable();
+					int first = Integer.numberOfTrailingZeros(colors);
+					literals[first] = variable;
+					literals[Integer.numberOfTrailingZeros(colors
+							& ~(1 << first))] = -variable;
+				} else {
+					int[] variables = new int[count];
+					int i = 0;
+					for (int c = 0; c <= maxColor; c++) {
+						if ((colors & (1 << c)) != 0) {
+							literals[c] = variables[i++] = solver
+									.newVariable();
+						}
+					}
+					solver.addExactlyOne(variables);
+				}
+				cellLiterals[col][row] = literals;
+			}
+		}
+
+	}
+
+	/**
+	 * Encodes a single line by the starts of its blocks. The variable
+	 * starts[b][p] is true iff block b starts at field p or later. It only
+	 * exists between the earliest and the latest start the line solver finds,
+	 * before that it is always true, after that always false.
+	 * 
+	 * @param ls
+	 *            the line solver of the line
+	 * @param line
+	 *            the colors the fields may have
+	 * @param cells
+	 *            the literals of the fields by color
+	 */
+	private void createLineConstraints(ColorLineSolver ls, int[] line,
+			int[][] cells) {
+
+		boolean known = true;
+		for (int colors : line) {
+			known &= Integer.bitCount(colors) == 1;
+		}
+		if (known) {
+			return;
+		}
+		checkInterrupted();
+
+		ls.solve(line);
+
+		int blockCount = ls.getBlockCount();
+		int[] earliest = new int[blockCount];
+		int[][] starts = new int[blockCount][];
+		for (int b = 0; b < blockCount; b++) {
+			earliest[b] = ls.getEarliestStart(b);
+			int latest = ls.getLatestStart(b);
+			starts[b] = new int[latest - earliest[b] + 2];
+			starts[b][0] = TRUE;
+			for (int p = 1; p <= latest - earliest[b]; p++) {
+				starts[b][p] = solver.newVariable();
+			}
+			starts[b][starts[b].length - 1] = -TRUE;
+		}
+
+		for (int b = 0; b < blockCount; b++) {
+			int length = ls.getBlockLength(b);
+			int latest = earliest[b] + starts[b].length - 2;
+			for (int p = earliest[b] + 1; p <= latest; p++) {
+				// starting at p or later implies starting at p - 1 or later
+				addClause(-startsAt(starts, earliest, b, p), startsAt(starts,
+						earliest, b, p - 1));
+				// and the next block starts after this one
+				if (b + 1 < blockCount) {
+					addClause(-startsAt(starts, earliest, b, p), startsAt(
+							starts, earliest, b + 1, p + length
+									+ ls.getGap(b)));
+				}
+			}
+		}
+
+		// the blocks that can cover the field, followed by the ones of a color
+		int[] covering = new int[2 * blockCount];
+		for (int field = 0; field < line.length; field++) {
+			int count = 0;
+			for (int b = 0; b < blockCount; b++) {
+				int length = ls.getBlockLength(b);
+				int latest = earliest[b] + starts[b].length - 2;
+				if (field < earliest[b] || field - length + 1 > latest) {
+					continue;
+				}
+				// block b covering the field gives it its color
+				addClause(-startsAt(starts, earliest, b, field - length + 1),
+						startsAt(starts, earliest, b, field + 1),
+						cells[field][ls.getBlockColor(b)]);
+				covering[count++] = b;
+			}
+			for (int c = 1; c <= maxColor; c++) {
+				int cell = cells[field][c];
+				if (cell == -TRUE) {
+					continue;
+				}
+				int same = 0;
+				for (int i = 0; i < count; i++) {
+					if (ls.getBlockColor(covering[i]) == c) {
+						covering[count + same++] = covering[i];
+					}
+				}
+				// a field of color c is covered by a block of color c
+				if (same == 0) {
+					addClause(-cell);
+				} else if (same == 1) {
+					int b = covering[count];
+					addClause(-cell, startsAt(starts, earliest, b, field
+							- ls.getBlockLength(b) + 1));
+					addClause(-cell, -startsAt(starts, earliest, b, field + 1));
+				} else {
+					int[] clause = new int[same + 1];
+					clause[0] = -cell;
+					for (int i = 0; i < same; i++) {
+						int b = covering[count + i];
+						int covers = solver.newVariable();
+						addClause(-covers, startsAt(starts, earliest, b, field
+								- ls.getBlockLength(b) + 1));
+						addClause(-covers, -startsAt(starts, earliest, b,
+								field + 1));
+						clause[i + 1] = covers;
+					}
+					addClause(clause);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Returns the literal stating that block b starts at field p or later.
+	 */
+	private static int startsAt(int[][] starts, int[] earliest, int b, int p) {
+		int index = p - earliest[b];
+		if (index <= 0) {
+			return TRUE;
+		}
+		if (index >= starts[b].length - 1) {
+			return -TRUE;
+		}
+		return starts[b][index];
+	}
+
+	/**
+	 * Adds a clause, literals that are always false are left out and a clause
+	 * with a literal that is always true is left out completely.
+	 */
+	private void addClause(int... literals) {
+		int count = 0;
+		for (int literal : literals) {
+			if (literal == TRUE) {
+				return;
+			}
+			if (literal != -TRUE) {
+				literals[count++] = literal;
+			}
+		}
+		if (count == 0) {
+			throw new IllegalStateException("empty clause");
+		}
+		solver.addClause(Arrays.copyOf(literals, count));
+	}
+
+	private boolean isTrue(int literal) {
+		if (literal == TRUE || literal == -TRUE) {
+			return literal == TRUE;
+		}
+		return literal > 0 ? solver.getValue(literal) : !solver
+				.getValue(-literal);
+	}
+
+	private static void checkInterrupted() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("solving interrupted");
+		}
+	}
+
+	/**
+	 * Returns the solution. The first index denotes the column, the second
+	 * one the row.
+	 * 
+	 * @return the colors of the cells, 0 for an empty cell, or null if no
+	 *         solution was found
+	 */
+	public int[][] getSolution() {
+		return solution == null ? null : solution.clone();
+	}
+
+	/**
+	 * Returns whether a CNF was created, i.e. the line solving alone didn't
+	 * decide the nonogram.
+	 * 
+	 * @return true if the SAT solver was needed
+	 */
+	public boolean isSatSolverUsed() {
+		return cellLiterals != null;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getMaxColor() {
+		return maxColor;
+	}
+
+	public SatSolver getSatSolver() {
+		return solver;
+	}
+
+	/**
+	 * Frees the memory the SAT solver holds for the CNF, see
+	 * {@link com.github.musikk.nonosolver.NonoSolver#close()}.
+	 */
+	public void close() {
+		solver.close();
+	}
+
+	public long getConstraintCreationTime() {
+		return constraintCreationTime;
+	}
+
+	public long getSolvingTime() {
+		return solvingTime;
+	}
+
+	public int getClauseCount() {
+		return clauseCount;
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.err.println("usage: ColorNonoSolver <input file>"
+					+ " [output file]");
+			return;
+		}
+
+		BlockCreator bc = new BlockCreator(new File(args[0]));
+		ColorNonoSolver ns = new ColorNonoSolver(bc.getCols(), bc.getRows());
+		boolean solved = ns.solve();
+		ns.close();
+		System.err.println("constraint creation took "
+				+ ns.getConstraintCreationTime() / 1000.0 + "s");
+		if (ns.isSatSolverUsed()) {
+			System.err.println("solving took " + ns.getSolvingTime() / 1000.0
+					+ "s");
+		} else {
+			System.err.println("solved by line propagation");
+		}
+		if (!solved) {
+			System.err.println("unsat");
+			return;
+		}
+
+		int[][] solution = ns.getSolution();
+		for (int row = 0; row < ns.getHeight(); row++) {
+			for (int col = 0; col < ns.getWidth(); col++) {
+				int color = solution[col][row];
+				System.err.print(color == 0 ? '.' : (char) ('a' + color - 1));
+			}
+			System.err.println();
+		}
+
+		if (args.length >= 2) {
+			BufferedImage bi = ImageCreator.createImage(solution, 10);
+			ImageIO.write(bi, "png", new File(args[1]));
+		}
+
+	}
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.corpus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import com.github.musikk.nonosolver.BitGrid;
+import com.github.musikk.nonosolver.BlockCreator;
+import com.github.musikk.nonosolver.SolveResult;
+import com.github.musikk.nonosolver.TimedSolver;
+
+/**
+ * Converts the nonogram files into a binary corpus file, see
+ * {@link CorpusWriter}. The nonograms are read either from a directory or
+ * directly from the archive <code>nonograms.tar.gz</code>. Optionally every
+ * nonogram is solved and its solution stored as well.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class CorpusConverter {
+
+	private static final Pattern FILE_NAME_PATTERN = Pattern
+			.compile("(?:^|/)nonogram\\.(\\d+)$");
+
+	private final CorpusWriter writer;
+
+	private final TimedSolver solver;
+
+	private final long timeout;
+
+	private int count;
+
+	private int solvedCount;
+
+	/**
+	 * Creates a new converter.
+	 * 
+	 * @param writer
+	 *            the corpus to write to
+	 * @param timeout
+	 *            the maximum time in milliseconds to solve a nonogram, 0 to
+	 *            not store solutions
+	 */
+	public CorpusConverter(CorpusWriter writer, long timeout) {
+		this.writer = writer;
+		this.timeout = timeout;
+		this.solver = timeout > 0 ? new TimedSolver(1) : null;
+	}
+
+	/**
+	 * Adds all nonogram files of a directory.
+	 * 
+	 * @param directory
+	 *            the directory
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void convertDirectory(File directory) throws IOException,
+			InterruptedException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("could not list '" + directory + "'");
+		}
+		// the numbers are added in order to keep the file sequential
+		Map<Integer, File> numbered = new TreeMap<Integer, File>();
+		for (File file : files) {
+			Integer number = getNumber(file.getName());
+			if (number != null) {
+				numbered.put(number, file);
+			}
+		}
+		for (Map.Entry<Integer, File> entry : numbered.entrySet()) {
+			InputStream in = new FileInputStream(entry.getValue());
+			try {
+				convert(entry.getKey(), in);
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Adds all nonogram files of a gzip compressed tar archive.
+	 * 
+	 * @param archive
+	 *            the archive
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void convertArchive(File archive) throws IOException,
+			InterruptedException {
+		for (Map.Entry<Integer, byte[]> entry : readArchive(archive)
+				.entrySet()) {
+			convert(entry.getKey(), new ByteArrayInputStream(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Reads the contents of all nonogram files of a gzip compressed tar
+	 * archive.
+	 * 
+	 * @param archive
+	 *            the archive
+	 * @return the contents of the files by the numbers of the nonograms, in
+	 *         ascending order
+	 * @throws IOException
+	 */
+	public static SortedMap<Integer, byte[]> readArchive(File archive)
+			throws IOException {
+		SortedMap<Integer, byte[]> numbered = new TreeMap<Integer, byte[]>();
+		InputStream in = new GZIPInputStream(new BufferedInputStream(
+				new FileInputStream(archive)));
+		try {
+			TarReader tar = new TarReader(in);
+			String name;
+			while ((name = tar.nextEntry()) != null) {
+				Integer number = getNumber(name);
+				if (!tar.isDirectory() && number != null) {
+					numbered.put(number, tar.readContent());
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return numbered;
+	}
+
+	private static Integer getNumber(String name) {
+		Matcher m = FILE_NAME_PATTERN.matcher(name);
+		return m.find() ? Integer.valueOf(m.group(1)) : null;
+	}
+
+	private void convert(int number, InputStream in) throws IOException,
+			InterruptedException {
+
+		BlockCreator bc = new BlockCreator(new BufferedReader(
+				new InputStreamReader(in, "US-ASCII")));
+
+		BitGrid solution = null;
+		if (solver != null) {
+			SolveResult result = solver.solve(bc.getCols(), bc.getRows(),
+					timeout);
+			if (result.getStatus() == SolveResult.Status.SOLVED) {
+				solution = BitGrid.fromSolution(result.getSolution());
+				solvedCount++;
+			}
+		}
+
+		writer.add(number, bc.getCols(), bc.getRows(), solution);
+		count++;
+
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getSolvedCount() {
+		return solvedCount;
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		if (args.length < 2) {
+			printUsage();
+			return;
+		}
+
+		File source = new File(args[0]);
+		long timeout = 0;
+		if (args.length >= 4 && args[2].equals("-solve")) {
+			timeout = Long.parseLong(args[3]);
+		}
+
+		long start = System.currentTimeMillis();
+		CorpusWriter writer = new CorpusWriter(new File(args[1]));
+		CorpusConverter converter = new CorpusConverter(writer, timeout);
+		try {
+			if (source.isDirectory()) {
+				converter.convertDirectory(source);
+			} else {
+				converter.convertArchive(source);
+			}
+		} finally {
+			writer.close();
+			if (converter.solver != null) {
+				converter.solver.shutdown();
+			}
+		}
+
+		System.out.println("converted " + converter.getCount()
+				+ " nonograms with " + converter.getSolvedCount()
+				+ " solutions in " + (System.currentTimeMillis() - start)
+				+ " ms");
+
+	}
+
+	private static void printUsage() {
+		System.out.println("usage: CorpusConverter <nonogram directory|"
+				+ "archive.tar.gz> <corpus file> [-solve timeout]");
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.corpus;
+
+import com.github.musikk.nonosolver.BitGrid;
+import com.github.musikk.nonosolver.Blocks;
+
+/**
+ * A nonogram of a corpus file.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class CorpusEntry {
+
+	private final int number;
+
+	private final Blocks[] cols;
+
+	private final Blocks[] rows;
+
+	private final BitGrid solution;
+
+	CorpusEntry(int number, Blocks[] cols, Blocks[] rows, BitGrid solution) {
+		this.number = number;
+		this.cols = cols;
+		this.rows = rows;
+		this.solution = solution;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public Blocks[] getCols() {
+		return cols.clone();
+	}
+
+	public Blocks[] getRows() {
+		return rows.clone();
+	}
+
+	/**
+	 * Returns the solution stored with the puzzle.
+	 * 
+	 * @return the solution or null if the corpus doesn't contain it
+	 */
+	public BitGrid getSolution() {
+		return solution;
+	}
+
+}
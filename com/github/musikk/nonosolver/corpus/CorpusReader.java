@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.corpus;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.github.musikk.nonosolver.BitGrid;
+import com.github.musikk.nonosolver.Blocks;
+
+/**
+ * Reads nonograms from a binary corpus file written by {@link CorpusWriter}.
+ * The file is mapped into memory, a puzzle is looked up in the index and only
+ * its own bytes are decoded. A reader may be used by several threads at once.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class CorpusReader implements Closeable {
+
+	private final RandomAccessFile file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int maxNumber;
+
+	private final int indexOffset;
+
+	/**
+	 * Opens a corpus file.
+	 * 
+	 * @param corpusFile
+	 *            the file
+	 * @throws IOException
+	 *             if the file can't be read or isn't a corpus file
+	 */
+	public CorpusReader(File corpusFile) throws IOException {
+		this.file = new RandomAccessFile(corpusFile, "r");
+		try {
+			long size = file.length();
+			if (size < CorpusWriter.HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException("'" + corpusFile
+						+ "' is not a corpus file");
+			}
+			this.buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+					0, size);
+			if (buffer.getInt(0) != CorpusWriter.MAGIC) {
+				throw new IOException("'" + corpusFile
+						+ "' is not a corpus file");
+			}
+			int version = buffer.getInt(4);
+			if (version != CorpusWriter.VERSION) {
+				throw new IOException("unsupported corpus version " + version);
+			}
+			this.maxNumber = buffer.getInt(8);
+			long offset = buffer.getLong(12);
+			if (offset + 8L * (maxNumber + 1) > size) {
+				throw new IOException("corpus file '" + corpusFile
+						+ "' is truncated");
+			}
+			this.indexOffset = (int) offset;
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the highest puzzle number in the corpus.
+	 * 
+	 * @return the highest number
+	 */
+	public int getMaxNumber() {
+		return maxNumber;
+	}
+
+	/**
+	 * Returns whether the corpus contains the puzzle with the given number.
+	 * 
+	 * @param number
+	 *            the puzzle number
+	 * @return true if the puzzle is in the corpus
+	 */
+	public boolean contains(int number) {
+		return getOffset(number) != 0;
+	}
+
+	private int getOffset(int number) {
+		if (number <= 0 || number > maxNumber) {
+			return 0;
+		}
+		return (int) buffer.getLong(indexOffset + 8 * number);
+	}
+
+	/**
+	 * Reads the puzzle with the given number.
+	 * 
+	 * @param number
+	 *            the puzzle number
+	 * @return the puzzle or null if it isn't in the corpus
+	 */
+	public CorpusEntry get(int number) {
+
+		int offset = getOffset(number);
+		if (offset == 0) {
+			return null;
+		}
+
+		// every caller gets its own position
+		ByteBuffer in = buffer.duplicate();
+		in.position(offset);
+
+		int width = readVarint(in);
+		int height = readVarint(in);
+		Blocks[] cols = readBlocks(in, width);
+		Blocks[] rows = readBlocks(in, height);
+
+		BitGrid solution = null;
+		if (in.get() != 0) {
+			solution = new BitGrid(width, height);
+			int bits = 0;
+			int bitCount = 8;
+			for (int row = 0; row < height; row++) {
+				for (int col = 0; col < width; col++) {
+					if (bitCount == 8) {
+						bits = in.get() & 0xff;
+						bitCount = 0;
+					}
+					if ((bits & (0x80 >>> bitCount++)) != 0) {
+						solution.set(col, row, true);
+					}
+				}
+			}
+		}
+
+		return new CorpusEntry(number, cols, rows, solution);
+
+	}
+
+	/**
+	 * Returns the block information of all columns of the given puzzle.
+	 * 
+	 * @param number
+	 *            the puzzle number
+	 * @return the blocks or null if the puzzle isn't in the corpus
+	 */
+	public Blocks[] getCols(int number) {
+		CorpusEntry entry = get(number);
+		return entry == null ? null : entry.getCols();
+	}
+
+	/**
+	 * Returns the block information of all rows of the given puzzle.
+	 * 
+	 * @param number
+	 *            the puzzle number
+	 * @return the blocks or null if the puzzle isn't in the corpus
+	 */
+	public Blocks[] getRows(int number) {
+		CorpusEntry entry = get(number);
+		return entry == null ? null : entry.getRows();
+	}
+
+	private static Blocks[] readBlocks(ByteBuffer in, int count) {
+		Blocks[] lines = new Blocks[count];
+		for (int i = 0; i < count; i++) {
+			int[] blocks = new int[readVarint(in)];
+			for (int j = 0; j < blocks.length; j++) {
+				blocks[j] = readVarint(in);
+			}
+			lines[i] = new Blocks(blocks);
+		}
+		return lines;
+	}
+
+	private static int readVarint(ByteBuffer in) {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.get();
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Closes the file. The mapping itself is released by the garbage
+	 * collector.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+}
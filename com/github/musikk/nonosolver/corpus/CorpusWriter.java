@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.corpus;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.github.musikk.nonosolver.BitGrid;
+import com.github.musikk.nonosolver.Blocks;
+
+/**
+ * Writes nonograms into a single binary corpus file. The file consists of
+ * <ul>
+ * <li>a header: the magic number, the format version, the highest puzzle
+ * number and the offset of the index,</li>
+ * <li>the puzzles, each one as the varint encoded width and height, the
+ * varint encoded number of blocks and block lengths of every column and every
+ * row and a flag whether a solution follows. The solution is stored row by row
+ * with one bit per cell, padded to full bytes,</li>
+ * <li>the index: the offset of every puzzle number from 0 to the highest one,
+ * 0 for numbers that are not in the corpus.</li>
+ * </ul>
+ * All fixed size numbers are big endian. The index allows {@link CorpusReader}
+ * to find any puzzle without scanning the file.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class CorpusWriter implements Closeable {
+
+	static final int MAGIC = 0x4e4f4e4f; // "NONO"
+
+	static final int VERSION = 1;
+
+	/**
+	 * The size of the header: magic, version, highest number, index offset.
+	 */
+	static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+	private final FileOutputStream fileStream;
+
+	private final DataOutputStream out;
+
+	private long position = HEADER_SIZE;
+
+	private long[] offsets = new long[1024];
+
+	private int maxNumber;
+
+	/**
+	 * Creates a new corpus file, an existing file is overwritten.
+	 * 
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 */
+	public CorpusWriter(File file) throws IOException {
+		this.fileStream = new FileOutputStream(file);
+		this.out = new DataOutputStream(new BufferedOutputStream(fileStream,
+				1 << 16));
+		// the header is written on close when the index offset is known
+		out.write(new byte[HEADER_SIZE]);
+	}
+
+	/**
+	 * Adds a nonogram.
+	 * 
+	 * @param number
+	 *            the puzzle number, must be positive and not have been added
+	 *            before
+	 * @param cols
+	 *            the block information of all columns
+	 * @param rows
+	 *            the block information of all rows
+	 * @param solution
+	 *            the solution or null if it isn't known
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if the number is invalid or was added before or the
+	 *             nonogram is colored
+	 */
+	public void add(int number, Blocks[] cols, Blocks[] rows,
+			BitGrid solution) throws IOException {
+
+		if (number <= 0) {
+			throw new IllegalArgumentException("invalid puzzle number "
+					+ number);
+		}
+		for (Blocks[] lines : new Blocks[][] { cols, rows }) {
+			for (Blocks line : lines) {
+				if (line.isColored()) {
+					throw new IllegalArgumentException("puzzle " + number
+							+ " is colored, the corpus stores no colors");
+				}
+			}
+		}
+		if (number >= offsets.length) {
+			offsets = Arrays.copyOf(offsets,
+					Math.max(number + 1, 2 * offsets.length));
+		}
+		if (offsets[number] != 0) {
+			throw new IllegalArgumentException("puzzle " + number
+					+ " was already added");
+		}
+		if (solution != null
+				&& (solution.getWidth() != cols.length || solution
+						.getHeight() != rows.length)) {
+			throw new IllegalArgumentException(
+					"solution doesn't match the size of puzzle " + number);
+		}
+
+		offsets[number] = position;
+		maxNumber = Math.max(maxNumber, number);
+
+		writeVarint(cols.length);
+		writeVarint(rows.length);
+		writeBlocks(cols);
+		writeBlocks(rows);
+
+		if (solution == null) {
+			writeByte(0);
+		} else {
+			writeByte(1);
+			int bits = 0;
+			int bitCount = 0;
+			for (int row = 0; row < rows.length; row++) {
+				for (int col = 0; col < cols.length; col++) {
+					if (solution.get(col, row)) {
+						bits |= 0x80 >>> bitCount;
+					}
+					if (++bitCount == 8) {
+						writeByte(bits);
+						bits = 0;
+						bitCount = 0;
+					}
+				}
+			}
+			if (bitCount > 0) {
+				writeByte(bits);
+			}
+		}
+
+	}
+
+	private void writeBlocks(Blocks[] lines) throws IOException {
+		for (Blocks line : lines) {
+			int[] blocks = line.getBlocks();
+			writeVarint(blocks.length);
+			for (int block : blocks) {
+				writeVarint(block);
+			}
+		}
+	}
+
+	private void writeVarint(int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		writeByte(value);
+	}
+
+	private void writeByte(int value) throws IOException {
+		out.write(value);
+		position++;
+	}
+
+	/**
+	 * Writes the index and the header and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			long indexOffset = position;
+			for (int number = 0; number <= maxNumber; number++) {
+				out.writeLong(offsets[number]);
+			}
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(maxNumber)
+					.putLong(indexOffset);
+			header.flip();
+			FileChannel channel = fileStream.getChannel();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.corpus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * A minimal reader for tar archives. It understands plain and ustar headers
+ * which is enough for the archive of nonograms shipped with this program.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+class TarReader {
+
+	private static final int BLOCK_SIZE = 512;
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private final InputStream in;
+
+	private final byte[] header = new byte[BLOCK_SIZE];
+
+	private long remaining;
+
+	private long padding;
+
+	private boolean directory;
+
+	/**
+	 * Creates a new reader.
+	 * 
+	 * @param in
+	 *            the uncompressed archive
+	 */
+	TarReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Moves to the next entry, skipping the rest of the current one.
+	 * 
+	 * @return the name of the entry or null at the end of the archive
+	 * @throws IOException
+	 */
+	String nextEntry() throws IOException {
+
+		skip(remaining + padding);
+		remaining = 0;
+		padding = 0;
+
+		if (!readFully(header, true)) {
+			return null;
+		}
+		if (header[0] == 0) {
+			// two empty blocks terminate the archive
+			return null;
+		}
+
+		String name = readString(0, 100);
+		String prefix = readString(345, 155);
+		if (readString(257, 5).equals("ustar") && !prefix.isEmpty()) {
+			name = prefix + "/" + name;
+		}
+		remaining = Long.parseLong(readString(124, 12).trim(), 8);
+		padding = (BLOCK_SIZE - remaining % BLOCK_SIZE) % BLOCK_SIZE;
+		directory = header[156] == '5' || name.endsWith("/");
+
+		return name;
+
+	}
+
+	/**
+	 * Returns whether the current entry is a directory.
+	 * 
+	 * @return true for a directory
+	 */
+	boolean isDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Reads the content of the current entry.
+	 * 
+	 * @return the content
+	 * @throws IOException
+	 */
+	byte[] readContent() throws IOException {
+		if (remaining > Integer.MAX_VALUE) {
+			throw new IOException("tar entry too large");
+		}
+		byte[] content = new byte[(int) remaining];
+		readFully(content, false);
+		remaining = 0;
+		return content;
+	}
+
+	private String readString(int offset, int length) {
+		int end = offset;
+		while (end < offset + length && header[end] != 0) {
+			end++;
+		}
+		return new String(header, offset, end - offset, ASCII);
+	}
+
+	private boolean readFully(byte[] b, boolean eofAllowed)
+			throws IOException {
+		int read = 0;
+		while (read < b.length) {
+			int n = in.read(b, read, b.length - read);
+			if (n < 0) {
+				if (eofAllowed && read == 0) {
+					return false;
+				}
+				throw new EOFException("unexpected end of tar archive");
+			}
+			read += n;
+		}
+		return true;
+	}
+
+	private void skip(long n) throws IOException {
+		byte[] buffer = new byte[BLOCK_SIZE];
+		while (n > 0) {
+			int read = in.read(buffer, 0, (int) Math.min(n, buffer.length));
+			if (read < 0) {
+				throw new EOFException("unexpected end of tar archive");
+			}
+			n -= read;
+		}
+	}
+
+}
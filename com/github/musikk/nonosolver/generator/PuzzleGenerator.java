@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.generator;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.musikk.nonosolver.BitGrid;
+import com.github.musikk.nonosolver.BlockCreator;
+import com.github.musikk.nonosolver.Blocks;
+import com.github.musikk.nonosolver.ClueCompiler;
+import com.github.musikk.nonosolver.NonoSolver;
+import com.github.musikk.nonosolver.sat.CdclSolver;
+import com.github.musikk.nonosolver.sat.SatSolver;
+
+/**
+ * Generates nonograms with a unique solution. The pictures are either random
+ * or derived from images. A picture is accepted if its clues allow no other
+ * solution: it is solved once and then solved again with an additional clause
+ * that demands at least one cell to differ from the first solution.
+ * <p>
+ * Every check uses its own {@link CdclSolver} so the pictures can be checked
+ * on all cores at once.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class PuzzleGenerator {
+
+	/**
+	 * The default probability of a cell to be marked. Sparse random pictures
+	 * rarely have a unique solution.
+	 */
+	public static final double DEFAULT_DENSITY = 0.6;
+
+	private final int width;
+
+	private final int height;
+
+	private final double density;
+
+	private Difficulty difficulty;
+
+	/**
+	 * Creates a new generator for random pictures.
+	 * 
+	 * @param width
+	 *            the number of columns
+	 * @param height
+	 *            the number of rows
+	 * @param density
+	 *            the probability of a cell to be marked
+	 */
+	public PuzzleGenerator(int width, int height, double density) {
+		this.width = width;
+		this.height = height;
+		this.density = density;
+	}
+
+	/**
+	 * Restricts the generated nonograms to the given difficulty.
+	 * 
+	 * @param difficulty
+	 *            the difficulty or null to accept any difficulty
+	 */
+	public void setDifficulty(Difficulty difficulty) {
+		this.difficulty = difficulty;
+	}
+
+	/**
+	 * Creates a random picture.
+	 * 
+	 * @param random
+	 *            the source of randomness
+	 * @return the picture
+	 */
+	public BitGrid createRandomGrid(Random random) {
+		BitGrid grid = new BitGrid(width, height);
+		for (int row = 0; row < height; row++) {
+			for (int col = 0; col < width; col++) {
+				if (random.nextDouble() < density) {
+					grid.set(col, row, true);
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Tries to generate a single nonogram.
+	 * 
+	 * @param random
+	 *            the source of randomness
+	 * @return the nonogram or null if the random picture was rejected
+	 */
+	public Puzzle generate(Random random) {
+		Puzzle puzzle = check(createRandomGrid(random));
+		if (!puzzle.isUnique()
+				|| (difficulty != null && puzzle.getDifficulty() != difficulty)) {
+			return null;
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Generates nonograms in parallel until either enough have been found or
+	 * too many pictures have been rejected. The result is deterministic for a
+	 * given seed and thread count apart from its order.
+	 * 
+	 * @param count
+	 *            the number of nonograms to generate
+	 * @param threads
+	 *            the number of threads
+	 * @param maxAttempts
+	 *            the maximum number of pictures to check
+	 * @param seed
+	 *            the seed of the random pictures
+	 * @return the nonograms, possibly less than requested
+	 * @throws InterruptedException
+	 */
+	public List<Puzzle> generate(final int count, int threads,
+			final int maxAttempts, long seed) throws InterruptedException {
+
+		final List<Puzzle> puzzles = Collections
+				.synchronizedList(new ArrayList<Puzzle>(count));
+		final AtomicInteger found = new AtomicInteger();
+		final AtomicInteger attempts = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(threads);
+			for (int i = 0; i < threads; i++) {
+				final Random random = new Random(seed + i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						while (found.get() < count
+								&& attempts.getAndIncrement() < maxAttempts) {
+							Puzzle puzzle = generate(random);
+							if (puzzle != null
+									&& found.getAndIncrement() < count) {
+								puzzles.add(puzzle);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return new ArrayList<Puzzle>(puzzles);
+
+	}
+
+	/**
+	 * Derives a nonogram from an image.
+	 * 
+	 * @param image
+	 *            the image, it is scaled to the size of this generator
+	 * @param threshold
+	 *            the luminance between 0 and 255 below which a pixel is marked
+	 * @return the nonogram, check {@link Puzzle#isUnique()} before using it
+	 */
+	public Puzzle fromImage(BufferedImage image, int threshold) {
+		return check(ClueCompiler.fromImage(image, width, height, threshold));
+	}
+
+	/**
+	 * Compiles the clues of a picture and checks whether they have a unique
+	 * solution.
+	 * 
+	 * @param grid
+	 *            the picture
+	 * @return the nonogram
+	 */
+	public static Puzzle check(BitGrid grid) {
+
+		Blocks[] cols = ClueCompiler.compileColumns(grid);
+		Blocks[] rows = ClueCompiler.compileRows(grid);
+
+		SatSolver satSolver = new CdclSolver();
+		NonoSolver solver = new NonoSolver(cols, rows, satSolver);
+		if (!solver.solve()) {
+			throw new IllegalStateException("picture contradicts its clues");
+		}
+
+		int[][] cellVariables = solver.getCellVariables();
+		if (cellVariables == null) {
+			satSolver.close();
+			// the line propagation only draws conclusions, so if it solves
+			// the nonogram the solution is unique
+			return new Puzzle(grid, cols, rows, true, Difficulty.LINE_SOLVABLE);
+		}
+
+		boolean[][] solution = solver.getSolution();
+		int[] differs = new int[grid.getWidth() * grid.getHeight()];
+		int i = 0;
+		for (int col = 0; col < grid.getWidth(); col++) {
+			for (int row = 0; row < grid.getHeight(); row++) {
+				int variable = cellVariables[col][row];
+				differs[i++] = solution[col][row] ? -variable : variable;
+			}
+		}
+		satSolver.addClause(differs);
+		boolean unique = !satSolver.solve();
+		satSolver.close();
+
+		return new Puzzle(grid, cols, rows, unique, Difficulty.SEARCH);
+
+	}
+
+	/**
+	 * How a nonogram can be solved.
+	 */
+	public static enum Difficulty {
+		/**
+		 * Looking at single lines suffices.
+		 */
+		LINE_SOLVABLE,
+		/**
+		 * Some cells can only be determined by trying.
+		 */
+		SEARCH
+	}
+
+	/**
+	 * A generated nonogram.
+	 */
+	public static class Puzzle {
+
+		private final BitGrid grid;
+
+		private final Blocks[] cols;
+
+		private final Blocks[] rows;
+
+		private final boolean unique;
+
+		private final Difficulty difficulty;
+
+		Puzzle(BitGrid grid, Blocks[] cols, Blocks[] rows, boolean unique,
+				Difficulty difficulty) {
+			this.grid = grid;
+			this.cols = cols;
+			this.rows = rows;
+			this.unique = unique;
+			this.difficulty = difficulty;
+		}
+
+		public BitGrid getGrid() {
+			return grid;
+		}
+
+		public Blocks[] getCols() {
+			return cols.clone();
+		}
+
+		public Blocks[] getRows() {
+			return rows.clone();
+		}
+
+		public boolean isUnique() {
+			return unique;
+		}
+
+		public Difficulty getDifficulty() {
+			return difficulty;
+		}
+
+		/**
+		 * Writes this nonogram in the file format.
+		 * 
+		 * @param file
+		 *            the file
+		 * @throws IOException
+		 */
+		public void write(File file) throws IOException {
+			Writer writer = new BufferedWriter(new FileWriter(file));
+			try {
+				BlockCreator.write(writer, cols, rows);
+			} finally {
+				writer.close();
+			}
+		}
+
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		if (args.length < 3) {
+			printUsage();
+			return;
+		}
+
+		int width = Integer.parseInt(args[0]);
+		int height = Integer.parseInt(args[1]);
+		int count = Integer.parseInt(args[2]);
+		double density = DEFAULT_DENSITY;
+		Difficulty difficulty = null;
+		File directory = new File("generated");
+		if (args.length >= 4) {
+			density = Double.parseDouble(args[3]);
+		}
+		if (args.length >= 5 && !args[4].equals("any")) {
+			difficulty = Difficulty.valueOf(args[4].toUpperCase());
+		}
+		if (args.length >= 6) {
+			directory = new File(args[5]);
+		}
+
+		PuzzleGenerator generator = new PuzzleGenerator(width, height, density);
+		generator.setDifficulty(difficulty);
+
+		long start = System.currentTimeMillis();
+		List<Puzzle> puzzles = generator.generate(count, Runtime.getRuntime()
+				.availableProcessors(), count * 1000, System.nanoTime());
+		long time = System.currentTimeMillis() - start;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("could not create " + directory);
+		}
+		for (int i = 0; i < puzzles.size(); i++) {
+			puzzles.get(i).write(
+					new File(directory, "nonogram." + (i + 1)));
+		}
+
+		System.out.println("generated " + puzzles.size() + " nonograms in "
+				+ time + " ms");
+
+	}
+
+	private static void printUsage() {
+		System.out.println("usage: PuzzleGenerator width height count"
+				+ " [density [line_solvable|search|any [directory]]]");
+	}
+
+}
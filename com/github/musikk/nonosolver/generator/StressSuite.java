@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.github.musikk.nonosolver.BitGrid;
+import com.github.musikk.nonosolver.Blocks;
+import com.github.musikk.nonosolver.ClueCompiler;
+import com.github.musikk.nonosolver.NonoSolver;
+import com.github.musikk.nonosolver.sat.CdclSolver;
+
+/**
+ * Solves synthetic nonograms of growing size and reports the time and the peak
+ * resident set size of every run. Every nonogram is solved in a JVM of its own
+ * since the peak RSS (VmHWM in /proc/self/status, only available on Linux)
+ * can't be reset. There are two kinds of pictures: shapes, overlapping
+ * ellipses like the ones of nonograms derived from images, and noise, random
+ * cells with the default density of {@link PuzzleGenerator}, which rarely
+ * leave anything to the line propagation and stress the SAT solver. The
+ * pictures depend only on their size and the seed.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class StressSuite {
+
+	private static final int[] DEFAULT_SIZES = { 100, 200, 300, 400, 500 };
+
+	private static final long DEFAULT_TIMEOUT = 600;
+
+	private static final long SEED = 1;
+
+	/**
+	 * The kinds of pictures.
+	 */
+	private static final String SHAPES = "shapes";
+
+	private static final String NOISE = "noise";
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		if (args.length >= 3 && args[0].equals("-run")) {
+			run(args[1], Integer.parseInt(args[2]));
+			return;
+		}
+		if (args.length > 3) {
+			printUsage();
+			return;
+		}
+
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length >= 1) {
+			String[] parts = args[0].split(",");
+			sizes = new int[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				sizes[i] = Integer.parseInt(parts[i]);
+			}
+		}
+		String[] kinds = { SHAPES, NOISE };
+		if (args.length >= 2 && !args[1].equals("all")) {
+			if (!args[1].equals(SHAPES) && !args[1].equals(NOISE)) {
+				printUsage();
+				return;
+			}
+			kinds = new String[] { args[1] };
+		}
+		long timeout = args.length >= 3 ? Long.parseLong(args[2])
+				: DEFAULT_TIMEOUT;
+
+		System.out.println(String.format("%-7s %5s %9s %9s %10s %10s %10s",
+				"kind", "size", "ms", "cnf ms", "variables", "clauses",
+				"peak RSS"));
+		for (String kind : kinds) {
+			for (int size : sizes) {
+				System.out.println(fork(kind, size, timeout));
+			}
+		}
+
+	}
+
+	/**
+	 * Runs a single nonogram in a new JVM with the class path of this one.
+	 * 
+	 * @return the line the run printed or why it didn't print one
+	 */
+	private static String fork(String kind, int size, long timeout)
+			throws IOException, InterruptedException {
+
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(StressSuite.class.getName());
+		command.add("-run");
+		command.add(kind);
+		command.add(String.valueOf(size));
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		final Process process = builder.start();
+
+		final String[] result = new String[1];
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					BufferedReader in = new BufferedReader(
+							new InputStreamReader(process.getInputStream(),
+									"UTF-8"));
+					try {
+						String line;
+						while ((line = in.readLine()) != null) {
+							result[0] = line;
+						}
+					} finally {
+						in.close();
+					}
+				} catch (IOException e) {
+					// the process got destroyed
+				}
+			}
+		};
+		reader.start();
+		reader.join(timeout * 1000);
+		if (reader.isAlive()) {
+			process.destroy();
+			reader.join();
+			return String.format("%-7s %5d   timeout after %d s", kind, size,
+					timeout);
+		}
+		int status = process.waitFor();
+		if (status != 0 || result[0] == null) {
+			return String.format("%-7s %5d   failed with exit status %d",
+					kind, size, status);
+		}
+		return result[0];
+
+	}
+
+	/**
+	 * Solves a single nonogram and prints its line of the report.
+	 */
+	private static void run(String kind, int size) {
+
+		BitGrid grid;
+		if (kind.equals(SHAPES)) {
+			grid = createShapes(size, new Random(SEED));
+		} else if (kind.equals(NOISE)) {
+			grid = new PuzzleGenerator(size, size,
+					PuzzleGenerator.DEFAULT_DENSITY)
+					.createRandomGrid(new Random(SEED));
+		} else {
+			throw new IllegalArgumentException("unknown kind " + kind);
+		}
+		Blocks[] cols = ClueCompiler.compileColumns(grid);
+		Blocks[] rows = ClueCompiler.compileRows(grid);
+
+		long start = System.nanoTime();
+		CdclSolver satSolver = new CdclSolver();
+		NonoSolver solver = new NonoSolver(cols, rows, satSolver);
+		if (!solver.solve()) {
+			throw new IllegalStateException("no solution found");
+		}
+		long millis = (System.nanoTime() - start) / 1000000;
+		solver.close();
+
+		// the solution may differ from the picture but not from its clues
+		BitGrid solution = BitGrid.fromSolution(solver.getSolution());
+		if (!isEqual(cols, ClueCompiler.compileColumns(solution))
+				|| !isEqual(rows, ClueCompiler.compileRows(solution))) {
+			throw new IllegalStateException("wrong solution");
+		}
+
+		long peak = readPeakRss();
+		System.out.println(String.format("%-7s %5d %9d %9d %10d %10d %10s",
+				kind, size, millis, solver.getConstraintCreationTime(),
+				satSolver.getVariableCount(), satSolver.getClauseCount(),
+				peak < 0 ? "?" : peak / 1024 + " MB"));
+
+	}
+
+	/**
+	 * Creates a picture of ellipses, every ellipse inverts the cells it
+	 * covers, so overlapping ellipses leave holes.
+	 */
+	private static BitGrid createShapes(int size, Random random) {
+		BitGrid grid = new BitGrid(size, size);
+		int count = Math.max(1, size / 10);
+		for (int i = 0; i < count; i++) {
+			double centerX = random.nextDouble() * size;
+			double centerY = random.nextDouble() * size;
+			double radiusX = size / 20.0 + random.nextDouble() * size / 6;
+			double radiusY = size / 20.0 + random.nextDouble() * size / 6;
+			for (int col = 0; col < size; col++) {
+				double x = (col + 0.5 - centerX) / radiusX;
+				for (int row = 0; row < size; row++) {
+					double y = (row + 0.5 - centerY) / radiusY;
+					if (x * x + y * y <= 1) {
+						grid.set(col, row, !grid.get(col, row));
+					}
+				}
+			}
+		}
+		return grid;
+	}
+
+	private static boolean isEqual(Blocks[] expected, Blocks[] actual) {
+		for (int i = 0; i < expected.length; i++) {
+			if (!expected[i].toString().equals(actual[i].toString())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the peak resident set size of this process in kB or -1 if it
+	 * isn't known.
+	 */
+	private static long readPeakRss() {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					new FileInputStream("/proc/self/status"), "UTF-8"));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith("VmHWM:")) {
+						String value = line.substring(6).trim();
+						return Long.parseLong(value.split("\\s+")[0]);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// not Linux
+		}
+		return -1;
+	}
+
+	private static void printUsage() {
+		System.out.println("usage: StressSuite [size[,size]*"
+				+ " [shapes|noise|all [timeout in s]]]");
+	}
+
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.janko;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads nonograms from janko.at with a few concurrent connections. The
+ * requests are limited by a {@link TokenBucket} to avoid hammering the web
+ * server, failed requests are retried with an exponential backoff.
+ * <p>
+ * The ETag and Last-Modified headers of every page are kept in a cache file in
+ * the output folder. Subsequent runs make conditional requests, pages that
+ * didn't change since are skipped.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class JankoFetcher {
+
+	/**
+	 * The name of the cache file in the output folder.
+	 */
+	private static final String CACHE_FILE_NAME = ".janko-cache.properties";
+
+	private static final int DEFAULT_THREADS = 4;
+
+	private static final double DEFAULT_REQUESTS_PER_SECOND = 2;
+
+	private static final int DEFAULT_BURST = 4;
+
+	private static final int DEFAULT_RETRIES = 3;
+
+	/**
+	 * The waiting time in milliseconds before the first retry. It doubles with
+	 * every further retry.
+	 */
+	private static final int RETRY_DELAY = 1000;
+
+	private static final int TIMEOUT = 30000;
+
+	private final String baseUrlString;
+
+	private final File outFolder;
+
+	private final int threads;
+
+	private final int retries;
+
+	private final TokenBucket tokenBucket;
+
+	private final File cacheFile;
+
+	/**
+	 * The cached headers; for page n the keys are "n.etag", "n.lastModified"
+	 * and "n.empty" if the page doesn't contain a nonogram.
+	 */
+	private final Properties cache;
+
+	/**
+	 * Creates a new fetcher with default settings.
+	 * 
+	 * @param baseUrlString
+	 *            the base URL, %number% is replaced with the number of the
+	 *            nonogram
+	 * @param outFolder
+	 *            the folder the nonogram files are written to
+	 */
+	public JankoFetcher(String baseUrlString, File outFolder) {
+		this(baseUrlString, outFolder, DEFAULT_THREADS, new TokenBucket(
+				DEFAULT_BURST, DEFAULT_REQUESTS_PER_SECOND), DEFAULT_RETRIES);
+	}
+
+	/**
+	 * Creates a new fetcher.
+	 * 
+	 * @param baseUrlString
+	 *            the base URL, %number% is replaced with the number of the
+	 *            nonogram
+	 * @param outFolder
+	 *            the folder the nonogram files are written to
+	 * @param threads
+	 *            the number of concurrent requests
+	 * @param tokenBucket
+	 *            the rate limiter, every request takes a token
+	 * @param retries
+	 *            the number of retries of a failed request
+	 */
+	public JankoFetcher(String baseUrlString, File outFolder, int threads,
+			TokenBucket tokenBucket, int retries) {
+		this.baseUrlString = baseUrlString;
+		this.outFolder = outFolder;
+		this.threads = threads;
+		this.tokenBucket = tokenBucket;
+		this.retries = retries;
+		this.cacheFile = new File(outFolder, CACHE_FILE_NAME);
+		this.cache = new Properties();
+	}
+
+	/**
+	 * Downloads the nonograms in the given range of numbers.
+	 * 
+	 * @param first
+	 *            the first number
+	 * @param last
+	 *            the last number, inclusive
+	 * @return the summary of the run
+	 * @throws IOException
+	 *             if the cache can't be read or written
+	 * @throws InterruptedException
+	 */
+	public Summary fetch(int first, int last) throws IOException,
+			InterruptedException {
+
+		loadCache();
+
+		final Summary summary = new Summary();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = first; i <= last; i++) {
+				final int number = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws InterruptedException {
+						fetchWithRetries(number, summary);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException("error fetching nonogram", e
+							.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			saveCache();
+		}
+
+		return summary;
+
+	}
+
+	private void fetchWithRetries(int number, Summary summary)
+			throws InterruptedException {
+
+		for (int attempt = 0;; attempt++) {
+			tokenBucket.acquire();
+			try {
+				Result result = fetch(number);
+				if (result != null) {
+					result.count(summary);
+					return;
+				}
+			} catch (IOException e) {
+				if (attempt >= retries) {
+					System.err.println("giving up on nonogram " + number
+							+ ": " + e.getMessage());
+				}
+			} catch (RuntimeException e) {
+				// the page won't parse any better the next time
+				System.err.println("could not read nonogram " + number + ": "
+						+ e.getMessage());
+				summary.failed.incrementAndGet();
+				return;
+			}
+			if (attempt >= retries) {
+				summary.failed.incrementAndGet();
+				return;
+			}
+			Thread.sleep((long) RETRY_DELAY << attempt);
+		}
+
+	}
+
+	/**
+	 * Makes a single request for the given nonogram.
+	 * 
+	 * @return the result or null if the request should be retried
+	 * @throws IOException
+	 */
+	private Result fetch(int number) throws IOException {
+
+		File outFile = new File(outFolder, "nonogram." + number);
+		String key = Integer.toString(number);
+
+		HttpURLConnection connection = (HttpURLConnection) JankoGrabber
+				.getSiteUrl(baseUrlString, number).openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+
+		// only ask for changes if the result of the last request is still
+		// there
+		boolean empty = Boolean.parseBoolean(getCached(key + ".empty"));
+		if (empty || outFile.exists()) {
+			String etag = getCached(key + ".etag");
+			if (etag != null) {
+				connection.setRequestProperty("If-None-Match", etag);
+			}
+			String lastModified = getCached(key + ".lastModified");
+			if (lastModified != null) {
+				connection.setRequestProperty("If-Modified-Since",
+						lastModified);
+			}
+		}
+
+		try {
+			int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				return Result.UNCHANGED;
+			}
+			if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+				return Result.MISSING;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				// server errors and throttling are worth another try
+				return status >= 500 || status == 429 ? null : Result.MISSING;
+			}
+
+			List<String> fileLines;
+			InputStream in = connection.getInputStream();
+			try {
+				fileLines = JankoGrabber.convert(in);
+			} finally {
+				in.close();
+			}
+
+			if (fileLines == null) {
+				setCached(key + ".empty", "true");
+			} else {
+				JankoGrabber.write(outFile, fileLines);
+				setCached(key + ".empty", null);
+			}
+			setCached(key + ".etag", connection.getHeaderField("ETag"));
+			setCached(key + ".lastModified", connection
+					.getHeaderField("Last-Modified"));
+
+			return fileLines == null ? Result.MISSING : Result.DOWNLOADED;
+		} finally {
+			connection.disconnect();
+		}
+
+	}
+
+	private String getCached(String key) {
+		synchronized (cache) {
+			return cache.getProperty(key);
+		}
+	}
+
+	private void setCached(String key, String value) {
+		synchronized (cache) {
+			if (value == null) {
+				cache.remove(key);
+			} else {
+				cache.setProperty(key, value);
+			}
+		}
+	}
+
+	private void loadCache() throws IOException {
+		if (!cacheFile.exists()) {
+			return;
+		}
+		InputStream in = new FileInputStream(cacheFile);
+		try {
+			synchronized (cache) {
+				cache.load(in);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private void saveCache() throws IOException {
+		OutputStream out = new FileOutputStream(cacheFile);
+		try {
+			synchronized (cache) {
+				cache.store(out, "janko.at page headers");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The possible outcomes of fetching a single nonogram.
+	 */
+	private static enum Result {
+		DOWNLOADED, UNCHANGED, MISSING;
+
+		void count(Summary summary) {
+			switch (this) {
+			case DOWNLOADED:
+				summary.downloaded.incrementAndGet();
+				break;
+			case UNCHANGED:
+				summary.unchanged.incrementAndGet();
+				break;
+			default:
+				summary.missing.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Counts the outcomes of a run.
+	 */
+	public static class Summary {
+
+		private final AtomicInteger downloaded = new AtomicInteger();
+
+		private final AtomicInteger unchanged = new AtomicInteger();
+
+		private final AtomicInteger missing = new AtomicInteger();
+
+		private final AtomicInteger failed = new AtomicInteger();
+
+		public int getDownloaded() {
+			return downloaded.get();
+		}
+
+		public int getUnchanged() {
+			return unchanged.get();
+		}
+
+		public int getMissing() {
+			return missing.get();
+		}
+
+		public int getFailed() {
+			return failed.get();
+		}
+
+		@Override
+		public String toString() {
+			return "downloaded: " + downloaded + ", unchanged: " + unchanged
+					+ ", missing: " + missing + ", failed: " + failed;
+		}
+
+	}
+
+}
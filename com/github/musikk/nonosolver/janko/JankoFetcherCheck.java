@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.janko;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks {@link JankoFetcher} against a local stub server that serves saved
+ * pages. The pages are the files <code>&lt;number&gt;.a.htm</code> of a
+ * directory, janko-pages by default, whose subdirectory expected holds the
+ * nonogram files the pages have to be converted to. The stub answers the
+ * first request of every page in {@link #UNAVAILABLE_ONCE} with status 503,
+ * pages without a file with 404, and requests whose If-None-Match header
+ * matches the ETag of a page with 304.
+ * <p>
+ * The pages are fetched twice into a new folder. The first run has to
+ * download every page and the second one has to find all of them unchanged,
+ * except for pages that don't exist or can't be read. A page with rows but
+ * no expected nonogram file has to fail. The run exits with status 1 if any
+ * outcome differs.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class JankoFetcherCheck {
+
+	/**
+	 * The pages that are unavailable for the first request, to exercise the
+	 * retries.
+	 */
+	private static final Set<String> UNAVAILABLE_ONCE = new HashSet<String>(
+			Arrays.asList("006.a.htm"));
+
+	private static final String DEFAULT_PAGES = "janko-pages";
+
+	private static final int LAST_NUMBER = 6;
+
+	private final File pages;
+
+	private final Set<String> unavailable = new HashSet<String>(
+			UNAVAILABLE_ONCE);
+
+	private final List<String> failures = new ArrayList<String>();
+
+	JankoFetcherCheck(File pages) {
+		this.pages = pages;
+	}
+
+	/**
+	 * Serves the saved pages.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+
+		String name = exchange.getRequestURI().getPath();
+		name = name.substring(name.lastIndexOf('/') + 1);
+		File page = new File(pages, name);
+
+		try {
+			synchronized (unavailable) {
+				if (unavailable.remove(name)) {
+					exchange.sendResponseHeaders(503, -1);
+					return;
+				}
+			}
+			if (!page.isFile()) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			String etag = "\"" + page.length() + "-" + page.lastModified()
+					+ "\"";
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst(
+					"If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			byte[] content = readFile(page);
+			exchange.sendResponseHeaders(200, content.length);
+			OutputStream out = exchange.getResponseBody();
+			try {
+				out.write(content);
+			} finally {
+				out.close();
+			}
+		} finally {
+			exchange.close();
+		}
+
+	}
+
+	/**
+	 * Fetches the pages twice and compares the outcomes.
+	 */
+	void run(String baseUrlString, File outFolder) throws IOException,
+			InterruptedException {
+
+		// what the pages are expected to turn into
+		int nonograms = 0;
+		int empty = 0;
+		int unreadable = 0;
+		int missing = 0;
+		for (int number = 1; number <= LAST_NUMBER; number++) {
+			File page = new File(pages, getPageName(number));
+			if (!page.isFile()) {
+				missing++;
+			} else if (getExpectedFile(number).isFile()) {
+				nonograms++;
+			} else if (new String(readFile(page), "ISO-8859-1")
+					.contains("param name=\"s")) {
+				unreadable++;
+			} else {
+				empty++;
+			}
+		}
+
+		JankoFetcher.Summary first = createFetcher(baseUrlString, outFolder)
+				.fetch(1, LAST_NUMBER);
+		System.out.println("first run:  " + first);
+		check("downloaded", nonograms, first.getDownloaded());
+		check("unchanged", 0, first.getUnchanged());
+		check("missing", missing + empty, first.getMissing());
+		check("failed", unreadable, first.getFailed());
+
+		for (int number = 1; number <= LAST_NUMBER; number++) {
+			File expectedFile = getExpectedFile(number);
+			File outFile = new File(outFolder, "nonogram." + number);
+			if (expectedFile.isFile()) {
+				if (!outFile.isFile()) {
+					failures.add(outFile.getName() + " wasn't written");
+				} else if (!Arrays.equals(readFile(expectedFile),
+						readFile(outFile))) {
+					failures.add(outFile.getName() + " differs from '"
+							+ expectedFile + "'");
+				}
+			} else if (outFile.exists()) {
+				failures.add(outFile.getName() + " shouldn't exist");
+			}
+		}
+
+		// a new fetcher only knows the pages from the cache file
+		JankoFetcher.Summary second = createFetcher(baseUrlString, outFolder)
+				.fetch(1, LAST_NUMBER);
+		System.out.println("second run: " + second);
+		check("downloaded", 0, second.getDownloaded());
+		check("unchanged", nonograms + empty, second.getUnchanged());
+		check("missing", missing, second.getMissing());
+		check("failed", unreadable, second.getFailed());
+
+	}
+
+	private static JankoFetcher createFetcher(String baseUrlString,
+			File outFolder) {
+		return new JankoFetcher(baseUrlString, outFolder, 4, new TokenBucket(
+				8, 100), 2);
+	}
+
+	private void check(String outcome, int expected, int actual) {
+		if (expected != actual) {
+			failures.add(outcome + ": expected " + expected + ", got "
+					+ actual);
+		}
+	}
+
+	private static String getPageName(int number) {
+		return String.format("%03d.a.htm", number);
+	}
+
+	private File getExpectedFile(int number) {
+		return new File(new File(pages, "expected"), "nonogram." + number);
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] content = new byte[(int) in.length()];
+			in.readFully(content);
+			return content;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+
+		File pages = new File(args.length >= 1 ? args[0] : DEFAULT_PAGES);
+		if (!pages.isDirectory()) {
+			System.err.println("usage: JankoFetcherCheck [page directory]");
+			System.exit(2);
+		}
+
+		final JankoFetcherCheck check = new JankoFetcherCheck(pages);
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				InetAddress.getByName(null), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				check.handle(exchange);
+			}
+		});
+		server.start();
+
+		File outFolder = File.createTempFile("janko", "");
+		outFolder.delete();
+		outFolder.mkdir();
+		try {
+			check.run("http://localhost:" + server.getAddress().getPort()
+					+ "/Raetsel/Nonogramme/%number%.a.htm", outFolder);
+		} finally {
+			server.stop(0);
+			delete(outFolder);
+		}
+
+		for (String failure : check.failures) {
+			System.out.println(failure);
+		}
+		System.out.println(check.failures.isEmpty() ? "PASSED" : "FAILED");
+		System.exit(check.failures.isEmpty() ? 0 : 1);
+
+	}
+
+}
@@ -26,22 +26,21 @@
  */
 package com.github.musikk.nonosolver.janko;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import com.github.musikk.nonosolver.Blocks;
 
 /**
- * This class parses the nonograms to be found on <a
+ * This class downloads the nonograms to be found on <a
  * href="http://www.janko.at/Raetsel/Nonogramme">janko.at</a>.
  * 
  * @author Werner Hahn
@@ -57,10 +56,9 @@ public class JankoGrabber {
 	private static final String BASE_URL_STRING = "http://www.janko.at/Raetsel/Nonogramme/%number%.a.htm";
 
 	/**
-	 * The time in milliseconds between each nonogram gets downloaded. This
-	 * prevents hammering the web server.
+	 * The highest nonogram number on the site.
 	 */
-	private static final int WAITING_TIME = 500;
+	private static final int LAST_NUMBER = 1100;
 
 	/**
 	 * Converts a nonogram number to a URL.
@@ -70,6 +68,19 @@ public class JankoGrabber {
 	 * @return the URL of the site where the nonogram can be found
 	 */
 	private static URL getSiteUrl(int number) {
+		return getSiteUrl(BASE_URL_STRING, number);
+	}
+
+	/**
+	 * Converts a nonogram number to a URL.
+	 * 
+	 * @param baseUrlString
+	 *            the base URL, %number% is replaced with the number
+	 * @param number
+	 *            the number of the nonogram
+	 * @return the URL of the site where the nonogram can be found
+	 */
+	static URL getSiteUrl(String baseUrlString, int number) {
 		String numberString = Integer.toString(number);
 		if (number < 10) {
 			numberString = "0" + numberString;
@@ -78,195 +89,101 @@ public class JankoGrabber {
 			numberString = "0" + numberString;
 		}
 		try {
-			return new URL(BASE_URL_STRING.replace("%number%", numberString));
+			return new URL(baseUrlString.replace("%number%", numberString));
 		} catch (MalformedURLException e) {
-			throw new RuntimeException("can't happen");
+			throw new IllegalArgumentException("invalid base URL '"
+					+ baseUrlString + "'", e);
 		}
 	}
 
 	/**
-	 * Downloads the site content the nonogram is on and extracts the strings
-	 * containing the actual nonogram information.
+	 * This method takes the number of the nonogram, downloads and parses the
+	 * belonging HTML code and converts it to the format suitable for use by the
+	 * nonogram solver.
 	 * 
-	 * @param siteUrl
-	 *            the URL of the site where the nonogram can be found
-	 * @return a List of strings with the nonogram information. Each string
-	 *         represents a row of the nonogram with 'x'es for marked cells and
-	 *         '-'s for empty cells.
+	 * @param number
+	 *            the number of the nonogram
+	 * @return a list of lines representing a file for use by the nonogram
+	 *         solver
 	 * @throws IOException
 	 */
-	private static List<String> extractNonoStrings(URL siteUrl)
-			throws IOException {
-
-		List<String> nonoStrings = new ArrayList<String>();
+	public static List<String> grab(int number) throws IOException {
 
-		BufferedReader reader = new BufferedReader(new InputStreamReader(
-				siteUrl.openStream()));
-		boolean foundNonoStrings = false;
-		boolean readFurther = true;
-		Pattern p = Pattern
-				.compile(".*?param name=\"s\\d+\" value=\"(.*?)\".*");
-		while (readFurther) {
-			String line = reader.readLine();
-			if (line == null) {
-				break;
-			}
-			Matcher m = p.matcher(line);
-			if (m.find()) {
-				foundNonoStrings = true;
-				nonoStrings.add(m.group(1).replace(" ", ""));
-			} else {
-				if (foundNonoStrings) {
-					readFurther = false;
-				}
-			}
+		InputStream siteStream = getSiteUrl(number).openStream();
+		try {
+			return convert(siteStream);
+		} finally {
+			siteStream.close();
 		}
-
-		return nonoStrings;
 	}
 
 	/**
-	 * This method takes the raw nonogram information and converts the rows to
-	 * the format used for the nonogram solver.
+	 * Parses the HTML code of a nonogram site and converts it to the format
+	 * suitable for use by the nonogram solver.
 	 * 
-	 * @param nonoStrings
-	 *            a list of rows with 'x'es for marked cells and '-'s for empty
-	 *            cells
-	 * @return the row information suitable for use by the nonogram solver
+	 * @param siteStream
+	 *            the content of the site
+	 * @return a list of lines representing a file for use by the nonogram
+	 *         solver or null if the site doesn't contain a nonogram
+	 * @throws IOException
 	 */
-	private static List<String> extractRowStrings(List<String> nonoStrings) {
-
-		List<String> rowStrings = new ArrayList<String>();
+	static List<String> convert(InputStream siteStream) throws IOException {
 
-		for (String nonoString : nonoStrings) {
-			String[] blocks = nonoString.split("-+?");
-			String fileLine = "";
-			for (String block : blocks) {
-				if (block.length() == 0) {
-					continue;
-				}
-				if (!fileLine.equals("")) {
-					fileLine += " ";
-				}
-				fileLine += Integer.toString(block.length());
-			}
-			rowStrings.add(fileLine);
+		NonoPageScanner scanner = NonoPageScanner.scan(siteStream);
+		if (!scanner.hasNonogram()) {
+			return null;
 		}
 
-		return rowStrings;
-	}
-
-	/**
-	 * This method takes the raw nonogram information and converts the columns
-	 * to the format used for the nonogram solver.
-	 * 
-	 * @param nonoStrings
-	 *            a list of rows with 'x'es for marked cells and '-'s for empty
-	 *            cells
-	 * @return the column information suitable for use by the nonogram solver
-	 */
-	private static List<String> extractColStrings(List<String> nonoStrings) {
-
-		List<String> colStrings = new ArrayList<String>();
-
-		int width = nonoStrings.get(0).length();
-
-		for (int i = 0; i < width; i++) {
-			int currentBlockLength = 0;
-			String fileLine = "";
-			for (String nonoString : nonoStrings) {
-				char c = nonoString.charAt(i);
-				if (c == 'x') {
-					currentBlockLength++;
-				} else {
-					if (currentBlockLength > 0) {
-						if (!fileLine.isEmpty()) {
-							fileLine += " ";
-						}
-						fileLine += Integer.toString(currentBlockLength);
-						currentBlockLength = 0;
-					}
-				}
-			}
-			if (currentBlockLength > 0) {
-				fileLine += (fileLine.isEmpty() ? "" : " ")
-						+ Integer.toString(currentBlockLength);
-			}
-			colStrings.add(fileLine);
+		Blocks[] cols = scanner.getCols();
+		Blocks[] rows = scanner.getRows();
+		List<String> fileFormat = new ArrayList<String>(cols.length
+				+ rows.length + 2);
+		fileFormat.add("col " + cols.length);
+		for (Blocks col : cols) {
+			fileFormat.add(col.toString());
+		}
+		fileFormat.add("row " + rows.length);
+		for (Blocks row : rows) {
+			fileFormat.add(row.toString());
 		}
-
-		return colStrings;
-	}
-
-	/**
-	 * This method takes the raw nonogram information and converts it to the
-	 * format used for the nonogram solver.
-	 * 
-	 * @param nonoStrings
-	 *            a list of rows with 'x'es for marked cells and '-'s for empty
-	 *            cells
-	 * @return the information suitable for use by the nonogram solver
-	 */
-	private static List<String> convertToFileFormat(List<String> nonoStrings) {
-
-		List<String> fileFormat = new ArrayList<String>();
-
-		List<String> colLines = extractColStrings(nonoStrings);
-		fileFormat.add("col " + Integer.toString(colLines.size()));
-		fileFormat.addAll(colLines);
-
-		List<String> rowLines = extractRowStrings(nonoStrings);
-		fileFormat.add("row " + Integer.toString(rowLines.size()));
-		fileFormat.addAll(rowLines);
-
 		return fileFormat;
 	}
 
 	/**
-	 * This method takes the number of the nonogram, downloads and parses the
-	 * belonging HTML code and converts it to the format suitable for use by the
-	 * nonogram solver.
+	 * Writes the lines of a nonogram file.
 	 * 
-	 * @param number
-	 *            the number of the nonogram
-	 * @return a list of lines representing a file for use by the nonogram
-	 *         solver
+	 * @param outFile
+	 *            the file
+	 * @param fileLines
+	 *            the lines
 	 * @throws IOException
 	 */
-	public static List<String> grab(int number) throws IOException {
-
-		URL siteUrl = getSiteUrl(number);
-		List<String> nonoStrings = extractNonoStrings(siteUrl);
-		if (nonoStrings.size() == 0) {
-			return null;
-		}
-		for (String nonoString : nonoStrings) {
-			System.out.println(nonoString);
+	static void write(File outFile, List<String> fileLines) throws IOException {
+		Writer writer = new BufferedWriter(new FileWriter(outFile));
+		try {
+			for (String line : fileLines) {
+				writer.write(line);
+				writer.write("\n");
+			}
+		} finally {
+			writer.close();
 		}
-
-		return convertToFileFormat(nonoStrings);
 	}
 
+	/**
+	 * Downloads all nonograms to the folder "nonograms". An alternative base
+	 * URL, e.g. of a local server serving saved pages, can be given as first
+	 * argument; %number% is replaced with the number of the nonogram.
+	 */
 	public static void main(String[] args) throws Exception {
 
+		String baseUrlString = args.length >= 1 ? args[0] : BASE_URL_STRING;
 		File outFolder = new File("nonograms");
+		outFolder.mkdirs();
 
-		for (int i = 1; i <= 1100; i++) {
-			File outFile = new File(outFolder, "nonogram."
-					+ Integer.toString(i));
-			List<String> fileLines = grab(i);
-			if (fileLines == null) {
-				continue;
-			}
-			Writer writer = new BufferedWriter(new FileWriter(outFile));
-			for (String line : fileLines) {
-				writer.write(line);
-				writer.write("\n");
-			}
-			writer.flush();
-			writer.close();
-			Thread.sleep(WAITING_TIME);
-		}
+		JankoFetcher fetcher = new JankoFetcher(baseUrlString, outFolder);
+		JankoFetcher.Summary summary = fetcher.fetch(1, LAST_NUMBER);
+		System.err.println(summary);
 
 	}
 
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.janko;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import com.github.musikk.nonosolver.Blocks;
+
+/**
+ * Extracts a nonogram from the HTML code of a janko.at page in a single pass
+ * over the bytes of the page. The solution of the nonogram is contained in
+ * parameters of the form <code>&lt;param name="s1" value="x - x x"&gt;</code>,
+ * one for every row, with 'x'es for marked cells and '-'s for empty cells.
+ * While the page is scanned the lengths of the blocks of the rows and columns
+ * are counted right away; neither the page nor the rows are kept as strings.
+ * <p>
+ * Like the line based extraction before, scanning stops at the end of the
+ * first line without such a parameter after the parameters started.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class NonoPageScanner {
+
+	private static final byte[] NAME_PREFIX = "param name=\"s".getBytes();
+
+	private static final byte[] VALUE_PREFIX = "\" value=\"".getBytes();
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Looking for the start of a parameter.
+	 */
+	private static final int STATE_NAME_PREFIX = 0;
+
+	/**
+	 * Reading the digits of the parameter name.
+	 */
+	private static final int STATE_NAME_DIGITS = 1;
+
+	/**
+	 * Reading the part between the name and the value.
+	 */
+	private static final int STATE_VALUE_PREFIX = 2;
+
+	/**
+	 * Reading the value.
+	 */
+	private static final int STATE_VALUE = 3;
+
+	private int state = STATE_NAME_PREFIX;
+
+	/**
+	 * The number of bytes of the current prefix matched so far.
+	 */
+	private int matched;
+
+	private boolean foundRows;
+
+	private boolean matchedOnLine;
+
+	private boolean done;
+
+	private int width = -1;
+
+	/**
+	 * The blocks of all rows, one array per row.
+	 */
+	private IntList[] rowBlocks = new IntList[16];
+
+	private int rowCount;
+
+	/**
+	 * The blocks of the current row.
+	 */
+	private IntList currentRow;
+
+	/**
+	 * The length of the current block in the current row.
+	 */
+	private int rowRun;
+
+	/**
+	 * The column of the next cell in the current row.
+	 */
+	private int col;
+
+	/**
+	 * The blocks of all columns.
+	 */
+	private IntList[] colBlocks;
+
+	/**
+	 * The length of the current block in every column.
+	 */
+	private int[] colRuns;
+
+	/**
+	 * Scans the given page.
+	 * 
+	 * @param in
+	 *            the page, it is read but not closed
+	 * @return the scanner holding the result
+	 * @throws IOException
+	 */
+	public static NonoPageScanner scan(InputStream in) throws IOException {
+		NonoPageScanner scanner = new NonoPageScanner();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while (!scanner.done && (read = in.read(buffer)) != -1) {
+			scanner.feed(buffer, 0, read);
+		}
+		scanner.finish();
+		return scanner;
+	}
+
+	/**
+	 * Feeds the next bytes of the page to the scanner.
+	 * 
+	 * @param bytes
+	 *            the bytes
+	 * @param offset
+	 *            the offset of the first byte
+	 * @param length
+	 *            the number of bytes
+	 */
+	public void feed(byte[] bytes, int offset, int length) {
+
+		int end = offset + length;
+		for (int i = offset; i < end && !done; i++) {
+			byte b = bytes[i];
+
+			switch (state) {
+			case STATE_NAME_PREFIX:
+				if (b == NAME_PREFIX[matched]) {
+					if (++matched == NAME_PREFIX.length) {
+						state = STATE_NAME_DIGITS;
+						matched = 0;
+					}
+				} else {
+					// the prefix doesn't contain its first byte again
+					matched = b == NAME_PREFIX[0] ? 1 : 0;
+				}
+				break;
+			case STATE_NAME_DIGITS:
+				if (b >= '0' && b <= '9') {
+					matched++;
+				} else if (matched > 0 && b == VALUE_PREFIX[0]) {
+					state = STATE_VALUE_PREFIX;
+					matched = 1;
+				} else {
+					state = STATE_NAME_PREFIX;
+					matched = b == NAME_PREFIX[0] ? 1 : 0;
+				}
+				break;
+			case STATE_VALUE_PREFIX:
+				if (b == VALUE_PREFIX[matched]) {
+					if (++matched == VALUE_PREFIX.length) {
+						state = STATE_VALUE;
+						startRow();
+					}
+				} else {
+					state = STATE_NAME_PREFIX;
+					matched = b == NAME_PREFIX[0] ? 1 : 0;
+				}
+				break;
+			case STATE_VALUE:
+				if (b == '"') {
+					endRow();
+					state = STATE_NAME_PREFIX;
+					matched = 0;
+				} else if (b == 'x') {
+					cell(true);
+				} else if (b != ' ') {
+					cell(false);
+				}
+				break;
+			default:
+				throw new IllegalStateException("unknown state " + state);
+			}
+
+			if (b == '\n') {
+				if (foundRows && !matchedOnLine) {
+					done = true;
+				}
+				matchedOnLine = false;
+			}
+		}
+
+	}
+
+	private void startRow() {
+		currentRow = new IntList();
+		rowRun = 0;
+		col = 0;
+	}
+
+	private void cell(boolean marked) {
+
+		if (colRuns == null) {
+			// the width isn't known before the end of the first row
+			colRuns = new int[16];
+			colBlocks = new IntList[16];
+		}
+		if (col == colRuns.length) {
+			colRuns = Arrays.copyOf(colRuns, col * 2);
+			colBlocks = Arrays.copyOf(colBlocks, col * 2);
+		}
+		if (colBlocks[col] == null) {
+			colBlocks[col] = new IntList();
+		}
+
+		if (marked) {
+			rowRun++;
+			colRuns[col]++;
+		} else {
+			if (rowRun > 0) {
+				currentRow.add(rowRun);
+				rowRun = 0;
+			}
+			if (colRuns[col] > 0) {
+				colBlocks[col].add(colRuns[col]);
+				colRuns[col] = 0;
+			}
+		}
+		col++;
+
+	}
+
+	private void endRow() {
+		if (rowRun > 0) {
+			currentRow.add(rowRun);
+		}
+		if (width < 0) {
+			width = col;
+		} else if (col != width) {
+			throw new IllegalArgumentException("row " + (rowCount + 1)
+					+ " has " + col + " cells instead of " + width);
+		}
+		if (rowCount == rowBlocks.length) {
+			rowBlocks = Arrays.copyOf(rowBlocks, rowCount * 2);
+		}
+		rowBlocks[rowCount++] = currentRow;
+		foundRows = true;
+		matchedOnLine = true;
+	}
+
+	private void finish() {
+		for (int i = 0; i < Math.max(width, 0); i++) {
+			if (colRuns[i] > 0) {
+				colBlocks[i].add(colRuns[i]);
+				colRuns[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the page contained a nonogram.
+	 * 
+	 * @return true if there was at least one row
+	 */
+	public boolean hasNonogram() {
+		return rowCount > 0;
+	}
+
+	/**
+	 * Returns the blocks of all columns.
+	 * 
+	 * @return the blocks
+	 */
+	public Blocks[] getCols() {
+		Blocks[] cols = new Blocks[Math.max(width, 0)];
+		for (int i = 0; i < cols.length; i++) {
+			cols[i] = colBlocks[i].toBlocks();
+		}
+		return cols;
+	}
+
+	/**
+	 * Returns the blocks of all rows.
+	 * 
+	 * @return the blocks
+	 */
+	public Blocks[] getRows() {
+		Blocks[] rows = new Blocks[rowCount];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = rowBlocks[i].toBlocks();
+		}
+		return rows;
+	}
+
+	/**
+	 * A growable list of ints.
+	 */
+	private static class IntList {
+
+		private int[] values = new int[4];
+
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		/**
+		 * Creates the Blocks, a line without blocks gets a single block of
+		 * length zero like in the nonogram files.
+		 */
+		Blocks toBlocks() {
+			if (size == 0) {
+				return new Blocks(new int[] { 0 });
+			}
+			return new Blocks(Arrays.copyOf(values, size));
+		}
+
+	}
+
+}
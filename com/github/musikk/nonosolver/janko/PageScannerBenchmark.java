@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.janko;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Measures the throughput of {@link NonoPageScanner} on saved janko.at pages.
+ * The pages are given as arguments and read into memory first, so only the
+ * scanning is measured.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class PageScannerBenchmark {
+
+	private static final int WARM_UP_ROUNDS = 200;
+
+	private static final int ROUNDS = 2000;
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.err.println("usage: PageScannerBenchmark [page file]+");
+			return;
+		}
+
+		byte[][] pages = new byte[args.length][];
+		long totalBytes = 0;
+		for (int i = 0; i < args.length; i++) {
+			pages[i] = readFile(new File(args[i]));
+			totalBytes += pages[i].length;
+		}
+
+		int nonograms = 0;
+		for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+			nonograms += scanAll(pages);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			nonograms += scanAll(pages);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.err.println(pages.length + " pages, " + totalBytes
+				+ " bytes, " + nonograms / (WARM_UP_ROUNDS + ROUNDS)
+				+ " nonograms");
+		System.err.println(String.format("%.0f pages/s, %.1f MB/s",
+				ROUNDS * pages.length / seconds, ROUNDS * totalBytes / seconds
+						/ 1e6));
+
+	}
+
+	private static int scanAll(byte[][] pages) throws IOException {
+		int nonograms = 0;
+		for (byte[] page : pages) {
+			NonoPageScanner scanner = NonoPageScanner
+					.scan(new ByteArrayInputStream(page));
+			if (scanner.hasNonogram()) {
+				nonograms++;
+			}
+		}
+		return nonograms;
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset < bytes.length) {
+				int read = in.read(bytes, offset, bytes.length - offset);
+				if (read < 0) {
+					break;
+				}
+				offset += read;
+			}
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.janko;
+
+/**
+ * A token bucket rate limiter. Tokens are added at a fixed rate up to the
+ * capacity of the bucket, every permit takes one token. This allows short
+ * bursts up to the capacity while keeping the average rate.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class TokenBucket {
+
+	private final double capacity;
+
+	/**
+	 * The number of tokens added per nanosecond.
+	 */
+	private final double tokensPerNano;
+
+	private double tokens;
+
+	private long lastRefill;
+
+	/**
+	 * Creates a new full bucket.
+	 * 
+	 * @param capacity
+	 *            the maximum number of tokens
+	 * @param tokensPerSecond
+	 *            the number of tokens added per second
+	 */
+	public TokenBucket(int capacity, double tokensPerSecond) {
+		if (capacity < 1 || tokensPerSecond <= 0) {
+			throw new IllegalArgumentException("capacity " + capacity
+					+ " and rate " + tokensPerSecond + " must be positive");
+		}
+		this.capacity = capacity;
+		this.tokensPerNano = tokensPerSecond / 1e9;
+		this.tokens = capacity;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token, waits until one is available if necessary. Waiting
+	 * threads are served one after the other.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		refill();
+		while (tokens < 1) {
+			long waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+			Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+			refill();
+		}
+		tokens--;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+		lastRefill = now;
+	}
+
+}
@@ -0,0 +1,1061 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.sat;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+import com.github.musikk.nonosolver.util.BufferPool;
+
+/**
+ * A conflict driven clause learning SAT solver in plain Java, modelled after
+ * minisat. It uses two watched literals per clause, first UIP learning with
+ * clause minimization, VSIDS branching with phase saving, Luby restarts and
+ * periodic removal of learned clauses with a high literal block distance.
+ * <p>
+ * All clauses are stored in a single buffer of ints. A clause is referenced by
+ * its offset in that buffer and consists of a header of two ints, the size and
+ * the flags, followed by the literals. Internally the literal of variable v is
+ * 2v if positive and 2v + 1 if negative. The clauses and the lists of the
+ * clauses watching every literal are kept in direct buffers of the shared
+ * {@link BufferPool}, outside the heap; {@link #close()} returns them.
+ * <p>
+ * The solver checks regularly whether the current thread has been interrupted
+ * and throws a CancellationException if so.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class CdclSolver implements SatSolver {
+
+	private static final byte TRUE = 1;
+
+	private static final byte FALSE = -1;
+
+	private static final byte UNDEFINED = 0;
+
+	private static final int NO_REASON = -1;
+
+	private static final int HEADER_SIZE = 2;
+
+	private static final int FLAG_LEARNT = 1;
+
+	private static final int FLAG_DELETED = 2;
+
+	/**
+	 * The flags of a clause hold its literal block distance above the flag
+	 * bits.
+	 */
+	private static final int LBD_SHIFT = 2;
+
+	/**
+	 * Exactly one constraints of up to this size get pairwise at most one
+	 * clauses, larger ones a sequential counter.
+	 */
+	private static final int PAIRWISE_LIMIT = 6;
+
+	/**
+	 * The number of conflicts of the first restart interval. The following
+	 * intervals are multiples of this according to the Luby sequence.
+	 */
+	private static final int RESTART_BASE = 100;
+
+	private static final double VAR_DECAY = 0.95;
+
+	/**
+	 * Learned clauses with at most this literal block distance are never
+	 * removed.
+	 */
+	private static final int GLUE_LBD = 2;
+
+	/**
+	 * The minimum number of ints the learned clauses may occupy in the arena
+	 * before some of them are removed.
+	 */
+	private static final int MIN_LEARNT_SIZE = 1 << 20;
+
+	/**
+	 * The number of iterations of the search loop between two checks for an
+	 * interrupt.
+	 */
+	private static final int INTERRUPT_CHECK_INTERVAL = 1024;
+
+	private final BufferPool pool = BufferPool.getShared();
+
+	/**
+	 * The storage of all clauses, null until the first clause is added.
+	 */
+	private IntBuffer arena;
+
+	/**
+	 * The used part of the arena.
+	 */
+	private int arenaSize;
+
+	/**
+	 * The number of ints in the arena occupied by deleted clauses.
+	 */
+	private int wasted;
+
+	/**
+	 * The lists of the clauses watching a literal, all in one buffer. The
+	 * list of literal l starts at watchStarts[l] and has room for
+	 * watchCapacities[l] clauses of which watchCounts[l] are used. A list that
+	 * is full is moved to the end of the buffer, literals that never get
+	 * watched take no room at all.
+	 */
+	private IntBuffer watches;
+
+	/**
+	 * The used part of the watches.
+	 */
+	private int watchesSize;
+
+	/**
+	 * The number of ints of the watches left behind by moved lists.
+	 */
+	private int watchesWasted;
+
+	private int[] watchStarts = new int[0];
+
+	private int[] watchCapacities = new int[0];
+
+	private int[] watchCounts = new int[0];
+
+	/**
+	 * The value of every literal, indexed by the literal.
+	 */
+	private byte[] values = new byte[0];
+
+	/**
+	 * The decision level of every assigned variable.
+	 */
+	private int[] levels = new int[0];
+
+	/**
+	 * The clause that implied every assigned variable or NO_REASON.
+	 */
+	private int[] reasons = new int[0];
+
+	/**
+	 * The saved polarity of every variable, true if it was last positive.
+	 */
+	private boolean[] phases = new boolean[0];
+
+	private double[] activities = new double[0];
+
+	private double varIncrement = 1;
+
+	private boolean[] seen = new boolean[0];
+
+	/**
+	 * The assigned literals in the order of their assignment.
+	 */
+	private int[] trail = new int[0];
+
+	private int trailSize;
+
+	/**
+	 * The index of the next literal on the trail to propagate.
+	 */
+	private int propagationHead;
+
+	/**
+	 * The trail size at the start of every decision level.
+	 */
+	private int[] trailLimits = new int[16];
+
+	private int decisionLevel;
+
+	/**
+	 * A binary max heap of the unassigned variables ordered by activity.
+	 */
+	private int[] heap = new int[0];
+
+	private int heapSize;
+
+	/**
+	 * The position of every variable in the heap, -1 if it isn't in it.
+	 */
+	private int[] heapIndices = new int[0];
+
+	/**
+	 * The offsets of the learned clauses.
+	 */
+	private int[] learnts = new int[64];
+
+	private int learntCount;
+
+	private double maxLearnts;
+
+	/**
+	 * The number of ints of the arena occupied by learned clauses that aren't
+	 * deleted. Learned clauses of large CNFs are long, so they are limited by
+	 * their size as well as by their number.
+	 */
+	private int learntSize;
+
+	private double maxLearntSize;
+
+	/**
+	 * A scratch buffer for learned clauses.
+	 */
+	private int[] learntBuffer = new int[64];
+
+	/**
+	 * Marks the decision levels seen while computing literal block distances.
+	 */
+	private int[] levelStamps = new int[16];
+
+	private int stamp;
+
+	private int variableCount;
+
+	private int clauseCount;
+
+	/**
+	 * False once the clauses are known to be unsatisfiable regardless of any
+	 * assumptions.
+	 */
+	private boolean ok = true;
+
+	private boolean[] model;
+
+	private boolean closed;
+
+	private long conflicts;
+
+	private long decisions;
+
+	private long propagations;
+
+	@Override
+	public int newVariable() {
+		int v = ++variableCount;
+		ensureVariableCapacity(v + 1);
+		heapIndices[v] = -1;
+		insertIntoHeap(v);
+		return v;
+	}
+
+	private void ensureVariableCapacity(int capacity) {
+		if (levels.length >= capacity) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, levels.length * 2);
+		levels = Arrays.copyOf(levels, newCapacity);
+		reasons = Arrays.copyOf(reasons, newCapacity);
+		phases = Arrays.copyOf(phases, newCapacity);
+		activities = Arrays.copyOf(activities, newCapacity);
+		seen = Arrays.copyOf(seen, newCapacity);
+		trail = Arrays.copyOf(trail, newCapacity);
+		heap = Arrays.copyOf(heap, newCapacity);
+		heapIndices = Arrays.copyOf(heapIndices, newCapacity);
+		values = Arrays.copyOf(values, 2 * newCapacity);
+		watchStarts = Arrays.copyOf(watchStarts, 2 * newCapacity);
+		watchCapacities = Arrays.copyOf(watchCapacities, 2 * newCapacity);
+		watchCounts = Arrays.copyOf(watchCounts, 2 * newCapacity);
+	}
+
+	private static int toLiteral(int dimacsLiteral) {
+		return dimacsLiteral > 0 ? dimacsLiteral << 1
+				: (-dimacsLiteral << 1) | 1;
+	}
+
+	@Override
+	public void addClause(int... literals) {
+
+		checkOpen();
+		cancelUntil(0);
+		clauseCount++;
+		if (!ok) {
+			return;
+		}
+
+		int[] lits = new int[literals.length];
+		for (int i = 0; i < lits.length; i++) {
+			if (literals[i] == 0 || Math.abs(literals[i]) > variableCount) {
+				throw new IllegalArgumentException("unknown variable "
+						+ literals[i]);
+			}
+			lits[i] = toLiteral(literals[i]);
+		}
+		Arrays.sort(lits);
+
+		// remove duplicates and literals false at level 0, drop satisfied and
+		// tautological clauses
+		int size = 0;
+		int previous = -1;
+		for (int l : lits) {
+			if (values[l] == TRUE || l == (previous ^ 1)) {
+				return;
+			}
+			if (l != previous && values[l] != FALSE) {
+				lits[size++] = l;
+			}
+			previous = l;
+		}
+
+		if (size == 0) {
+			ok = false;
+		} else if (size == 1) {
+			enqueue(lits[0], NO_REASON);
+			ok = propagate() == NO_REASON;
+		} else {
+			attachClause(allocateClause(lits, size, false, 0));
+		}
+
+	}
+
+	@Override
+	public void addExactlyOne(int[] variables) {
+
+		addClause(variables);
+		int n = variables.length;
+		if (n <= PAIRWISE_LIMIT) {
+			for (int i = 0; i < n; i++) {
+				for (int j = i + 1; j < n; j++) {
+					addClause(-variables[i], -variables[j]);
+				}
+			}
+			return;
+		}
+
+		// sequential counter: s[i] is true if one of the first i + 1
+		// variables is true
+		int[] s = new int[n - 1];
+		for (int i = 0; i < n - 1; i++) {
+			s[i] = newVariable();
+		}
+		addClause(-variables[0], s[0]);
+		for (int i = 1; i < n - 1; i++) {
+			addClause(-variables[i], s[i]);
+			addClause(-s[i - 1], s[i]);
+			addClause(-variables[i], -s[i - 1]);
+		}
+		addClause(-variables[n - 1], -s[n - 2]);
+
+	}
+
+	@Override
+	public void addEquivalence(int variable, int[] disjuncts) {
+		int[] clause = new int[disjuncts.length + 1];
+		clause[0] = -variable;
+		System.arraycopy(disjuncts, 0, clause, 1, disjuncts.length);
+		addClause(clause);
+		for (int disjunct : disjuncts) {
+			addClause(-disjunct, variable);
+		}
+	}
+
+	private int allocateClause(int[] lits, int size, boolean learnt, int lbd) {
+		int needed = arenaSize + HEADER_SIZE + size;
+		if (arena == null) {
+			arena = pool.acquire(needed);
+		} else if (needed > arena.capacity()) {
+			// the size classes of the pool grow by half, which keeps the peak
+			// lower than doubling while the old arena is copied
+			arena = pool.grow(arena, arenaSize, needed);
+		}
+		int c = arenaSize;
+		arena.put(c, size);
+		arena.put(c + 1, (learnt ? FLAG_LEARNT : 0) | (lbd << LBD_SHIFT));
+		arena.position(c + HEADER_SIZE);
+		arena.put(lits, 0, size);
+		arenaSize = needed;
+		if (learnt) {
+			learntSize += HEADER_SIZE + size;
+			if (learntCount == learnts.length) {
+				learnts = Arrays.copyOf(learnts, learntCount * 2);
+			}
+			learnts[learntCount++] = c;
+		}
+		return c;
+	}
+
+	private void attachClause(int c) {
+		addWatch(arena.get(c + HEADER_SIZE), c);
+		addWatch(arena.get(c + HEADER_SIZE + 1), c);
+	}
+
+	private void addWatch(int literal, int c) {
+		int count = watchCounts[literal];
+		if (count == watchCapacities[literal]) {
+			moveWatches(literal, Math.max(4, count * 2));
+		}
+		watches.put(watchStarts[literal] + count, c);
+		watchCounts[literal] = count + 1;
+	}
+
+	/**
+	 * Moves the list of the clauses watching a literal to the end of the
+	 * watches, with room for the given number of clauses. The lists of the
+	 * other literals keep their offsets, so this may happen while one of
+	 * them is traversed.
+	 */
+	private void moveWatches(int literal, int capacity) {
+		int needed = watchesSize + capacity;
+		if (watches == null) {
+			watches = pool.acquire(needed);
+		} else if (needed > watches.capacity()) {
+			watches = pool.grow(watches, watchesSize, needed);
+		}
+		int start = watchStarts[literal];
+		int count = watchCounts[literal];
+		for (int i = 0; i < count; i++) {
+			watches.put(watchesSize + i, watches.get(start + i));
+		}
+		watchesWasted += watchCapacities[literal];
+		watchStarts[literal] = watchesSize;
+		watchCapacities[literal] = capacity;
+		watchesSize = needed;
+	}
+
+	/**
+	 * Lays out the lists of the clauses watching every literal anew, without
+	 * the room left behind by moved lists and without deleted clauses.
+	 */
+	private void rebuildWatches() {
+
+		Arrays.fill(watchCounts, 0);
+		for (int c = 0; c < arenaSize; c += HEADER_SIZE + arena.get(c)) {
+			if ((arena.get(c + 1) & FLAG_DELETED) == 0) {
+				watchCounts[arena.get(c + HEADER_SIZE)]++;
+				watchCounts[arena.get(c + HEADER_SIZE + 1)]++;
+			}
+		}
+
+		int size = 0;
+		for (int l = 0; l < watchCounts.length; l++) {
+			int count = watchCounts[l];
+			watchStarts[l] = size;
+			watchCapacities[l] = count == 0 ? 0 : count + count / 2 + 2;
+			size += watchCapacities[l];
+		}
+		IntBuffer old = watches;
+		watches = pool.acquire(Math.max(size, 1));
+		pool.release(old);
+		watchesSize = size;
+		watchesWasted = 0;
+
+		Arrays.fill(watchCounts, 0);
+		for (int c = 0; c < arenaSize; c += HEADER_SIZE + arena.get(c)) {
+			if ((arena.get(c + 1) & FLAG_DELETED) == 0) {
+				attachClause(c);
+			}
+		}
+
+	}
+
+	private void enqueue(int literal, int reason) {
+		values[literal] = TRUE;
+		values[literal ^ 1] = FALSE;
+		int v = literal >> 1;
+		levels[v] = decisionLevel;
+		reasons[v] = reason;
+		trail[trailSize++] = literal;
+	}
+
+	/**
+	 * Propagates all enqueued literals.
+	 * 
+	 * @return the conflicting clause or NO_REASON
+	 */
+	private int propagate() {
+
+		IntBuffer arena = this.arena;
+		byte[] values = this.values;
+
+		while (propagationHead < trailSize) {
+			int falseLiteral = trail[propagationHead++] ^ 1;
+			IntBuffer ws = watches;
+			int start = watchStarts[falseLiteral];
+			int count = watchCounts[falseLiteral];
+			int i = 0;
+			int j = 0;
+			propagations++;
+
+			while (i < count) {
+				int c = ws.get(start + i++);
+				if ((arena.get(c + 1) & FLAG_DELETED) != 0) {
+					continue;
+				}
+				int lits = c + HEADER_SIZE;
+				// make sure the false literal is the second one
+				if (arena.get(lits) == falseLiteral) {
+					arena.put(lits, arena.get(lits + 1));
+					arena.put(lits + 1, falseLiteral);
+				}
+				int first = arena.get(lits);
+				if (values[first] == TRUE) {
+					ws.put(start + j++, c);
+					continue;
+				}
+
+				int size = arena.get(c);
+				boolean moved = false;
+				for (int k = 2; k < size; k++) {
+					int l = arena.get(lits + k);
+					if (values[l] != FALSE) {
+						arena.put(lits + 1, l);
+						arena.put(lits + k, falseLiteral);
+						addWatch(l, c);
+						// the list of l can't be this one, but the watches
+						// may have grown
+						ws = watches;
+						moved = true;
+						break;
+					}
+				}
+				if (moved) {
+					continue;
+				}
+
+				ws.put(start + j++, c);
+				if (values[first] == FALSE) {
+					while (i < count) {
+						ws.put(start + j++, ws.get(start + i++));
+					}
+					watchCounts[falseLiteral] = j;
+					propagationHead = trailSize;
+					return c;
+				}
+				enqueue(first, c);
+			}
+			watchCounts[falseLiteral] = j;
+		}
+
+		return NO_REASON;
+
+	}
+
+	@Override
+	public boolean solve() {
+		return solve(new int[0]);
+	}
+
+	@Override
+	public boolean supportsAssumptions() {
+		return true;
+	}
+
+	@Override
+	public boolean solve(int[] assumptions) {
+
+		checkOpen();
+		model = null;
+		cancelUntil(0);
+		if (!ok) {
+			return false;
+		}
+		if (propagate() != NO_REASON) {
+			ok = false;
+			return false;
+		}
+
+		int[] assumed = new int[assumptions.length];
+		for (int i = 0; i < assumed.length; i++) {
+			assumed[i] = toLiteral(assumptions[i]);
+		}
+
+		if (maxLearnts == 0) {
+			maxLearnts = Math.max(clauseCount / 3.0, 1000);
+			maxLearntSize = Math.max(arenaSize - wasted - learntSize,
+					MIN_LEARNT_SIZE);
+		}
+		int restarts = 0;
+		long restartLimit = RESTART_BASE * luby(restarts);
+		long conflictsSinceRestart = 0;
+		int iterations = 0;
+
+		try {
+			while (true) {
+
+				if (++iterations == INTERRUPT_CHECK_INTERVAL) {
+					iterations = 0;
+					if (Thread.currentThread().isInterrupted()) {
+						throw new CancellationException("solving interrupted");
+					}
+				}
+
+				int conflict = propagate();
+				if (conflict != NO_REASON) {
+					conflicts++;
+					conflictsSinceRestart++;
+					if (decisionLevel == 0) {
+						ok = false;
+						return false;
+					}
+					learn(conflict);
+					varIncrement /= VAR_DECAY;
+					continue;
+				}
+
+				if (conflictsSinceRestart >= restartLimit) {
+					cancelUntil(0);
+					restarts++;
+					restartLimit = RESTART_BASE * luby(restarts);
+					conflictsSinceRestart = 0;
+					continue;
+				}
+
+				if (learntCount - trailSize >= maxLearnts
+						|| learntSize >= maxLearntSize) {
+					reduceLearnts();
+					maxLearnts *= 1.1;
+					maxLearntSize *= 1.1;
+				}
+
+				int next = -1;
+				while (decisionLevel < assumed.length) {
+					int a = assumed[decisionLevel];
+					if (values[a] == TRUE) {
+						newDecisionLevel();
+					} else if (values[a] == FALSE) {
+						return false;
+					} else {
+						next = a;
+						break;
+					}
+				}
+
+				if (next == -1) {
+					next = pickBranchLiteral();
+					if (next == -1) {
+						model = new boolean[variableCount + 1];
+						for (int v = 1; v <= variableCount; v++) {
+							model[v] = values[v << 1] == TRUE;
+						}
+						return true;
+					}
+					decisions++;
+				}
+
+				newDecisionLevel();
+				enqueue(next, NO_REASON);
+
+			}
+		} finally {
+			cancelUntil(0);
+		}
+
+	}
+
+	/**
+	 * Returns the i-th element (zero based) of the Luby sequence.
+	 */
+	private static long luby(int i) {
+		int size = 1;
+		int seq = 0;
+		while (size < i + 1) {
+			seq++;
+			size = 2 * size + 1;
+		}
+		while (size - 1 != i) {
+			size = (size - 1) >> 1;
+			seq--;
+			i = i % size;
+		}
+		return 1L << seq;
+	}
+
+	private void newDecisionLevel() {
+		if (decisionLevel == trailLimits.length) {
+			trailLimits = Arrays.copyOf(trailLimits, decisionLevel * 2);
+		}
+		trailLimits[decisionLevel++] = trailSize;
+	}
+
+	private void cancelUntil(int level) {
+		if (decisionLevel <= level) {
+			return;
+		}
+		int limit = trailLimits[level];
+		for (int i = trailSize - 1; i >= limit; i--) {
+			int l = trail[i];
+			int v = l >> 1;
+			values[l] = UNDEFINED;
+			values[l ^ 1] = UNDEFINED;
+			reasons[v] = NO_REASON;
+			phases[v] = (l & 1) == 0;
+			if (heapIndices[v] < 0) {
+				insertIntoHeap(v);
+			}
+		}
+		trailSize = limit;
+		propagationHead = limit;
+		decisionLevel = level;
+	}
+
+	private int pickBranchLiteral() {
+		while (heapSize > 0) {
+			int v = removeMaxFromHeap();
+			if (values[v << 1] == UNDEFINED) {
+				return phases[v] ? v << 1 : (v << 1) | 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Analyzes the conflict, learns the first UIP clause, backjumps and
+	 * asserts the learned clause.
+	 */
+	private void learn(int conflict) {
+
+		int pathCount = 0;
+		int p = -1;
+		int size = 1;
+		int index = trailSize - 1;
+		int c = conflict;
+
+		do {
+			int clauseSize = arena.get(c);
+			for (int k = p == -1 ? 0 : 1; k < clauseSize; k++) {
+				int q = arena.get(c + HEADER_SIZE + k);
+				int v = q >> 1;
+				if (!seen[v] && levels[v] > 0) {
+					bumpActivity(v);
+					seen[v] = true;
+					if (levels[v] >= decisionLevel) {
+						pathCount++;
+					} else {
+						if (size == learntBuffer.length) {
+							learntBuffer = Arrays.copyOf(learntBuffer,
+									size * 2);
+						}
+						learntBuffer[size++] = q;
+					}
+				}
+			}
+			while (!seen[trail[index] >> 1]) {
+				index--;
+			}
+			p = trail[index--];
+			c = reasons[p >> 1];
+			seen[p >> 1] = false;
+			pathCount--;
+		} while (pathCount > 0);
+		learntBuffer[0] = p ^ 1;
+
+		// drop literals implied by the other literals of the clause
+		int[] learnt = Arrays.copyOf(learntBuffer, size);
+		int newSize = 1;
+		for (int i = 1; i < size; i++) {
+			int v = learnt[i] >> 1;
+			int reason = reasons[v];
+			if (reason == NO_REASON || !isRedundant(reason)) {
+				learnt[newSize++] = learnt[i];
+			}
+		}
+		for (int i = 1; i < size; i++) {
+			seen[learntBuffer[i] >> 1] = false;
+		}
+		size = newSize;
+
+		// the literal with the highest level after the asserting one
+		int backtrackLevel = 0;
+		if (size > 1) {
+			int max = 1;
+			for (int i = 2; i < size; i++) {
+				if (levels[learnt[i] >> 1] > levels[learnt[max] >> 1]) {
+					max = i;
+				}
+			}
+			int tmp = learnt[1];
+			learnt[1] = learnt[max];
+			learnt[max] = tmp;
+			backtrackLevel = levels[learnt[1] >> 1];
+		}
+
+		int lbd = computeLbd(learnt, size);
+		cancelUntil(backtrackLevel);
+		if (size == 1) {
+			enqueue(learnt[0], NO_REASON);
+		} else {
+			int ref = allocateClause(learnt, size, true, lbd);
+			attachClause(ref);
+			enqueue(learnt[0], ref);
+		}
+
+	}
+
+	/**
+	 * Checks whether all literals of the given reason clause except the
+	 * implied one are in the learned clause or assigned at level 0.
+	 */
+	private boolean isRedundant(int reason) {
+		int size = arena.get(reason);
+		for (int k = 1; k < size; k++) {
+			int v = arena.get(reason + HEADER_SIZE + k) >> 1;
+			if (!seen[v] && levels[v] > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int computeLbd(int[] lits, int size) {
+		if (levelStamps.length <= decisionLevel) {
+			levelStamps = Arrays.copyOf(levelStamps, decisionLevel * 2 + 1);
+		}
+		stamp++;
+		int lbd = 0;
+		for (int i = 0; i < size; i++) {
+			int level = levels[lits[i] >> 1];
+			if (levelStamps[level] != stamp) {
+				levelStamps[level] = stamp;
+				lbd++;
+			}
+		}
+		return lbd;
+	}
+
+	private void bumpActivity(int v) {
+		activities[v] += varIncrement;
+		if (activities[v] > 1e100) {
+			for (int i = 1; i <= variableCount; i++) {
+				activities[i] *= 1e-100;
+			}
+			varIncrement *= 1e-100;
+		}
+		if (heapIndices[v] >= 0) {
+			siftUp(heapIndices[v]);
+		}
+	}
+
+	/**
+	 * Removes half of the learned clauses, the ones with the highest literal
+	 * block distance first. Clauses that are the reason of an assignment and
+	 * glue clauses are kept.
+	 */
+	private void reduceLearnts() {
+
+		long[] candidates = new long[learntCount];
+		int count = 0;
+		for (int i = 0; i < learntCount; i++) {
+			int c = learnts[i];
+			int lbd = arena.get(c + 1) >>> LBD_SHIFT;
+			if (lbd > GLUE_LBD && !isLocked(c)) {
+				candidates[count++] = ((long) -lbd << 32) | c;
+			}
+		}
+		Arrays.sort(candidates, 0, count);
+
+		int toRemove = Math.min(count, learntCount / 2);
+		for (int i = 0; i < toRemove; i++) {
+			int c = (int) candidates[i];
+			arena.put(c + 1, arena.get(c + 1) | FLAG_DELETED);
+			wasted += HEADER_SIZE + arena.get(c);
+			learntSize -= HEADER_SIZE + arena.get(c);
+		}
+
+		int kept = 0;
+		for (int i = 0; i < learntCount; i++) {
+			if ((arena.get(learnts[i] + 1) & FLAG_DELETED) == 0) {
+				learnts[kept++] = learnts[i];
+			}
+		}
+		learntCount = kept;
+
+		if (wasted > arenaSize / 2) {
+			compact();
+		} else if (watchesWasted > watchesSize / 2) {
+			rebuildWatches();
+		}
+
+	}
+
+	private boolean isLocked(int c) {
+		int first = arena.get(c + HEADER_SIZE);
+		return values[first] == TRUE && reasons[first >> 1] == c;
+	}
+
+	/**
+	 * Copies all clauses that aren't deleted to a new arena and rebuilds the
+	 * references to them.
+	 */
+	private void compact() {
+
+		IntBuffer newArena = pool.acquire(Math.max(1,
+				arenaSize - wasted + (arenaSize - wasted) / 2));
+		int newSize = 0;
+		learntCount = 0;
+		for (int c = 0; c < arenaSize; c += HEADER_SIZE + arena.get(c)) {
+			int length = HEADER_SIZE + arena.get(c);
+			if ((arena.get(c + 1) & FLAG_DELETED) != 0) {
+				continue;
+			}
+			for (int i = 0; i < length; i++) {
+				newArena.put(newSize + i, arena.get(c + i));
+			}
+			if ((arena.get(c + 1) & FLAG_LEARNT) != 0) {
+				learnts[learntCount++] = newSize;
+			}
+			// the first literal has been copied, use it as forwarding address
+			arena.put(c + HEADER_SIZE, newSize);
+			newSize += length;
+		}
+
+		for (int i = 0; i < trailSize; i++) {
+			int v = trail[i] >> 1;
+			if (reasons[v] != NO_REASON) {
+				reasons[v] = arena.get(reasons[v] + HEADER_SIZE);
+			}
+		}
+
+		pool.release(arena);
+		arena = newArena;
+		arenaSize = newSize;
+		wasted = 0;
+
+		rebuildWatches();
+
+	}
+
+	private void insertIntoHeap(int v) {
+		heapIndices[v] = heapSize;
+		heap[heapSize++] = v;
+		siftUp(heapSize - 1);
+	}
+
+	private int removeMaxFromHeap() {
+		int max = heap[0];
+		heapIndices[max] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapIndices[heap[0]] = 0;
+			siftDown(0);
+		}
+		return max;
+	}
+
+	private void siftUp(int i) {
+		int v = heap[i];
+		double activity = activities[v];
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (activities[heap[parent]] >= activity) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heapIndices[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = v;
+		heapIndices[v] = i;
+	}
+
+	private void siftDown(int i) {
+		int v = heap[i];
+		double activity = activities[v];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize
+					&& activities[heap[child + 1]] > activities[heap[child]]) {
+				child++;
+			}
+			if (activities[heap[child]] <= activity) {
+				break;
+			}
+			heap[i] = heap[child];
+			heapIndices[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = v;
+		heapIndices[v] = i;
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("solver is closed");
+		}
+	}
+
+	/**
+	 * Returns the clauses and watches to the pool. The model of the last
+	 * solve stays available.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		pool.release(arena);
+		pool.release(watches);
+		arena = null;
+		watches = null;
+		arenaSize = 0;
+		watchesSize = 0;
+	}
+
+	@Override
+	public boolean getValue(int variable) {
+		if (model == null) {
+			throw new IllegalStateException("no model available");
+		}
+		return model[variable];
+	}
+
+	@Override
+	public int getVariableCount() {
+		return variableCount;
+	}
+
+	@Override
+	public int getClauseCount() {
+		return clauseCount;
+	}
+
+	public long getConflicts() {
+		return conflicts;
+	}
+
+	public long getDecisions() {
+		return decisions;
+	}
+
+	public long getPropagations() {
+		return propagations;
+	}
+
+	@Override
+	public String toString() {
+		return "variables: " + variableCount + ", clauses: " + clauseCount
+				+ ", learnts: " + learntCount + ", conflicts: " + conflicts
+				+ ", decisions: " + decisions + ", propagations: "
+				+ propagations;
+	}
+
+}
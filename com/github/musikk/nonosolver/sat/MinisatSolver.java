@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.musikk.minisat4j.Clause;
+import com.github.musikk.minisat4j.Solver;
+import com.github.musikk.minisat4j.SolverResult;
+import com.github.musikk.minisat4j.Variable;
+
+/**
+ * A {@link SatSolver} backed by minisat via minisat4j. Due to the way
+ * minisat4j loads the native library this requires the process to be started
+ * from the minisat4j directory.
+ * <p>
+ * minisat4j creates clauses from the Variables it knows of only through its
+ * equivalence and "only one" constraints. Arbitrary clauses are built on top
+ * of these: a negative literal is replaced by a fresh variable that is the
+ * only one true of it and the negated variable, the clause by a fresh variable
+ * equivalent to the disjunction which in turn is the only one true of itself.
+ * minisat4j doesn't support assumptions.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class MinisatSolver implements SatSolver {
+
+	/**
+	 * The Solver, created by the first call to solve() since that loads the
+	 * native library. Nonograms decided by the line propagation never need
+	 * it.
+	 */
+	private Solver solver;
+
+	/**
+	 * The Variables, the variable n is at index n - 1.
+	 */
+	private final List<Variable> variables;
+
+	/**
+	 * The clauses not handed to the Solver yet.
+	 */
+	private final List<Clause> pendingClauses;
+
+	private int clauseCount;
+
+	private SolverResult solverResult;
+
+	/**
+	 * Creates a new instance of this class.
+	 */
+	public MinisatSolver() {
+		this.variables = new ArrayList<Variable>();
+		this.pendingClauses = new ArrayList<Clause>();
+	}
+
+	@Override
+	public int newVariable() {
+		variables.add(Variable.getVariable());
+		return variables.size();
+	}
+
+	private Variable getVariable(int variable) {
+		return variables.get(variable - 1);
+	}
+
+	private void addClauses(List<Clause> clauses) {
+		pendingClauses.addAll(clauses);
+		clauseCount += clauses.size();
+	}
+
+	@Override
+	public void addClause(int... literals) {
+
+		List<Variable> disjuncts = new ArrayList<Variable>(literals.length);
+		for (int literal : literals) {
+			if (literal > 0) {
+				disjuncts.add(getVariable(literal));
+			} else {
+				Variable negation = getVariable(newVariable());
+				addClauses(Arrays.asList(Clause.onlyOne(new Variable[] {
+						negation, getVariable(-literal) })));
+				disjuncts.add(negation);
+			}
+		}
+
+		Variable clause = getVariable(newVariable());
+		addClauses(Arrays.asList(Clause.equivalence(clause, disjuncts)));
+		addClauses(Arrays.asList(Clause.onlyOne(new Variable[] { clause })));
+
+	}
+
+	@Override
+	public void addExactlyOne(int[] variables) {
+		Variable[] vars = new Variable[variables.length];
+		for (int i = 0; i < vars.length; i++) {
+			vars[i] = getVariable(variables[i]);
+		}
+		addClauses(Arrays.asList(Clause.onlyOne(vars)));
+	}
+
+	@Override
+	public void addEquivalence(int variable, int[] disjuncts) {
+		List<Variable> vars = new ArrayList<Variable>(disjuncts.length);
+		for (int disjunct : disjuncts) {
+			vars.add(getVariable(disjunct));
+		}
+		addClauses(Arrays.asList(Clause.equivalence(getVariable(variable),
+				vars)));
+	}
+
+	@Override
+	public boolean solve() {
+		if (solver == null) {
+			solver = new Solver();
+		}
+		solver.addClauses(pendingClauses);
+		pendingClauses.clear();
+		solverResult = solver.solve();
+		return solverResult.isSatisfiable();
+	}
+
+	@Override
+	public boolean solve(int[] assumptions) {
+		if (assumptions.length > 0) {
+			throw new UnsupportedOperationException(
+					"minisat4j doesn't support assumptions");
+		}
+		return solve();
+	}
+
+	@Override
+	public boolean supportsAssumptions() {
+		return false;
+	}
+
+	@Override
+	public boolean getValue(int variable) {
+		return getVariable(variable).getResult();
+	}
+
+	@Override
+	public int getVariableCount() {
+		return variables.size();
+	}
+
+	@Override
+	public int getClauseCount() {
+		return clauseCount;
+	}
+
+	/**
+	 * Drops the clauses not handed to the Solver yet; minisat4j has no way to
+	 * free the native solver, that happens when it is collected.
+	 */
+	@Override
+	public void close() {
+		pendingClauses.clear();
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(solverResult);
+	}
+
+}
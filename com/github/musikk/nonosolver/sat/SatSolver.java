@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.sat;
+
+/**
+ * A SAT solver backend. Variables are numbered from 1 on. Literals are given
+ * as in the DIMACS format, i.e. a variable denotes the positive literal and
+ * the negated variable the negative one.
+ * <p>
+ * Constraints may be added after a call to {@link #solve()}; backends keep
+ * what they learned from earlier calls where they can.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public interface SatSolver {
+
+	/**
+	 * Creates a new variable.
+	 * 
+	 * @return the variable
+	 */
+	int newVariable();
+
+	/**
+	 * Adds a clause, i.e. at least one of the literals has to be true.
+	 * 
+	 * @param literals
+	 *            the literals of the clause
+	 */
+	void addClause(int... literals);
+
+	/**
+	 * Adds the constraint that exactly one of the given variables is true.
+	 * 
+	 * @param variables
+	 *            the variables
+	 */
+	void addExactlyOne(int[] variables);
+
+	/**
+	 * Adds the constraint that the given variable is true iff at least one of
+	 * the disjuncts is true.
+	 * 
+	 * @param variable
+	 *            the variable
+	 * @param disjuncts
+	 *            the variables of the disjunction
+	 */
+	void addEquivalence(int variable, int[] disjuncts);
+
+	/**
+	 * Solves the constraints added so far.
+	 * 
+	 * @return true if they are satisfiable, false otherwise
+	 */
+	boolean solve();
+
+	/**
+	 * Solves the constraints added so far under the assumption that the given
+	 * literals are true. The assumptions only hold for this call.
+	 * 
+	 * @param assumptions
+	 *            the literals assumed to be true
+	 * @return true if the constraints are satisfiable under the assumptions,
+	 *         false otherwise
+	 * @throws UnsupportedOperationException
+	 *             if the backend doesn't support assumptions
+	 */
+	boolean solve(int[] assumptions);
+
+	/**
+	 * Returns whether {@link #solve(int[])} accepts assumptions.
+	 * 
+	 * @return true if assumptions are supported, false otherwise
+	 */
+	boolean supportsAssumptions();
+
+	/**
+	 * Returns the value of the given variable in the model found by the last
+	 * successful call to solve().
+	 * 
+	 * @param variable
+	 *            the variable
+	 * @return the value of the variable
+	 */
+	boolean getValue(int variable);
+
+	/**
+	 * Returns the number of variables created so far.
+	 * 
+	 * @return the number of variables
+	 */
+	int getVariableCount();
+
+	/**
+	 * Returns the number of clauses the added constraints resulted in.
+	 * 
+	 * @return the number of clauses
+	 */
+	int getClauseCount();
+
+	/**
+	 * Frees the memory held for the constraints. The values of the last model
+	 * stay available, but no constraints may be added and no more solves run
+	 * afterwards. Closing a closed solver has no effect.
+	 */
+	void close();
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.sat;
+
+/**
+ * Creates {@link SatSolver SatSolvers}. The backend is chosen with the system
+ * property <code>nonosolver.sat</code>: "minisat" (the default) for minisat
+ * via minisat4j, "java" for {@link CdclSolver}.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public abstract class SatSolvers {
+
+	/**
+	 * The name of the system property that selects the backend.
+	 */
+	public static final String BACKEND_PROPERTY = "nonosolver.sat";
+
+	/**
+	 * Creates a SatSolver of the backend selected by the system property.
+	 * 
+	 * @return the SatSolver
+	 */
+	public static SatSolver create() {
+		return create(System.getProperty(BACKEND_PROPERTY, "minisat"));
+	}
+
+	/**
+	 * Creates a SatSolver of the given backend.
+	 * 
+	 * @param backend
+	 *            "minisat" or "java"
+	 * @return the SatSolver
+	 */
+	public static SatSolver create(String backend) {
+		if ("minisat".equals(backend)) {
+			return new MinisatSolver();
+		}
+		if ("java".equals(backend)) {
+			return new CdclSolver();
+		}
+		throw new IllegalArgumentException("unknown SAT backend '" + backend
+				+ "'");
+	}
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.github.musikk.nonosolver.BlockCreator;
+import com.github.musikk.nonosolver.SolveResult;
+
+/**
+ * A single client connection of the {@link NonoServer}.
+ * <p>
+ * A client sends any number of nonograms in the file format described in the
+ * README, optionally separated by empty lines. It does not have to wait for a
+ * response before sending the next nonogram. The responses are sent in the
+ * order of the requests. Each response starts with a status line followed by
+ * the solution, if any, and is terminated by an empty line:
+ * 
+ * <pre>
+ * sat &lt;microseconds&gt;
+ * ##.#
+ * .#..
+ * 
+ * unsat &lt;microseconds&gt;
+ * 
+ * timeout &lt;microseconds&gt;
+ * 
+ * error &lt;message&gt;
+ * 
+ * </pre>
+ * 
+ * After a malformed request the error is the last response and the connection
+ * is closed since the rest of the stream can't be interpreted anymore. An
+ * error while solving only ends the response to its own request.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+class Connection {
+
+	/**
+	 * The number of responses of a single connection that may be pending. This
+	 * limits the damage a single client can do to the others.
+	 */
+	private static final int PIPELINE_DEPTH = 64;
+
+	/**
+	 * The number of characters a reader has to be able to go back to skip the
+	 * empty lines between requests.
+	 */
+	private static final int READ_AHEAD_LIMIT = 8192;
+
+	/**
+	 * The time in milliseconds the reader waits for room in the queue before
+	 * it checks whether the writer is still there.
+	 */
+	private static final long OFFER_TIMEOUT = 1000;
+
+	private final Socket socket;
+
+	private final NonoServer server;
+
+	/**
+	 * The responses in the order of the requests. A future with a null value
+	 * marks the end of the requests.
+	 */
+	private final BlockingQueue<Future<String>> responses;
+
+	/**
+	 * Set by the writer when it stops taking responses.
+	 */
+	private volatile boolean closed;
+
+	Connection(Socket socket, NonoServer server) {
+		this.socket = socket;
+		this.server = server;
+		this.responses = new ArrayBlockingQueue<Future<String>>(
+				PIPELINE_DEPTH);
+	}
+
+	/**
+	 * Starts the threads that read the requests and write the responses.
+	 */
+	void start() {
+		String name = "connection-" + socket.getPort();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readRequests();
+			}
+		}, name + "-reader");
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeResponses();
+			}
+		}, name + "-writer");
+		reader.setDaemon(true);
+		writer.setDaemon(true);
+		reader.start();
+		writer.start();
+	}
+
+	private void readRequests() {
+
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), "US-ASCII"));
+			while (skipEmptyLines(reader)) {
+				BlockCreator bc;
+				try {
+					bc = new BlockCreator(reader);
+				} catch (RuntimeException e) {
+					enqueue(new CompletedResponse(formatError(e)));
+					break;
+				}
+				if (!enqueue(server.submit(new Request(bc, server)))) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			// the client went away, the writer notices as well
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				enqueue(new CompletedResponse(null));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+	/**
+	 * Queues a response, waiting for room as long as the writer takes
+	 * responses.
+	 * 
+	 * @return false if the writer is gone, the response is cancelled then
+	 */
+	private boolean enqueue(Future<String> response)
+			throws InterruptedException {
+		while (!closed) {
+			if (responses.offer(response, OFFER_TIMEOUT,
+					TimeUnit.MILLISECONDS)) {
+				// the writer may have drained the queue in the meantime
+				if (closed) {
+					response.cancel(true);
+					return false;
+				}
+				return true;
+			}
+		}
+		response.cancel(true);
+		return false;
+	}
+
+	/**
+	 * Skips empty lines up to the next request.
+	 * 
+	 * @param reader
+	 *            the reader
+	 * @return true if there is another request, false at the end of the stream
+	 * @throws IOException
+	 */
+	private static boolean skipEmptyLines(BufferedReader reader)
+			throws IOException {
+		while (true) {
+			reader.mark(READ_AHEAD_LIMIT);
+			String line = reader.readLine();
+			if (line == null) {
+				return false;
+			}
+			if (!line.trim().isEmpty()) {
+				reader.reset();
+				return true;
+			}
+		}
+	}
+
+	private void writeResponses() {
+
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(
+					socket.getOutputStream(), "US-ASCII"));
+			while (true) {
+				String response = getResponse(responses.take());
+				if (response == null) {
+					break;
+				}
+				writer.write(response);
+				// batch the responses that are already available
+				if (responses.isEmpty()) {
+					writer.flush();
+				}
+			}
+			writer.flush();
+		} catch (IOException e) {
+			// the client went away
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			closed = true;
+			// nobody will read the responses still queued
+			Future<String> response;
+			while ((response = responses.poll()) != null) {
+				response.cancel(true);
+			}
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+		}
+
+	}
+
+	private static String getResponse(Future<String> future)
+			throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			return formatError(e.getCause());
+		}
+	}
+
+	/**
+	 * Formats an error response. The message has to stay on the status line,
+	 * a line break would end the response early.
+	 * 
+	 * @param e
+	 *            the cause of the error
+	 * @return the complete response
+	 */
+	private static String formatError(Throwable e) {
+		String message = e.getMessage();
+		if (message == null) {
+			message = e.getClass().getName();
+		}
+		return "error " + message.replaceAll("[\\r\\n]+", " ") + "\n\n";
+	}
+
+	/**
+	 * Solves a single nonogram and formats the response.
+	 */
+	private static class Request implements Callable<String> {
+
+		private final BlockCreator bc;
+
+		private final NonoServer server;
+
+		Request(BlockCreator bc, NonoServer server) {
+			this.bc = bc;
+			this.server = server;
+		}
+
+		@Override
+		public String call() throws InterruptedException {
+
+			long start = System.nanoTime();
+			SolveResult result = server.getTimedSolver().solve(bc.getCols(),
+					bc.getRows(), server.getTimeout());
+			long micros = (System.nanoTime() - start) / 1000;
+
+			switch (result.getStatus()) {
+			case UNSATISFIABLE:
+				return "unsat " + micros + "\n\n";
+			case TIMEOUT:
+				return "timeout " + micros + "\n\n";
+			default:
+				break;
+			}
+
+			boolean[][] solution = result.getSolution();
+			StringBuilder sb = new StringBuilder();
+			sb.append("sat ").append(micros).append('\n');
+			for (int row = 0; row < solution[0].length; row++) {
+				for (int col = 0; col < solution.length; col++) {
+					sb.append(solution[col][row] ? '#' : '.');
+				}
+				sb.append('\n');
+			}
+			sb.append('\n');
+			return sb.toString();
+
+		}
+
+	}
+
+	/**
+	 * A response that is known before it is queued.
+	 */
+	private static class CompletedResponse implements Future<String> {
+
+		private final String response;
+
+		CompletedResponse(String response) {
+			this.response = response;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return true;
+		}
+
+		@Override
+		public String get() {
+			return response;
+		}
+
+		@Override
+		public String get(long timeout, TimeUnit unit) {
+			return response;
+		}
+
+	}
+
+}
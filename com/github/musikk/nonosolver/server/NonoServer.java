@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.github.musikk.nonosolver.Blocks;
+import com.github.musikk.nonosolver.NonoSolver;
+import com.github.musikk.nonosolver.TimedSolver;
+
+/**
+ * A long running solver service. It keeps the JVM, the JIT compiled code and
+ * the native minisat library resident and accepts nonograms in the usual file
+ * format on a local TCP socket. See {@link Connection} for the protocol.
+ * <p>
+ * All connections share one bounded pool of workers. The number of nonograms
+ * that are either being solved or waiting for a worker is limited; once the
+ * limit is reached connections stop reading further requests until a worker
+ * becomes available. Clients that pipeline more requests than that therefore
+ * get throttled by TCP flow control instead of exhausting the server's
+ * memory.
+ * <p>
+ * Every nonogram is solved with a deadline by a {@link TimedSolver}. A worker
+ * waits for the deadline at most, so a nonogram that can't be solved in time
+ * doesn't block the worker for others.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class NonoServer {
+
+	/**
+	 * The default port the server listens on.
+	 */
+	public static final int DEFAULT_PORT = 7471;
+
+	/**
+	 * The default maximum time in milliseconds to solve a single nonogram.
+	 */
+	public static final long DEFAULT_TIMEOUT = 10000;
+
+	/**
+	 * The number of nonograms that may wait for a worker per worker.
+	 */
+	private static final int QUEUED_REQUESTS_PER_WORKER = 4;
+
+	/**
+	 * A small nonogram that is solved a couple of times on startup so the
+	 * first real request doesn't pay for class loading and interpretation.
+	 */
+	private static final String[][] WARM_UP_NONOGRAM = {
+			{ "2 1", "2 1 3", "7", "1 3", "2 1" },
+			{ "2", "2 1", "1 1", "3", "1 1", "1 1", "2", "1 1", "1 2", "2" } };
+
+	/**
+	 * How often the warm up nonogram is solved.
+	 */
+	private static final int WARM_UP_ITERATIONS = 200;
+
+	private final int port;
+
+	private final long timeout;
+
+	private final TimedSolver timedSolver;
+
+	private final ThreadPoolExecutor workers;
+
+	/**
+	 * Permits for every request that is either being solved or waiting in the
+	 * queue of the workers.
+	 */
+	private final Semaphore pendingRequests;
+
+	private ServerSocket serverSocket;
+
+	/**
+	 * Creates a new server.
+	 * 
+	 * @param port
+	 *            the port to listen on, only the loopback interface is bound
+	 * @param workerCount
+	 *            the number of nonograms that get solved concurrently
+	 * @param queueCapacity
+	 *            the number of nonograms that may wait for a worker
+	 * @param timeout
+	 *            the maximum time in milliseconds to solve a single nonogram
+	 */
+	public NonoServer(int port, int workerCount, int queueCapacity,
+			long timeout) {
+		this.port = port;
+		this.timeout = timeout;
+		this.timedSolver = new TimedSolver(workerCount);
+		// a worker releases its permit shortly before it takes the next task,
+		// so the queue has room for one more task per worker
+		this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+						workerCount + queueCapacity), new DaemonThreadFactory(
+						"worker"));
+		this.pendingRequests = new Semaphore(workerCount + queueCapacity);
+	}
+
+	/**
+	 * Solves a small nonogram repeatedly.
+	 */
+	public void warmUp() {
+		Blocks[] cols = Blocks.createBlockInfos(WARM_UP_NONOGRAM[0]);
+		Blocks[] rows = Blocks.createBlockInfos(WARM_UP_NONOGRAM[1]);
+		for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+			NonoSolver ns = new NonoSolver(cols, rows);
+			ns.solve();
+			ns.getSolution();
+			ns.close();
+		}
+	}
+
+	/**
+	 * Binds the socket and accepts connections until {@link #stop()} is
+	 * called. Every connection gets its own reading and writing thread, the
+	 * nonograms themselves are solved by the shared workers.
+	 * 
+	 * @throws IOException
+	 */
+	public void serve() throws IOException {
+
+		serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+
+		while (!serverSocket.isClosed()) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (serverSocket.isClosed()) {
+					break;
+				}
+				throw e;
+			}
+			socket.setTcpNoDelay(true);
+			new Connection(socket, this).start();
+		}
+
+	}
+
+	/**
+	 * Stops accepting connections and shuts down the workers.
+	 */
+	public void stop() {
+		try {
+			if (serverSocket != null) {
+				serverSocket.close();
+			}
+		} catch (IOException e) {
+			// nothing to do
+		}
+		workers.shutdownNow();
+		timedSolver.shutdown();
+	}
+
+	TimedSolver getTimedSolver() {
+		return timedSolver;
+	}
+
+	long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Submits a request to the workers. Blocks as long as the maximum number
+	 * of pending requests is reached.
+	 * 
+	 * @param request
+	 *            the request
+	 * @return the future response
+	 * @throws InterruptedException
+	 */
+	Future<String> submit(final Callable<String> request)
+			throws InterruptedException {
+
+		pendingRequests.acquire();
+		try {
+			return workers.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					try {
+						return request.call();
+					} finally {
+						pendingRequests.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			pendingRequests.release();
+			throw e;
+		}
+
+	}
+
+	/**
+	 * Creates daemon threads with a common name prefix.
+	 */
+	static class DaemonThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+
+		private int count;
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + "-" + count++);
+			t.setDaemon(true);
+			return t;
+		}
+
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		int port = DEFAULT_PORT;
+		int workerCount = Runtime.getRuntime().availableProcessors();
+		long timeout = DEFAULT_TIMEOUT;
+		if (args.length >= 1) {
+			port = Integer.parseInt(args[0]);
+		}
+		if (args.length >= 2) {
+			workerCount = Integer.parseInt(args[1]);
+		}
+		if (args.length >= 3) {
+			timeout = Long.parseLong(args[2]);
+		}
+
+		NonoServer server = new NonoServer(port, workerCount, workerCount
+				* QUEUED_REQUESTS_PER_WORKER, timeout);
+		server.warmUp();
+		System.err.println("listening on localhost:" + port + " with "
+				+ workerCount + " workers");
+		server.serve();
+
+	}
+
+}
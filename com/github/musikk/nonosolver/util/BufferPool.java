@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2009, Werner Hahn
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ONANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.musikk.nonosolver.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of direct buffers of ints for data that lives as long as a single
+ * solve but may grow large, like the clauses of a CNF. Direct buffers are
+ * outside the heap, so many concurrent solves don't make the garbage
+ * collector copy or scan their data; returning the buffers to the pool after
+ * a solve makes the next solve reuse them instead of allocating new ones.
+ * <p>
+ * The capacities of the buffers are rounded up to size classes that grow by
+ * half, so a buffer that is outgrown is replaced by one half again as large.
+ * The shared pool keeps as many megabytes of released buffers as the system
+ * property {@value #SIZE_PROPERTY} says, by default {@value #DEFAULT_SIZE};
+ * buffers beyond that are left to the garbage collector. The contents of an
+ * acquired buffer are undefined.
+ * 
+ * @author Werner Hahn
+ * @version 0.1
+ * 
+ */
+public class BufferPool {
+
+	/**
+	 * The system property that sets the size of the shared pool in
+	 * megabytes.
+	 */
+	public static final String SIZE_PROPERTY = "nonosolver.bufferPool";
+
+	/**
+	 * The default size of the shared pool in megabytes.
+	 */
+	public static final long DEFAULT_SIZE = 256;
+
+	/**
+	 * The capacity of the smallest size class in ints.
+	 */
+	private static final int MIN_CAPACITY = 1024;
+
+	/**
+	 * The largest capacity in ints a direct buffer can have.
+	 */
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE / 4;
+
+	private static final BufferPool SHARED = new BufferPool(Long.getLong(
+			SIZE_PROPERTY, DEFAULT_SIZE) << 20);
+
+	/**
+	 * The released buffers of every size class.
+	 */
+	private final ArrayDeque<IntBuffer>[] free;
+
+	/**
+	 * The maximum number of bytes the released buffers may occupy.
+	 */
+	private final long maxBytes;
+
+	private long bytes;
+
+	/**
+	 * Creates a new pool.
+	 * 
+	 * @param maxBytes
+	 *            the maximum number of bytes the released buffers may occupy
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BufferPool(long maxBytes) {
+		this.maxBytes = maxBytes;
+		int classes = 0;
+		while (getCapacity(classes) < MAX_CAPACITY) {
+			classes++;
+		}
+		this.free = new ArrayDeque[classes + 1];
+		for (int i = 0; i < free.length; i++) {
+			free[i] = new ArrayDeque<IntBuffer>();
+		}
+	}
+
+	/**
+	 * Returns the pool shared by all solvers.
+	 * 
+	 * @return the pool
+	 */
+	public static BufferPool getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the capacity of a size class: MIN_CAPACITY times 1, 1.5, 2, 3,
+	 * 4, 6 and so on.
+	 */
+	private static int getCapacity(int sizeClass) {
+		long base = (long) MIN_CAPACITY << (sizeClass >> 1);
+		long capacity = (sizeClass & 1) == 0 ? base : base + base / 2;
+		return (int) Math.min(capacity, MAX_CAPACITY);
+	}
+
+	/**
+	 * Returns a buffer with room for at least the given number of ints.
+	 * 
+	 * @param ints
+	 *            the number of ints
+	 * @return the buffer
+	 * @throws IllegalArgumentException
+	 *             if the number is larger than a direct buffer can hold
+	 */
+	public IntBuffer acquire(int ints) {
+		if (ints > MAX_CAPACITY) {
+			throw new IllegalArgumentException(ints
+					+ " ints don't fit into a direct buffer");
+		}
+		int sizeClass = 0;
+		while (getCapacity(sizeClass) < ints) {
+			sizeClass++;
+		}
+		synchronized (this) {
+			IntBuffer buffer = free[sizeClass].poll();
+			if (buffer != null) {
+				bytes -= 4L * buffer.capacity();
+				buffer.clear();
+				return buffer;
+			}
+		}
+		return ByteBuffer.allocateDirect(4 * getCapacity(sizeClass))
+				.order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	/**
+	 * Returns a buffer to the pool. It must not be used afterwards.
+	 * 
+	 * @param buffer
+	 *            the buffer, acquired from this pool, may be null
+	 */
+	public void release(IntBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		int sizeClass = 0;
+		while (getCapacity(sizeClass) < buffer.capacity()) {
+			sizeClass++;
+		}
+		synchronized (this) {
+			if (bytes + 4L * buffer.capacity() <= maxBytes) {
+				free[sizeClass].push(buffer);
+				bytes += 4L * buffer.capacity();
+			}
+		}
+	}
+
+	/**
+	 * Replaces a buffer by a larger one with the same contents.
+	 * 
+	 * @param buffer
+	 *            the buffer, it gets released
+	 * @param used
+	 *            the number of ints of the buffer to keep
+	 * @param ints
+	 *            the number of ints the new buffer needs room for
+	 * @return the new buffer
+	 */
+	public IntBuffer grow(IntBuffer buffer, int used, int ints) {
+		IntBuffer grown = acquire(ints);
+		IntBuffer source = buffer.duplicate();
+		source.position(0).limit(used);
+		grown.clear();
+		grown.put(source);
+		grown.clear();
+		release(buffer);
+		return grown;
+	}
+
+}
@@ -28,8 +28,10 @@ package com.github.musikk.nonosolver.util;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 
-import com.github.musikk.minisat4j.Variable;
+import javax.imageio.ImageIO;
 
 /**
  * Utility class to create an image from a nonogram solution.
@@ -75,25 +77,25 @@ public class ImageCreator {
 	}
 
 	/**
-	 * Creates a BufferedImage based on the given variables.
+	 * Creates a BufferedImage based on the given solution.
 	 * 
-	 * @param variables
-	 *            the variables that represent a nonogram solution
+	 * @param marks
+	 *            the solution, the first index denotes the column, the second
+	 *            one the row
 	 * @param cellSize
 	 *            the size of a cell
 	 * @return the image
 	 */
-	public static BufferedImage createImage(Variable[][] variables, int cellSize) {
+	public static BufferedImage createImage(boolean[][] marks, int cellSize) {
 
-		int height = variables[0].length;
-		int width = variables.length;
+		int height = marks[0].length;
+		int width = marks.length;
 		BufferedImage bi = new BufferedImage(width * cellSize, height
 				* cellSize, BufferedImage.TYPE_3BYTE_BGR);
 
 		for (int x = 0; x < width; x++) {
 			for (int y = 0; y < height; y++) {
-				Color c = variables[x][y].getResult() ? Color.BLACK
-						: Color.WHITE;
+				Color c = marks[x][y] ? Color.BLACK : Color.WHITE;
 				colorCell(bi, x, y, cellSize, c);
 			}
 		}
@@ -103,15 +105,89 @@ public class ImageCreator {
 	}
 
 	/**
-	 * Creates a BufferedImage based on the given variables. Uses the default
+	 * Creates a BufferedImage based on the given solution. Uses the default
 	 * cell size.
 	 * 
-	 * @param variables
-	 *            the variables that represent a nonogram solution
+	 * @param marks
+	 *            the solution, the first index denotes the column, the second
+	 *            one the row
 	 * @return the image
 	 */
-	public static BufferedImage createImage(Variable[][] variables) {
-		return createImage(variables, DEFAULT_CELL_SIZE);
+	public static BufferedImage createImage(boolean[][] marks) {
+		return createImage(marks, DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * Writes an image of the given solution to a file in PNG format. Callers
+	 * that only reference this method don't load AWT and ImageIO before an
+	 * image is actually written.
+	 * 
+	 * @param marks
+	 *            the solution, the first index denotes the column, the second
+	 *            one the row
+	 * @param cellSize
+	 *            the size of a cell
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public static void writePng(boolean[][] marks, int cellSize, File file)
+			throws IOException {
+		if (!ImageIO.write(createImage(marks, cellSize), "png", file)) {
+			throw new IOException("no PNG encoder");
+		}
+	}
+
+	/**
+	 * The colors of the cells of colored nonograms, starting with empty cells.
+	 */
+	private static final Color[] PALETTE = { Color.WHITE, Color.BLACK,
+			Color.RED, Color.BLUE, Color.GREEN.darker(), Color.YELLOW,
+			Color.ORANGE, Color.MAGENTA, Color.CYAN, Color.GRAY };
+
+	/**
+	 * Returns the color a cell of the given color of a colored nonogram is
+	 * drawn with.
+	 * 
+	 * @param color
+	 *            the color of the cell, 0 for an empty cell
+	 * @return the color to draw with
+	 */
+	public static Color getColor(int color) {
+		if (color < PALETTE.length) {
+			return PALETTE[color];
+		}
+		// spreads the hues of the remaining colors
+		return Color.getHSBColor(color * 0.618034f % 1, 0.8f, 0.9f);
+	}
+
+	/**
+	 * Creates a BufferedImage based on the given solution of a colored
+	 * nonogram.
+	 * 
+	 * @param colors
+	 *            the colors of the cells, 0 for an empty cell, the first index
+	 *            denotes the column, the second one the row
+	 * @param cellSize
+	 *            the size of a cell
+	 * @return the image
+	 */
+	public static BufferedImage createImage(int[][] colors, int cellSize) {
+
+		int height = colors[0].length;
+		int width = colors.length;
+		BufferedImage bi = new BufferedImage(width * cellSize, height
+				* cellSize, BufferedImage.TYPE_3BYTE_BGR);
+
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				colorCell(bi, x, y, cellSize, getColor(colors[x][y]));
+			}
+		}
+
+		return bi;
+
 	}
 
 }